@@ -0,0 +1,86 @@
+package ru.kropotov.storage.bench;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.kropotov.storage.domain.model.File;
+import ru.kropotov.storage.domain.model.FileState;
+import ru.kropotov.storage.domain.model.Visibility;
+import ru.kropotov.storage.web.dto.FileDto;
+import ru.kropotov.storage.web.mapper.FileMapper;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One page of the file listing endpoints: {@link FileMapper#toDto(File)} for every file and the
+ * Jackson serialization of the resulting {@code Page<FileDto>}, with the object mapper configured
+ * as in {@code JacksonConfig}.
+ * <p>
+ * Run with {@code ./gradlew jmh -Pjmh.includes=FileListingSerializationBenchmark}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FileListingSerializationBenchmark {
+
+    @Param({"20", "100"})
+    public int pageSize;
+
+    private final FileMapper fileMapper = Mappers.getMapper(FileMapper.class);
+    private final ObjectMapper objectMapper = new Jackson2ObjectMapperBuilder()
+            .filters(new SimpleFilterProvider().setFailOnUnknownId(false))
+            .build();
+
+    private Page<File> files;
+    private Page<FileDto> fileDtos;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<File> content = new ArrayList<>(pageSize);
+        Instant uploadTs = Instant.parse("2024-06-01T12:00:00Z");
+        for (int i = 0; i < pageSize; i++) {
+            content.add(File.builder()
+                    .id(String.format("665b1e0f8c1d2a3b4c5d%04x", i))
+                    .ownerId("user-1")
+                    .fileName("report-" + i + ".pdf")
+                    .contentType("application/pdf")
+                    .sizeBytes(1_048_576L + i)
+                    .sha256("2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824")
+                    .visibility(Visibility.PRIVATE)
+                    .tags(List.of("invoices", "2024_q3"))
+                    .uploadTs(uploadTs.plusSeconds(i))
+                    .downloadSecret("0123456789abcdef0123456789abcdef")
+                    .objectStoreKey("file-" + i)
+                    .state(FileState.READY)
+                    .build());
+        }
+        PageRequest pageable = PageRequest.of(0, pageSize, Sort.by(Sort.Direction.DESC, "uploadTs"));
+        files = new PageImpl<>(content, pageable, 10_000);
+        fileDtos = files.map(fileMapper::toDto);
+    }
+
+    @Benchmark
+    public Page<FileDto> map() {
+        return files.map(fileMapper::toDto);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(fileDtos);
+    }
+
+    @Benchmark
+    public byte[] mapAndSerialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(files.map(fileMapper::toDto));
+    }
+}
@@ -0,0 +1,44 @@
+package ru.kropotov.storage.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hex encoding of a SHA-256 digest: the {@code String.format} loop of
+ * {@code MinioObjectStoreClient.bytesToHex}, which is private and is therefore copied here, against
+ * the {@link HexFormat} used everywhere else.
+ * <p>
+ * Run with {@code ./gradlew jmh -Pjmh.includes=HexEncodingBenchmark}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HexEncodingBenchmark {
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private byte[] digest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        digest = new byte[32];
+        new Random(42).nextBytes(digest);
+    }
+
+    @Benchmark
+    public String stringFormat() {
+        StringBuilder result = new StringBuilder();
+        for (byte b : digest) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+
+    @Benchmark
+    public String hexFormat() {
+        return HEX.formatHex(digest);
+    }
+}
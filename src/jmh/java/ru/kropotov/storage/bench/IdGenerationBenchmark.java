@@ -0,0 +1,36 @@
+package ru.kropotov.storage.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.kropotov.storage.infra.RandomIds;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Object key and download secret generation as {@code FileService} does it for every reserved file,
+ * against {@link UUID#randomUUID()}, which {@link RandomIds} replaced. Several threads generate at
+ * once, since the shared generator is where contention would show.
+ * <p>
+ * Run with {@code ./gradlew jmh -Pjmh.includes=IdGenerationBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(4)
+public class IdGenerationBenchmark {
+
+    @Benchmark
+    public String objectStoreKey() {
+        return "file-" + RandomIds.uuid() + "-" + System.nanoTime();
+    }
+
+    @Benchmark
+    public String objectStoreKeyWithRandomUuid() {
+        return "file-" + UUID.randomUUID() + "-" + System.nanoTime();
+    }
+
+    @Benchmark
+    public String downloadSecret() {
+        return RandomIds.hex(16);
+    }
+}
@@ -0,0 +1,105 @@
+package ru.kropotov.storage.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Platform thread pool versus virtual threads for request-shaped work: a blocking call
+ * that stands in for a Mongo or S3 round trip.
+ * <p>
+ * One operation is a burst of {@code connections} concurrent requests. The platform pool has
+ * Tomcat's default of 200 workers, so above that requests queue; virtual threads are capped
+ * only by the carriers, unless the blocking call happens while holding a monitor
+ * ({@code guard = monitor}) and pins the carrier.
+ * <p>
+ * Run with {@code ./gradlew jmh -Pjmh.includes=RequestExecutorBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RequestExecutorBenchmark {
+
+    private static final int TOMCAT_MAX_THREADS = 200;
+
+    @Param({"200", "2000", "10000"})
+    public int connections;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"none", "lock", "monitor"})
+    public String guard;
+
+    @Param({"5"})
+    public int blockingMillis;
+
+    private ExecutorService executor;
+    private Object[] monitors;
+    private ReentrantLock[] locks;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // one uncontended guard per request, kept reachable so that the JIT cannot elide it
+        monitors = new Object[connections];
+        locks = new ReentrantLock[connections];
+        for (int i = 0; i < connections; i++) {
+            monitors[i] = new Object();
+            locks[i] = new ReentrantLock();
+        }
+        executor = "virtual".equals(threads)
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int burst() throws Exception {
+        CountDownLatch done = new CountDownLatch(connections);
+        for (int i = 0; i < connections; i++) {
+            int request = i;
+            executor.execute(() -> {
+                try {
+                    handleRequest(request);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        return connections;
+    }
+
+    private void handleRequest(int request) {
+        switch (guard) {
+            case "lock" -> {
+                ReentrantLock lock = locks[request];
+                lock.lock();
+                try {
+                    block();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            case "monitor" -> {
+                synchronized (monitors[request]) {
+                    block();
+                }
+            }
+            default -> block();
+        }
+    }
+
+    private void block() {
+        try {
+            Thread.sleep(blockingMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
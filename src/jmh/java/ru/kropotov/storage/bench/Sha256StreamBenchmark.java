@@ -0,0 +1,67 @@
+package ru.kropotov.storage.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SHA-256 of an upload as it is computed on the way to the object store: a {@link DigestInputStream}
+ * read with buffers of different sizes. The content is in memory, so the numbers are the hashing and
+ * copying cost alone, the ceiling for a single upload stream on one core.
+ * <p>
+ * Run with {@code ./gradlew jmh -Pjmh.includes=Sha256StreamBenchmark}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class Sha256StreamBenchmark {
+
+    @Param({"4096", "16384", "65536", "262144"})
+    public int bufferSize;
+
+    @Param({"16777216"})
+    public int contentSize;
+
+    private byte[] content;
+    private byte[] buffer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        content = new byte[contentSize];
+        new Random(42).nextBytes(content);
+        buffer = new byte[bufferSize];
+    }
+
+    /**
+     * One operation hashes the whole content; throughput in bytes is {@code ops/s * contentSize}
+     */
+    @Benchmark
+    public byte[] digestInputStream() throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (InputStream in = new DigestInputStream(new ByteArrayInputStream(content), digest)) {
+            while (in.read(buffer) != -1) {
+                // the bytes would be written to the object store here
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * The same without the stream, for the cost of the wrapper and the copies
+     */
+    @Benchmark
+    public byte[] messageDigestUpdate() throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        for (int offset = 0; offset < content.length; offset += bufferSize) {
+            digest.update(content, offset, Math.min(bufferSize, content.length - offset));
+        }
+        return digest.digest();
+    }
+}
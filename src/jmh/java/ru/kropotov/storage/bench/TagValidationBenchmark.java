@@ -0,0 +1,37 @@
+package ru.kropotov.storage.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.kropotov.storage.web.validation.TagValidator;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TagValidator#isValid} on the tags of one upload. Every tag is checked with
+ * {@code String.matches}, which compiles the pattern anew on each call.
+ * <p>
+ * Valid tags never touch the constraint context, so none is passed.
+ * <p>
+ * Run with {@code ./gradlew jmh -Pjmh.includes=TagValidationBenchmark}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TagValidationBenchmark {
+
+    @Param({"1", "5"})
+    public int tagCount;
+
+    private final TagValidator validator = new TagValidator();
+    private List<String> tags;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tags = List.of("invoices", "2024_q3", "project-alpha", "shared", "final_version").subList(0, tagCount);
+    }
+
+    @Benchmark
+    public boolean isValid() {
+        return validator.isValid(tags, null);
+    }
+}
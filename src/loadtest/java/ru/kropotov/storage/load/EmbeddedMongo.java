@@ -0,0 +1,41 @@
+package ru.kropotov.storage.load;
+
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.transitions.Mongod;
+import de.flapdoodle.embed.mongo.transitions.RunningMongodProcess;
+import de.flapdoodle.reverse.TransitionWalker;
+
+/**
+ * A throwaway mongod started as a child process, so a run needs neither Docker nor a database
+ * server. The binaries are downloaded once and cached in {@code ~/.embedmongo}. With
+ * {@code loadtest.mongoUri} set, that database is used instead and nothing is started.
+ */
+final class EmbeddedMongo implements AutoCloseable {
+
+    private final TransitionWalker.ReachedState<RunningMongodProcess> running;
+    private final String uri;
+
+    private EmbeddedMongo(TransitionWalker.ReachedState<RunningMongodProcess> running, String uri) {
+        this.running = running;
+        this.uri = uri;
+    }
+
+    static EmbeddedMongo start(String externalUri) {
+        if (!externalUri.isBlank()) {
+            return new EmbeddedMongo(null, externalUri);
+        }
+        TransitionWalker.ReachedState<RunningMongodProcess> running = Mongod.instance().start(Version.Main.V7_0);
+        return new EmbeddedMongo(running, "mongodb://" + running.current().getServerAddress());
+    }
+
+    String uri() {
+        return uri;
+    }
+
+    @Override
+    public void close() {
+        if (running != null) {
+            running.close();
+        }
+    }
+}
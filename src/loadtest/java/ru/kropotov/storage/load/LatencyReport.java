@@ -0,0 +1,91 @@
+package ru.kropotov.storage.load;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency per operation in HDR histograms of microseconds, so p99.9 stays exact to three
+ * significant digits however long the tail; failed requests are only counted
+ */
+final class LatencyReport {
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+
+    LatencyReport() {
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder(SIGNIFICANT_DIGITS));
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    void recordSuccess(Operation operation, long elapsedNanos) {
+        recorders.get(operation).recordValue(Math.max(1, TimeUnit.NANOSECONDS.toMicros(elapsedNanos)));
+    }
+
+    void recordError(Operation operation) {
+        errors.get(operation).increment();
+    }
+
+    /**
+     * Prints the summary table and writes it, together with one {@code .hgrm} percentile
+     * distribution per operation, to the output directory
+     *
+     * @param measured the time the recorded requests were sent in
+     * @return whether every operation with a p99 budget stayed within it
+     */
+    boolean write(LoadTestConfig config, Duration measured, PrintStream out) throws IOException {
+        Files.createDirectories(config.outputDir());
+        double seconds = measured.toNanos() / 1e9;
+        boolean withinBudget = true;
+
+        StringBuilder summary = new StringBuilder()
+                .append(String.format("%-10s %10s %8s %10s %10s %10s %10s %10s%n",
+                        "operation", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = recorders.get(operation).getIntervalHistogram();
+            long failed = errors.get(operation).sum();
+            summary.append(String.format("%-10s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                    operation.label(),
+                    histogram.getTotalCount(),
+                    failed,
+                    histogram.getTotalCount() / seconds,
+                    millis(histogram, 50.0),
+                    millis(histogram, 99.0),
+                    millis(histogram, 99.9),
+                    histogram.getMaxValue() / MICROS_PER_MILLI));
+
+            Double budget = config.p99BudgetsMillis().get(operation);
+            if (budget != null && millis(histogram, 99.0) > budget) {
+                summary.append(String.format("  p99 of %s exceeds its budget of %.2f ms%n", operation.label(), budget));
+                withinBudget = false;
+            }
+
+            try (PrintStream hgrm = new PrintStream(
+                    Files.newOutputStream(config.outputDir().resolve(operation.label() + ".hgrm")))) {
+                histogram.outputPercentileDistribution(hgrm, MICROS_PER_MILLI);
+            }
+        }
+
+        out.print(summary);
+        Files.writeString(config.outputDir().resolve("summary.txt"), summary);
+        return withinBudget;
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / MICROS_PER_MILLI;
+    }
+}
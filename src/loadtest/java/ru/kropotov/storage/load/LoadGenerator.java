@@ -0,0 +1,182 @@
+package ru.kropotov.storage.load;
+
+import ru.kropotov.storage.load.StorageClient.StoredFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Closed-loop load: every virtual user sends its next request as soon as the previous one is
+ * answered, so throughput is what the service sustains at the configured concurrency.
+ * <p>
+ * Uploads need distinct content and names, since files are unique per owner by SHA-256 and by
+ * name. Each body is a random per-upload prefix followed by a shared block of random bytes, which
+ * keeps the content unique without generating megabytes per request.
+ */
+final class LoadGenerator {
+
+    private static final int UNIQUE_PREFIX_BYTES = 32;
+
+    private final LoadTestConfig config;
+    private final StorageClient client;
+    private final LatencyReport report = new LatencyReport();
+    private final List<String> userIds;
+    private final ConcurrentHashMap<String, FilePool> pools = new ConcurrentHashMap<>();
+    private final AtomicLong fileCounter = new AtomicLong();
+    private final byte[] filler;
+
+    LoadGenerator(LoadTestConfig config, StorageClient client) {
+        this.config = config;
+        this.client = client;
+        this.userIds = IntStream.range(0, config.users()).mapToObj(i -> "load-user-" + i).toList();
+        userIds.forEach(userId -> pools.put(userId, new FilePool()));
+
+        long largest = config.sizes().values().stream().mapToLong(Long::longValue).max().orElseThrow();
+        this.filler = new byte[Math.toIntExact(largest)];
+        new SplittableRandom(42).nextBytes(filler);
+    }
+
+    LatencyReport report() {
+        return report;
+    }
+
+    /**
+     * Uploads the seed files of every user; these requests are not recorded
+     */
+    void seed() throws Exception {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> uploads = new ArrayList<>();
+            for (int u = 0; u < userIds.size(); u++) {
+                String userId = userIds.get(u);
+                SplittableRandom random = new SplittableRandom(1000L + u);
+                uploads.add(executor.submit(() -> {
+                    for (int i = 0; i < config.seedFiles(); i++) {
+                        pools.get(userId).add(upload(userId, random));
+                    }
+                    return null;
+                }));
+            }
+            for (var upload : uploads) {
+                upload.get();
+            }
+        }
+    }
+
+    /**
+     * Runs the virtual users until {@code measureFrom + duration}; only requests sent at or after
+     * {@code measureFrom} are recorded
+     */
+    void run(long measureFrom, long measureUntil) {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < config.concurrency(); i++) {
+                String userId = userIds.get(i % userIds.size());
+                SplittableRandom random = new SplittableRandom(i);
+                executor.submit(() -> virtualUser(userId, random, measureFrom, measureUntil));
+            }
+        }
+    }
+
+    private void virtualUser(String userId, SplittableRandom random, long measureFrom, long measureUntil) {
+        long started;
+        while ((started = System.nanoTime()) < measureUntil) {
+            Operation operation = config.mix().pick(random);
+            try {
+                if (execute(operation, userId, random) && started >= measureFrom) {
+                    report.recordSuccess(operation, System.nanoTime() - started);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (started >= measureFrom) {
+                    report.recordError(operation);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether a request was sent; there may be nothing to download or delete yet
+     */
+    private boolean execute(Operation operation, String userId, SplittableRandom random) throws Exception {
+        switch (operation) {
+            case UPLOAD -> pools.get(userId).add(upload(userId, random));
+            case LIST -> client.list(userId,
+                    config.sorts().get(random.nextInt(config.sorts().size())),
+                    random.nextBoolean() ? randomTag(random) : null);
+            case DOWNLOAD -> {
+                // any user's file: downloads go through the public link
+                StoredFile file = pools.get(userIds.get(random.nextInt(userIds.size()))).pick(random);
+                if (file == null) {
+                    return false;
+                }
+                client.download(file);
+            }
+            case DELETE -> {
+                // half of the seed stays, so downloads always find files
+                StoredFile file = pools.get(userId).take(random, config.seedFiles() / 2);
+                if (file == null) {
+                    return false;
+                }
+                client.delete(file);
+            }
+        }
+        return true;
+    }
+
+    private StoredFile upload(String userId, SplittableRandom random) throws Exception {
+        long size = config.sizes().pick(random);
+        byte[] prefix = new byte[(int) Math.min(UNIQUE_PREFIX_BYTES, size)];
+        random.nextBytes(prefix);
+        InputStream content = new SequenceInputStream(
+                new ByteArrayInputStream(prefix),
+                new ByteArrayInputStream(filler, 0, (int) (size - prefix.length)));
+
+        String fileName = "load-" + fileCounter.incrementAndGet() + "-" + Long.toHexString(random.nextLong()) + ".bin";
+        List<String> tags = random.nextBoolean() ? List.of(randomTag(random)) : List.of();
+        return client.upload(userId, fileName, tags, content, size);
+    }
+
+    private String randomTag(SplittableRandom random) {
+        return config.tags().get(random.nextInt(config.tags().size()));
+    }
+
+    /**
+     * Files of one owner. A download may still pick a file whose delete is in flight and count a 404,
+     * which at the default mix is rare enough not to skew the error column
+     */
+    private static final class FilePool {
+
+        private final List<StoredFile> files = new ArrayList<>();
+
+        synchronized void add(StoredFile file) {
+            files.add(file);
+        }
+
+        synchronized StoredFile pick(SplittableRandom random) {
+            return files.isEmpty() ? null : files.get(random.nextInt(files.size()));
+        }
+
+        /**
+         * Removes a random file, unless no more than {@code keep} are left
+         */
+        synchronized StoredFile take(SplittableRandom random, int keep) {
+            if (files.size() <= Math.max(keep, 0)) {
+                return null;
+            }
+            Collections.swap(files, random.nextInt(files.size()), files.size() - 1);
+            return files.removeLast();
+        }
+    }
+}
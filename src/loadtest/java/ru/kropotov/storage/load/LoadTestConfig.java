@@ -0,0 +1,87 @@
+package ru.kropotov.storage.load;
+
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Load profile of a run, read from {@code loadtest.*} system properties; {@code ./gradlew loadTest}
+ * passes the {@code -Ploadtest.*} project properties through
+ *
+ * @param duration      measured run time, after the warmup
+ * @param warmup        run time whose requests are not recorded, so the JIT and the pools settle first
+ * @param concurrency   number of virtual users, each sending one request after the other
+ * @param users         number of distinct owners the virtual users act as
+ * @param seedFiles     files uploaded for every owner before the run
+ * @param mix           relative weights of the operations
+ * @param sizes         relative weights of the upload sizes
+ * @param tags          tags given to uploads and used to filter listings
+ * @param sorts         {@code sort} parameters of listings
+ * @param uploadPath    upload endpoint, {@code /api/files} or the streaming {@code /api/files/stream}
+ * @param mongoUri      an existing MongoDB to use instead of the embedded one
+ * @param fsync         {@code storage.filesystem.fsync} of the file system backend
+ * @param outputDir     where the summary and the HDR histograms are written
+ * @param p99BudgetsMillis p99 latency each operation must stay within, or the run fails
+ */
+record LoadTestConfig(Duration duration, Duration warmup, int concurrency, int users, int seedFiles,
+                      Weighted<Operation> mix, Weighted<Long> sizes, List<String> tags, List<String> sorts,
+                      String uploadPath, String mongoUri, String fsync, Path outputDir,
+                      Map<Operation, Double> p99BudgetsMillis) {
+
+    static LoadTestConfig fromSystemProperties() {
+        return new LoadTestConfig(
+                Duration.parse(property("duration", "PT60S")),
+                Duration.parse(property("warmup", "PT15S")),
+                Integer.parseInt(property("concurrency", "32")),
+                Integer.parseInt(property("users", "8")),
+                Integer.parseInt(property("seedFiles", "50")),
+                Weighted.parse(property("mix", "upload=20,list=40,download=35,delete=5"), LoadTestConfig::operation),
+                Weighted.parse(property("sizes", "4KB=50,64KB=30,1MB=15,16MB=5"), size -> DataSize.parse(size).toBytes()),
+                list(property("tags", "invoices,photos,reports,archive,shared")),
+                list(property("sorts", "uploadTs,desc;fileName,asc;sizeBytes,desc"), ";"),
+                property("uploadPath", "/api/files"),
+                property("mongoUri", ""),
+                property("fsync", "always"),
+                Path.of(property("outputDir", "build/loadtest")),
+                budgets(property("p99Budget", "")));
+    }
+
+    private static String property(String name, String defaultValue) {
+        return System.getProperty("loadtest." + name, defaultValue);
+    }
+
+    private static List<String> list(String value) {
+        return list(value, ",");
+    }
+
+    private static List<String> list(String value, String separator) {
+        return Arrays.stream(value.split(separator))
+                .map(String::trim)
+                .filter(item -> !item.isEmpty())
+                .toList();
+    }
+
+    private static Operation operation(String name) {
+        return Operation.valueOf(name.toUpperCase());
+    }
+
+    /**
+     * @param spec budgets in milliseconds, e.g. {@code list=50,download=200}
+     */
+    private static Map<Operation, Double> budgets(String spec) {
+        Map<Operation, Double> budgets = new EnumMap<>(Operation.class);
+        for (String entry : list(spec)) {
+            String[] parts = entry.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected operation=millis, got '" + entry + "'");
+            }
+            budgets.put(operation(parts[0].trim()), Double.parseDouble(parts[1].trim()));
+        }
+        return budgets;
+    }
+}
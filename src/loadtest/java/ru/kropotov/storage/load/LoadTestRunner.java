@@ -0,0 +1,72 @@
+package ru.kropotov.storage.load;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+import ru.kropotov.storage.ContentStorageApplication;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * End-to-end load test of the whole service in one JVM: the application boots on a random port
+ * against an embedded mongod and the file system object store, and virtual users drive a weighted
+ * mix of uploads, listings, downloads and deletes over HTTP. Latencies are reported per operation.
+ * <p>
+ * Run with {@code ./gradlew loadTest}; see {@link LoadTestConfig} for the {@code loadtest.*}
+ * properties. Application properties given as system properties, e.g.
+ * {@code -Dstorage.diskCache.enabled=true}, override the defaults set here. The process exits with
+ * status 1 if an operation misses its p99 budget.
+ */
+public final class LoadTestRunner {
+
+    private LoadTestRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.fromSystemProperties();
+        Path objectRoot = Files.createTempDirectory("storage-loadtest-");
+        boolean withinBudget;
+
+        try (EmbeddedMongo mongo = EmbeddedMongo.start(config.mongoUri());
+             ConfigurableApplicationContext application = new SpringApplicationBuilder(ContentStorageApplication.class)
+                     .properties(applicationProperties(config, mongo.uri(), objectRoot))
+                     .run(args)) {
+
+            Integer port = application.getEnvironment().getProperty("local.server.port", Integer.class);
+            LoadGenerator generator = new LoadGenerator(config,
+                    new StorageClient(URI.create("http://localhost:" + port), config.uploadPath()));
+
+            System.out.printf("Seeding %d files for each of %d users%n", config.seedFiles(), config.users());
+            generator.seed();
+
+            System.out.printf("Running %d virtual users: %s warmup, %s measured%n",
+                    config.concurrency(), config.warmup(), config.duration());
+            long measureFrom = System.nanoTime() + config.warmup().toNanos();
+            long measureUntil = measureFrom + config.duration().toNanos();
+            generator.run(measureFrom, measureUntil);
+
+            withinBudget = generator.report().write(config, config.duration(), System.out);
+            System.out.println("Histograms written to " + config.outputDir().toAbsolutePath());
+        } finally {
+            FileSystemUtils.deleteRecursively(objectRoot);
+        }
+
+        System.exit(withinBudget ? 0 : 1);
+    }
+
+    private static Map<String, Object> applicationProperties(LoadTestConfig config, String mongoUri, Path objectRoot) {
+        return Map.of(
+                "server.port", 0,
+                "spring.data.mongodb.uri", mongoUri,
+                "spring.data.mongodb.database", "content_storage_loadtest",
+                "storage.backend", "filesystem",
+                "storage.filesystem.root", objectRoot.toString(),
+                "storage.filesystem.fsync", config.fsync(),
+                "storage.reconciliation.enabled", false,
+                "logging.level.root", "WARN",
+                "logging.level.org.springframework.web.servlet.mvc.method.annotation", "WARN");
+    }
+}
@@ -0,0 +1,31 @@
+package ru.kropotov.storage.load;
+
+/**
+ * The endpoints a virtual user calls; latencies are reported per operation
+ */
+enum Operation {
+
+    /**
+     * {@code POST /api/files} with a multipart body, or the path set by {@code loadtest.uploadPath}
+     */
+    UPLOAD,
+
+    /**
+     * {@code GET /api/files} with a sort and, every other time, a tag
+     */
+    LIST,
+
+    /**
+     * {@code GET /d/{id}/{secret}} of a file of any user, read to the last byte
+     */
+    DOWNLOAD,
+
+    /**
+     * {@code DELETE /api/files/{id}} of one of the user's own files
+     */
+    DELETE;
+
+    String label() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,135 @@
+package ru.kropotov.storage.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+
+/**
+ * Blocking HTTP client of the storage API, authenticating with the {@code X-User-Id} header of the
+ * dev and test profiles. Every call throws {@link RequestFailedException} unless the expected status
+ * came back, so the caller only has to time it.
+ */
+final class StorageClient {
+
+    private static final String USER_ID_HEADER = "X-User-Id";
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final URI baseUri;
+    private final String uploadPath;
+
+    StorageClient(URI baseUri, String uploadPath) {
+        this.baseUri = baseUri;
+        this.uploadPath = uploadPath;
+    }
+
+    /**
+     * @param content the file content; read once, while the request is sent
+     * @param size    the exact number of bytes {@code content} yields
+     */
+    StoredFile upload(String userId, String fileName, List<String> tags, InputStream content, long size)
+            throws IOException, InterruptedException {
+        String boundary = "load-" + UUID.randomUUID();
+        String meta = objectMapper.writeValueAsString(Map.of(
+                "fileName", fileName,
+                "visibility", "PRIVATE",
+                "tags", tags,
+                "sizeBytes", size));
+        byte[] head = ("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"meta\"\r\n"
+                + "Content-Type: application/json\r\n\r\n"
+                + meta + "\r\n"
+                + "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + fileName + "\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+        byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+
+        InputStream body = new SequenceInputStream(Collections.enumeration(List.of(
+                new ByteArrayInputStream(head), content, new ByteArrayInputStream(tail))));
+        HttpRequest request = request(userId, uploadPath)
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.fromPublisher(
+                        HttpRequest.BodyPublishers.ofInputStream(() -> body), head.length + size + tail.length))
+                .build();
+
+        HttpResponse<byte[]> response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        expect(response, 201);
+        JsonNode file = objectMapper.readTree(response.body());
+        return new StoredFile(userId, file.path("id").asText(), file.path("downloadUrl").asText());
+    }
+
+    /**
+     * @param tag the tag to filter by, or {@code null} for all files of the user
+     */
+    void list(String userId, String sort, String tag) throws IOException, InterruptedException {
+        StringBuilder query = new StringBuilder("/api/files?page=0&size=20&sort=").append(encode(sort));
+        if (tag != null) {
+            query.append("&tag=").append(encode(tag));
+        }
+        HttpResponse<Void> response = http.send(request(userId, query.toString()).GET().build(),
+                HttpResponse.BodyHandlers.discarding());
+        expect(response, 200);
+    }
+
+    /**
+     * Reads the whole body, so the time includes the transfer and not just the first byte
+     */
+    void download(StoredFile file) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve(file.downloadUrl())).GET().build();
+        HttpResponse<Void> response = http.send(request, HttpResponse.BodyHandlers.discarding());
+        expect(response, 200);
+    }
+
+    void delete(StoredFile file) throws IOException, InterruptedException {
+        HttpResponse<Void> response = http.send(request(file.ownerId(), "/api/files/" + file.id()).DELETE().build(),
+                HttpResponse.BodyHandlers.discarding());
+        expect(response, 204);
+    }
+
+    private HttpRequest.Builder request(String userId, String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path))
+                .timeout(Duration.ofMinutes(2))
+                .header(USER_ID_HEADER, userId);
+    }
+
+    private static void expect(HttpResponse<?> response, int status) {
+        if (response.statusCode() != status) {
+            throw new RequestFailedException(response.request().method() + " " + response.request().uri().getPath()
+                    + " returned " + response.statusCode() + " instead of " + status);
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    record StoredFile(String ownerId, String id, String downloadUrl) {
+    }
+
+    static final class RequestFailedException extends RuntimeException {
+
+        RequestFailedException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ru.kropotov.storage.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.random.RandomGenerator;
+
+/**
+ * Values drawn with fixed relative weights, parsed from specs like {@code upload=20,list=40}
+ */
+final class Weighted<T> {
+
+    private final List<T> values;
+    private final double[] cumulative;
+
+    private Weighted(List<T> values, double[] cumulative) {
+        this.values = values;
+        this.cumulative = cumulative;
+    }
+
+    static <T> Weighted<T> parse(String spec, Function<String, T> parser) {
+        List<T> values = new ArrayList<>();
+        List<Double> weights = new ArrayList<>();
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected value=weight, got '" + entry.trim() + "' in: " + spec);
+            }
+            double weight = Double.parseDouble(parts[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weights must not be negative: " + spec);
+            }
+            if (weight > 0) {
+                values.add(parser.apply(parts[0].trim()));
+                weights.add(weight);
+            }
+        }
+        if (values.isEmpty()) {
+            throw new IllegalArgumentException("At least one positive weight is required: " + spec);
+        }
+
+        double[] cumulative = new double[weights.size()];
+        double total = 0;
+        for (int i = 0; i < weights.size(); i++) {
+            total += weights.get(i);
+            cumulative[i] = total;
+        }
+        return new Weighted<>(List.copyOf(values), cumulative);
+    }
+
+    T pick(RandomGenerator random) {
+        double point = random.nextDouble(cumulative[cumulative.length - 1]);
+        for (int i = 0; i < cumulative.length; i++) {
+            if (point < cumulative[i]) {
+                return values.get(i);
+            }
+        }
+        return values.getLast();
+    }
+
+    List<T> values() {
+        return values;
+    }
+}
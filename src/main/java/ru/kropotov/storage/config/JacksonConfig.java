@@ -0,0 +1,18 @@
+package ru.kropotov.storage.config;
+
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JacksonConfig {
+
+    /**
+     * DTOs with a {@code @JsonFilter} are serialized in full unless a response sets the filter
+     */
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer propertyFilterCustomizer() {
+        return builder -> builder.filters(new SimpleFilterProvider().setFailOnUnknownId(false));
+    }
+}
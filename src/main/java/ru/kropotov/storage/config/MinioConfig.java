@@ -1,32 +1,94 @@
 package ru.kropotov.storage.config;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import ru.kropotov.storage.config.properties.StorageProperties;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientAsyncConfiguration;
+import software.amazon.awssdk.core.client.config.SdkAdvancedAsyncClientOption;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3AsyncClientBuilder;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.S3Configuration;
 
 import java.net.URI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Configuration
 public class MinioConfig {
-    
+
+    /**
+     * With virtual threads the request thread pool no longer caps concurrent S3 calls,
+     * so the HTTP connection pool size is configurable instead of the SDK default
+     */
     @Bean
-    public S3Client s3Client() {
-        String endpoint = System.getenv().getOrDefault("MINIO_ENDPOINT", "http://localhost:9000");
-        String accessKey = System.getenv().getOrDefault("MINIO_ACCESS_KEY", "ROOTNAME");
-        String secretKey = System.getenv().getOrDefault("MINIO_SECRET_KEY", "CHANGEME123");
-        
+    public S3Client s3Client(StorageProperties storageProperties) {
+        StorageProperties.S3 settings = storageProperties.getS3();
         return S3Client.builder()
-                .endpointOverride(URI.create(endpoint))
-                .credentialsProvider(StaticCredentialsProvider.create(
-                        AwsBasicCredentials.create(accessKey, secretKey)))
+                .endpointOverride(endpoint())
+                .credentialsProvider(credentials())
                 .region(Region.US_EAST_1)
-                .serviceConfiguration(S3Configuration.builder()
-                        .pathStyleAccessEnabled(true)
-                        .build())
+                .serviceConfiguration(serviceConfiguration())
+                .httpClientBuilder(ApacheHttpClient.builder()
+                        .maxConnections(settings.getMaxConnections())
+                        .connectionAcquisitionTimeout(settings.getConnectionAcquisitionTimeout()))
+                .build();
+    }
+
+    /**
+     * Non-blocking client for the async download pipeline; its Netty event loops are only
+     * started when {@code storage.download.async} is enabled with the S3 backend
+     */
+    @Bean
+    @ConditionalOnExpression("${storage.download.async:false} and '${storage.backend:s3}'.equalsIgnoreCase('s3')")
+    public S3AsyncClient s3AsyncClient(Environment environment) {
+        S3AsyncClientBuilder builder = S3AsyncClient.builder()
+                .endpointOverride(endpoint())
+                .credentialsProvider(credentials())
+                .region(Region.US_EAST_1)
+                .serviceConfiguration(serviceConfiguration());
+        if (Threading.VIRTUAL.isActive(environment)) {
+            builder.asyncConfiguration(ClientAsyncConfiguration.builder()
+                    .advancedOption(SdkAdvancedAsyncClientOption.FUTURE_COMPLETION_EXECUTOR,
+                            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("s3-async-", 0).factory()))
+                    .build());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Workers for multipart upload parts: one virtual thread per part when
+     * {@code spring.threads.virtual.enabled} is set, a cached platform pool otherwise
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService s3PartExecutor(Environment environment) {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("s3-part-", 0).factory());
+        }
+        return Executors.newCachedThreadPool(new CustomizableThreadFactory("s3-part-"));
+    }
+
+    private static URI endpoint() {
+        return URI.create(System.getenv().getOrDefault("MINIO_ENDPOINT", "http://localhost:9000"));
+    }
+
+    private static StaticCredentialsProvider credentials() {
+        String accessKey = System.getenv().getOrDefault("MINIO_ACCESS_KEY", "ROOTNAME");
+        String secretKey = System.getenv().getOrDefault("MINIO_SECRET_KEY", "CHANGEME123");
+        return StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+    }
+
+    private static S3Configuration serviceConfiguration() {
+        return S3Configuration.builder()
+                .pathStyleAccessEnabled(true)
                 .build();
     }
-}
\ No newline at end of file
+}
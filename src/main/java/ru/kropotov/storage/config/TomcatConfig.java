@@ -0,0 +1,21 @@
+package ru.kropotov.storage.config;
+
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class TomcatConfig {
+
+    /**
+     * Answers {@code Expect: 100-continue} only once the application starts reading the body,
+     * instead of right after the headers. An upload that is resolved from its headers alone,
+     * e.g. a declared SHA-256 the user already has, is then never transmitted by the client.
+     */
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> continueResponseTimingCustomizer() {
+        return factory -> factory.addConnectorCustomizers(
+                connector -> connector.setProperty("continueResponseTiming", "onRead"));
+    }
+}
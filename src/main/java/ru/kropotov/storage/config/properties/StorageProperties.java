@@ -3,7 +3,9 @@ package ru.kropotov.storage.config.properties;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
 
+import java.nio.file.Path;
 import java.time.Duration;
 
 @Data
@@ -22,7 +24,7 @@ public class StorageProperties {
     private int cleanupHours = 4;
     
     /**
-     * Interval at which the janitor job runs
+     * Interval at which every janitor partition is cleaned
      */
     private Duration cleanupInterval = Duration.ofHours(1);
     
@@ -30,4 +32,415 @@ public class StorageProperties {
      * Batch size for janitor cleanup
      */
     private int janitorBatchSize = 1000;
-}
\ No newline at end of file
+
+    /**
+     * Interval at which the in-process tag vocabulary is reloaded to pick up tags created on other nodes
+     */
+    private Duration tagRefreshInterval = Duration.ofMinutes(5);
+
+    /**
+     * S3 multipart upload settings for large and unknown-length uploads
+     */
+    private Multipart multipart = new Multipart();
+
+    @Data
+    public static class Multipart {
+
+        /**
+         * Uploads of at least this size, or of unknown size, are sent as multipart uploads
+         */
+        private DataSize threshold = DataSize.ofMegabytes(64);
+
+        /**
+         * Initial part size; S3 requires at least 5MB for every part but the last
+         */
+        private DataSize minPartSize = DataSize.ofMegabytes(8);
+
+        /**
+         * Upper bound for adaptively grown parts
+         */
+        private DataSize maxPartSize = DataSize.ofMegabytes(256);
+
+        /**
+         * Maximum number of parts of a single upload in flight at once
+         */
+        private int parallelism = 4;
+
+        /**
+         * Memory budget for buffered parts across all concurrent uploads
+         */
+        private DataSize maxInFlight = DataSize.ofMegabytes(256);
+
+        /**
+         * Number of retries for a single failed part
+         */
+        private int partRetries = 3;
+    }
+
+    /**
+     * Batch upload settings
+     */
+    private Batch batch = new Batch();
+
+    @Data
+    public static class Batch {
+
+        /**
+         * Maximum number of files in one batch upload request
+         */
+        private int maxFiles = 1000;
+
+        /**
+         * Maximum number of files of one batch stored at once
+         */
+        private int parallelism = 8;
+
+        /**
+         * Files up to this size are buffered and stored in parallel while the next part is read;
+         * larger files are streamed to the object store one at a time
+         */
+        private DataSize maxBufferedSize = DataSize.ofMegabytes(4);
+
+        public void setMaxBufferedSize(DataSize maxBufferedSize) {
+            // buffered into one byte array, with one byte more to tell whether the part fits
+            if (maxBufferedSize.toBytes() < 0 || maxBufferedSize.toBytes() >= Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("storage.batch.maxBufferedSize must be below 2GB: " + maxBufferedSize);
+            }
+            this.maxBufferedSize = maxBufferedSize;
+        }
+    }
+
+    /**
+     * Bulk delete settings
+     */
+    private BulkDelete bulkDelete = new BulkDelete();
+
+    @Data
+    public static class BulkDelete {
+
+        /**
+         * Maximum number of file IDs in one bulk delete request; deletion by tag is not limited
+         */
+        private int maxIds = 10_000;
+
+        /**
+         * Files whose content is released and metadata removed per round trip
+         */
+        private int batchSize = 1000;
+
+        /**
+         * How long a job stays with its node without a renewal; renewed with every batch, so it
+         * must exceed the time a batch takes. A job whose lease expired is resumed by any node
+         */
+        private Duration leaseTtl = Duration.ofMinutes(5);
+
+        /**
+         * How often every node looks for RUNNING jobs with an expired lease
+         */
+        private Duration pollInterval = Duration.ofMinutes(1);
+
+        /**
+         * How long shutdown waits for running jobs to finish their current batch and hand the job back
+         */
+        private Duration shutdownTimeout = Duration.ofSeconds(30);
+    }
+
+    /**
+     * Cross-owner deduplication settings
+     */
+    private Dedup dedup = new Dedup();
+
+    @Data
+    public static class Dedup {
+
+        /**
+         * Stores content under a key derived from its SHA-256 and shares it between files
+         * through a reference-counted blob; otherwise every upload keeps its own object
+         */
+        private boolean contentAddressed = false;
+
+        /**
+         * How long an upload waits for a concurrent upload of the same content to finish storing it
+         * before it keeps its own object instead
+         */
+        private Duration claimWait = Duration.ofSeconds(5);
+    }
+
+    /**
+     * Where object content is kept
+     */
+    private Backend backend = Backend.S3;
+
+    public enum Backend {
+
+        /**
+         * An S3-compatible bucket, MinIO in the default setup
+         */
+        S3,
+
+        /**
+         * A directory tree on a local file system, for single-node installs and tests
+         */
+        FILESYSTEM
+    }
+
+    /**
+     * Settings of the file system backend
+     */
+    private Filesystem filesystem = new Filesystem();
+
+    @Data
+    public static class Filesystem {
+
+        /**
+         * Root directory of the objects; temp files are written below it, so renames stay on one file system
+         */
+        private Path root = Path.of("data", "objects");
+
+        /**
+         * What is forced to disk before a write returns
+         */
+        private Fsync fsync = Fsync.ALWAYS;
+
+        public enum Fsync {
+
+            /**
+             * Nothing, the page cache is flushed by the kernel; a crash may lose recent objects
+             */
+            NEVER,
+
+            /**
+             * The content of every object before it is renamed into place
+             */
+            FILE,
+
+            /**
+             * The content and the directory entries, so a written or deleted object survives a crash
+             */
+            ALWAYS
+        }
+    }
+
+    /**
+     * S3 client settings
+     */
+    private S3 s3 = new S3();
+
+    @Data
+    public static class S3 {
+
+        /**
+         * Size of the HTTP connection pool of the blocking S3 client. Under virtual threads this,
+         * not the request thread count, bounds concurrent object store calls
+         */
+        private int maxConnections = 50;
+
+        /**
+         * How long a call waits for a pooled connection before failing
+         */
+        private Duration connectionAcquisitionTimeout = Duration.ofSeconds(10);
+    }
+
+    /**
+     * Download pipeline settings
+     */
+    private Download download = new Download();
+
+    @Data
+    public static class Download {
+
+        /**
+         * Streams downloads through the non-blocking S3 client and servlet async I/O,
+         * so a slow client does not hold a request thread for the whole transfer; S3 backend only
+         */
+        private boolean async = false;
+
+        /**
+         * Async request timeout, zero disables it; stalled sockets are still closed by the connector write timeout
+         */
+        private Duration asyncTimeout = Duration.ZERO;
+
+        /**
+         * Lets the container send downloads that have a local file with sendfile, so the content
+         * never passes through the heap; plain connections without compression only
+         */
+        private boolean sendfile = true;
+
+        /**
+         * Maximum number of cached download descriptors
+         */
+        private long descriptorCacheSize = 10_000;
+
+        /**
+         * Upper bound for how long a rename or deletion on another node can go unnoticed by this node's cache
+         */
+        private Duration descriptorCacheTtl = Duration.ofSeconds(30);
+
+        /**
+         * {@code max-age} of downloads; the content of a file never changes, so responses are marked immutable
+         */
+        private Duration cacheMaxAge = Duration.ofDays(365);
+
+        /**
+         * Maximum number of file IDs in one archive request; an archive of a tag is not limited
+         */
+        private int archiveMaxIds = 10_000;
+
+        /**
+         * Number of objects of an archive opened ahead of the one being written
+         */
+        private int archivePrefetch = 4;
+    }
+
+    /**
+     * Local disk cache of object content for hot downloads
+     */
+    private DiskCache diskCache = new DiskCache();
+
+    @Data
+    public static class DiskCache {
+
+        /**
+         * Serves repeated downloads from local disk instead of the bucket; S3 backend only
+         */
+        private boolean enabled = false;
+
+        /**
+         * Directory of the cache; it is kept across restarts and should be on a local volume
+         */
+        private Path directory = Path.of(System.getProperty("java.io.tmpdir"), "storage-cache");
+
+        /**
+         * Disk space the cached objects may take up
+         */
+        private DataSize maxSize = DataSize.ofGigabytes(10);
+
+        /**
+         * Larger objects are never cached, so one of them cannot flush the whole cache
+         */
+        private DataSize maxEntrySize = DataSize.ofGigabytes(1);
+    }
+
+    /**
+     * Janitor work distribution across application nodes
+     */
+    private Janitor janitor = new Janitor();
+
+    @Data
+    public static class Janitor {
+
+        /**
+         * Number of object key ranges the stale files are split into, at most 16; every node must use the same value
+         */
+        private int partitions = 16;
+
+        /**
+         * Maximum number of partitions a node works on at once
+         */
+        private int parallelism = 4;
+
+        /**
+         * How often a node looks for partitions that are due; each partition is still cleaned once per cleanupInterval
+         */
+        private Duration pollInterval = Duration.ofMinutes(1);
+
+        /**
+         * How long a partition stays claimed by a node that stopped renewing it, e.g. because it died
+         */
+        private Duration leaseTtl = Duration.ofMinutes(5);
+
+        /**
+         * Longest single pass over a partition; an unfinished partition resumes from its checkpoint
+         */
+        private Duration maxRunDuration = Duration.ofMinutes(30);
+
+        /**
+         * Deletion rate in files per second a node starts at, never drops below and grows by
+         */
+        private double minRate = 50;
+
+        /**
+         * Deletion rate in files per second a node never exceeds
+         */
+        private double maxRate = 5000;
+
+        /**
+         * Mean HTTP request latency above which the janitor halves its rate
+         */
+        private Duration latencyTarget = Duration.ofMillis(250);
+
+        /**
+         * Share of failed object deletions in a batch above which the janitor halves its rate
+         */
+        private double maxErrorRate = 0.01;
+
+        /**
+         * Partitions are ranges of one hex digit of the object key, so there can be at most 16
+         */
+        public int getPartitions() {
+            return clampPartitions(partitions);
+        }
+    }
+
+    /**
+     * Reconciliation of the bucket against the metadata
+     */
+    private Reconciliation reconciliation = new Reconciliation();
+
+    @Data
+    public static class Reconciliation {
+
+        /**
+         * Deletes objects that no file or blob refers to; only keys in the layout of this application are considered
+         */
+        private boolean enabled = false;
+
+        /**
+         * Objects younger than this are never deleted, so uploads whose metadata is not written yet are safe
+         */
+        private Duration gracePeriod = Duration.ofDays(1);
+
+        /**
+         * Interval at which every partition of the bucket is scanned
+         */
+        private Duration interval = Duration.ofDays(1);
+
+        /**
+         * How often a node looks for partitions that are due
+         */
+        private Duration pollInterval = Duration.ofMinutes(5);
+
+        /**
+         * Number of key ranges the bucket is split into, at most 16; every node must use the same value
+         */
+        private int partitions = 16;
+
+        /**
+         * Maximum number of partitions a node scans at once
+         */
+        private int parallelism = 2;
+
+        /**
+         * How long a partition stays claimed by a node that stopped renewing it
+         */
+        private Duration leaseTtl = Duration.ofMinutes(5);
+
+        /**
+         * Keys listed and checked per request, at most 1000
+         */
+        private int pageSize = 1000;
+
+        /**
+         * Keys per second a node lists across all partitions it scans
+         */
+        private double maxRate = 2000;
+
+        public int getPartitions() {
+            return clampPartitions(partitions);
+        }
+    }
+
+    private static int clampPartitions(int partitions) {
+        return Math.max(1, Math.min(partitions, 16));
+    }
+}
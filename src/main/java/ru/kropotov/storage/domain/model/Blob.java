@@ -0,0 +1,31 @@
+package ru.kropotov.storage.domain.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Content-addressed object shared by all files with the same SHA-256, regardless of owner
+ */
+@Document(collection = "blobs")
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class Blob {
+
+    /**
+     * Lowercase hex SHA-256 of the content
+     */
+    @Id
+    private String id;
+    private String objectStoreKey;
+    private long sizeBytes;
+    private long refCount;
+    private BlobState state;
+    private Instant updatedTs;
+
+}
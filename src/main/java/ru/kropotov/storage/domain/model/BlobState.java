@@ -0,0 +1,10 @@
+package ru.kropotov.storage.domain.model;
+
+/**
+ * State of a content-addressed blob
+ */
+public enum BlobState {
+    PENDING,    // Claimed by an upload, object is being copied to its content-addressed key
+    READY,      // Object stored, shared by refCount files
+    DELETING    // Last reference released, object is being removed
+}
@@ -0,0 +1,55 @@
+package ru.kropotov.storage.domain.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Progress of a bulk delete, readable from any node
+ */
+@Document(collection = "delete_jobs")
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class DeleteJob {
+
+    @Id
+    private String id;
+    private String ownerId;
+    private DeleteJobState state;
+
+    /**
+     * Number of requested file IDs, {@code null} for a deletion by tag
+     */
+    private Integer requested;
+    private String tag;
+
+    /**
+     * READY files of the owner that the job moved to DELETING
+     */
+    private long matched;
+    private long deleted;
+
+    /**
+     * Files that were not deleted, because their content could not be released or the job
+     * failed before reaching them; they are back in READY
+     */
+    private long failed;
+    private Instant createdTs;
+    private Instant updatedTs;
+
+    /**
+     * Node working on the job while it is RUNNING
+     */
+    private String leaseOwner;
+
+    /**
+     * When a RUNNING job whose lease was not renewed is taken over by any node
+     */
+    private Instant leaseExpiresTs;
+
+}
@@ -0,0 +1,10 @@
+package ru.kropotov.storage.domain.model;
+
+/**
+ * State of a bulk delete job
+ */
+public enum DeleteJobState {
+    RUNNING,    // Files are marked DELETING and being removed batch by batch, by the node holding the lease
+    COMPLETED,  // Every matched file was removed or returned to READY
+    FAILED      // Stopped on an error; files not processed yet went back to READY
+}
@@ -0,0 +1,40 @@
+package ru.kropotov.storage.domain.model;
+
+import java.time.Instant;
+
+/**
+ * Part of a READY file needed to serve {@code /d/{id}/{secret}}
+ */
+public record DownloadDescriptor(
+        String id,
+        String fileName,
+        String contentType,
+        long sizeBytes,
+        Instant uploadTs,
+        String objectStoreKey,
+        String downloadSecret,
+        String sha256,
+        Visibility visibility) {
+
+    /**
+     * Document fields to project when loading a descriptor
+     */
+    public static final String[] FIELDS = {
+            "fileName", "contentType", "sizeBytes", "uploadTs", "objectStoreKey", "downloadSecret", "sha256",
+            "visibility", "state"};
+
+    public static DownloadDescriptor of(File file) {
+        return new DownloadDescriptor(file.getId(), file.getFileName(), file.getContentType(), file.getSizeBytes(),
+                file.getUploadTs(), file.getObjectStoreKey(), file.getDownloadSecret(), file.getSha256(),
+                file.getVisibility());
+    }
+
+    /**
+     * Strong entity tag: the content of a file never changes, and its SHA-256 identifies it
+     *
+     * @return the quoted tag, or {@code null} if the hash is unknown
+     */
+    public String etag() {
+        return sha256 != null ? "\"" + sha256 + "\"" : null;
+    }
+}
@@ -2,26 +2,15 @@ package ru.kropotov.storage.domain.model;
 
 import lombok.*;
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.index.CompoundIndex;
-import org.springframework.data.mongodb.core.index.CompoundIndexes;
-import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Instant;
 import java.util.List;
 
+/**
+ * Indexes are declared in {@link ru.kropotov.storage.infra.index.IndexMigrations}
+ */
 @Document(collection = "files")
-@CompoundIndexes({
-        @CompoundIndex(name = "owner_name", def = "{'ownerId':1,'fileName':1}", unique = true),
-        @CompoundIndex(
-                name = "ux_owner_sha_ready",
-                def = "{'ownerId':1,'sha256':1,'state':1}",
-                unique = true,
-                partialFilter = "{ state: 'READY' }"),
-        @CompoundIndex(def = "{'visibility':1}"),
-        @CompoundIndex(def = "{'tags':1}"),
-        @CompoundIndex(def = "{'state':1,'uploadTs':1}")
-})
 @Getter
 @Setter
 @Builder
@@ -41,7 +30,11 @@ public class File {
     private Instant uploadTs;
     private String downloadSecret;
     private String objectStoreKey;
-    @Indexed
     private FileState state;
 
+    /**
+     * Bulk delete job that moved the file to DELETING
+     */
+    private String deleteJobId;
+
 }
\ No newline at end of file
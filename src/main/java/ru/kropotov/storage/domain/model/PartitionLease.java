@@ -0,0 +1,37 @@
+package ru.kropotov.storage.domain.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+
+import java.time.Instant;
+
+/**
+ * Claim of one partition of a periodic job by one application node; each job keeps its leases in its own collection
+ */
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PartitionLease {
+
+    /**
+     * Partition number
+     */
+    @Id
+    private Integer id;
+    /**
+     * Node working on the partition, {@code null} while it is free
+     */
+    private String owner;
+    private Instant expiresTs;
+    /**
+     * When the partition is due to be processed again
+     */
+    private Instant nextRunTs;
+    /**
+     * Last key processed in an unfinished pass, where the next pass resumes
+     */
+    private String checkpointKey;
+
+}
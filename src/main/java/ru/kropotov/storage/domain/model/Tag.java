@@ -3,7 +3,6 @@ package ru.kropotov.storage.domain.model;
 import lombok.*;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Getter
@@ -17,7 +16,6 @@ public class Tag {
     @Id
     private String id;
     
-    @Indexed(unique = true)
     private String name;
     
     public Tag(String name) {
@@ -0,0 +1,15 @@
+package ru.kropotov.storage.expection;
+
+public class RangeNotSatisfiableException extends RuntimeException {
+
+    private final long resourceLength;
+
+    public RangeNotSatisfiableException(String message, long resourceLength) {
+        super(message);
+        this.resourceLength = resourceLength;
+    }
+
+    public long getResourceLength() {
+        return resourceLength;
+    }
+}
@@ -0,0 +1,297 @@
+package ru.kropotov.storage.facade;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.kropotov.storage.config.properties.StorageProperties;
+import ru.kropotov.storage.domain.model.File;
+import ru.kropotov.storage.domain.model.FileMeta;
+import ru.kropotov.storage.domain.model.FileState;
+import ru.kropotov.storage.expection.FileAlreadyExistsException;
+import ru.kropotov.storage.service.BlobService;
+import ru.kropotov.storage.service.CompletedUpload;
+import ru.kropotov.storage.service.FileService;
+import ru.kropotov.storage.service.ItemResult;
+import ru.kropotov.storage.web.dto.UploadMetaDto;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * One batch upload: the files of a single request, with one round trip per step instead of per file.
+ * <p>
+ * Files whose declared content the owner already has are answered from one lookup, the rest are
+ * reserved with one bulk insert. Parts arrive one after another on the request stream; a part that
+ * fits {@code storage.batch.maxBufferedSize} is buffered and stored on a virtual thread while the next
+ * one is read, a larger one is streamed to the object store on the request thread. At most
+ * {@code storage.batch.parallelism} parts are held or stored at once, which also bounds the memory
+ * of a batch. Stored files are finalized with one bulk write, and whatever did not make it is
+ * compensated the same way a failed single upload is.
+ */
+@Slf4j
+final class BatchUpload {
+
+    private final FileFacade fileFacade;
+    private final FileService fileService;
+    private final BlobService blobService;
+    private final StorageProperties.Batch settings;
+    private final String ownerId;
+    private final List<UploadMetaDto> metas;
+
+    private final BatchUploadItem[] items;
+    private final File[] reserved;
+    private final FileFacade.StoredContent[] stored;
+    private final String[] contentTypes;
+    private final Semaphore permits;
+
+    BatchUpload(FileFacade fileFacade, FileService fileService, BlobService blobService,
+                StorageProperties.Batch settings, String ownerId, List<UploadMetaDto> metas) {
+        if (metas.size() > settings.getMaxFiles()) {
+            throw new IllegalArgumentException("A batch may contain at most " + settings.getMaxFiles() + " files");
+        }
+        this.fileFacade = fileFacade;
+        this.fileService = fileService;
+        this.blobService = blobService;
+        this.settings = settings;
+        this.ownerId = ownerId;
+        this.metas = metas;
+
+        this.items = new BatchUploadItem[metas.size()];
+        this.reserved = new File[metas.size()];
+        this.stored = new FileFacade.StoredContent[metas.size()];
+        this.contentTypes = new String[metas.size()];
+        this.permits = new Semaphore(Math.max(1, settings.getParallelism()));
+    }
+
+    List<BatchUploadItem> run(FileFacade.PartSource parts) throws IOException {
+        matchExisting();
+        reserve();
+
+        boolean completed = false;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            int[] index = {0};
+            parts.forEach((contentType, content) -> accept(executor, index[0]++, contentType, content));
+            completed = true;
+        } finally {
+            if (!completed) {
+                abort();
+            }
+        }
+
+        finalise();
+        return List.of(items);
+    }
+
+    /**
+     * Answers files whose declared content the owner already has, so that their parts are skipped
+     */
+    private void matchExisting() {
+        List<String> declared = metas.stream()
+                .map(UploadMetaDto::getSha256)
+                .filter(Objects::nonNull)
+                .toList();
+        Map<String, File> existing = fileService.findReadyByContent(ownerId, declared);
+
+        for (int i = 0; i < metas.size(); i++) {
+            UploadMetaDto meta = metas.get(i);
+            if (meta.getFileName() == null) {
+                items[i] = BatchUploadItem.failed(null, "File name is required for every file of a batch");
+                continue;
+            }
+            File file = meta.getSha256() != null ? existing.get(meta.getSha256().toLowerCase()) : null;
+            if (file != null && (meta.getSizeBytes() == null || meta.getSizeBytes() == file.getSizeBytes())) {
+                items[i] = BatchUploadItem.existing(meta.getFileName(), file);
+            }
+        }
+    }
+
+    private void reserve() {
+        List<Integer> indexes = new ArrayList<>();
+        List<FileMeta> fileMetas = new ArrayList<>();
+        for (int i = 0; i < metas.size(); i++) {
+            if (items[i] != null) {
+                continue;
+            }
+            UploadMetaDto meta = metas.get(i);
+            indexes.add(i);
+            fileMetas.add(FileMeta.builder()
+                    .ownerId(ownerId)
+                    .fileName(meta.getFileName())
+                    .visibility(meta.getVisibility())
+                    .tags(meta.getTags())
+                    .build());
+        }
+        if (fileMetas.isEmpty()) {
+            return;
+        }
+
+        List<ItemResult<File>> reservations = fileService.reserveAll(fileMetas);
+        for (int j = 0; j < reservations.size(); j++) {
+            int i = indexes.get(j);
+            ItemResult<File> reservation = reservations.get(j);
+            if (reservation.isOk()) {
+                reserved[i] = reservation.value();
+            } else {
+                items[i] = BatchUploadItem.failed(metas.get(i).getFileName(), describe(reservation.error()));
+            }
+        }
+    }
+
+    private void accept(ExecutorService executor, int index, String contentType, InputStream content)
+            throws IOException {
+        if (index >= metas.size()) {
+            throw new IllegalArgumentException("The batch has more file parts than meta entries");
+        }
+        if (reserved[index] == null) {
+            // answered or rejected already, the part is skipped unread
+            return;
+        }
+        contentTypes[index] = contentType;
+
+        acquirePermit();
+        int maxBuffered = Math.toIntExact(settings.getMaxBufferedSize().toBytes());
+        byte[] head;
+        try {
+            head = content.readNBytes(maxBuffered + 1);
+        } catch (IOException e) {
+            permits.release();
+            throw e;
+        }
+
+        if (head.length <= maxBuffered) {
+            executor.execute(() -> {
+                try {
+                    store(index, new ByteArrayInputStream(head), head.length);
+                } finally {
+                    permits.release();
+                }
+            });
+            return;
+        }
+
+        try {
+            Long declaredSize = metas.get(index).getSizeBytes();
+            store(index, new SequenceInputStream(new ByteArrayInputStream(head), content),
+                    declaredSize != null ? declaredSize : -1);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * @param sizeBytes the exact length of a buffered part, otherwise the declared size or {@code -1}
+     */
+    private void store(int index, InputStream content, long sizeBytes) {
+        UploadMetaDto meta = metas.get(index);
+        File file = reserved[index];
+        try {
+            if (meta.getSizeBytes() != null && meta.getSizeBytes() != sizeBytes) {
+                throw new IllegalArgumentException(
+                        "Uploaded content does not match the declared size of " + meta.getSizeBytes() + " bytes");
+            }
+            stored[index] = fileFacade.storeContent(content, sizeBytes, meta.getSha256(),
+                    contentTypes[index], file.getObjectStoreKey());
+        } catch (Exception e) {
+            log.warn("Failed to store file {} of a batch: {}", file.getId(), e.toString());
+            items[index] = BatchUploadItem.failed(meta.getFileName(), describe(e));
+        }
+    }
+
+    private void finalise() {
+        List<Integer> indexes = new ArrayList<>();
+        List<CompletedUpload> uploads = new ArrayList<>();
+        for (int i = 0; i < metas.size(); i++) {
+            if (reserved[i] == null) {
+                continue;
+            }
+            if (stored[i] == null) {
+                if (items[i] == null) {
+                    items[i] = BatchUploadItem.failed(metas.get(i).getFileName(), "No file part was sent for this file");
+                }
+                continue;
+            }
+            indexes.add(i);
+            uploads.add(new CompletedUpload(reserved[i].getId(), stored[i].sha256(), stored[i].sizeBytes(),
+                    stored[i].objectStoreKey(), contentTypes[i]));
+        }
+
+        if (!uploads.isEmpty()) {
+            List<ItemResult<File>> finalized = fileService.finaliseAll(ownerId, uploads);
+            for (int j = 0; j < finalized.size(); j++) {
+                int i = indexes.get(j);
+                ItemResult<File> result = finalized.get(j);
+                items[i] = result.isOk()
+                        ? BatchUploadItem.created(result.value())
+                        : BatchUploadItem.failed(metas.get(i).getFileName(), describe(result.error()));
+            }
+        }
+
+        compensate();
+    }
+
+    /**
+     * Fails every reserved file of a batch that broke off mid-request
+     */
+    private void abort() {
+        for (int i = 0; i < metas.size(); i++) {
+            if (reserved[i] != null) {
+                items[i] = BatchUploadItem.failed(metas.get(i).getFileName(), "Batch upload failed");
+            }
+        }
+        compensate();
+    }
+
+    /**
+     * Releases the content of the reserved files that were not created and marks them FAILED
+     */
+    private void compensate() {
+        List<String> failedIds = new ArrayList<>();
+        Map<String, String> failedKeys = new LinkedHashMap<>();
+        for (int i = 0; i < metas.size(); i++) {
+            if (reserved[i] == null || items[i].outcome() == BatchUploadItem.Outcome.CREATED) {
+                continue;
+            }
+            failedIds.add(reserved[i].getId());
+            failedKeys.put(reserved[i].getId(),
+                    stored[i] != null ? stored[i].objectStoreKey() : reserved[i].getObjectStoreKey());
+        }
+        if (failedIds.isEmpty()) {
+            return;
+        }
+
+        try {
+            Set<String> unreleased = blobService.releaseAll(failedKeys);
+            if (!unreleased.isEmpty()) {
+                log.warn("Failed to release {} objects of a batch, left to reconciliation", unreleased.size());
+            }
+            fileService.updateStates(failedIds, FileState.FAILED);
+            log.debug("Compensated {} failed files of a batch", failedIds.size());
+        } catch (Exception e) {
+            log.error("Compensation failed for {} files of a batch", failedIds.size(), e);
+        }
+    }
+
+    private void acquirePermit() throws InterruptedIOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to store a batch part");
+        }
+    }
+
+    /**
+     * Only client errors are described to the client
+     */
+    private static String describe(Exception e) {
+        if (e instanceof FileAlreadyExistsException || e instanceof IllegalArgumentException) {
+            return e.getMessage();
+        }
+        return "Upload failed";
+    }
+}
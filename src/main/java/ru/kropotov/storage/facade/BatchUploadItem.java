@@ -0,0 +1,32 @@
+package ru.kropotov.storage.facade;
+
+import ru.kropotov.storage.domain.model.File;
+
+/**
+ * Result of one file of a batch upload
+ *
+ * @param file the stored or matching file, {@code null} if the file failed
+ * @param error why the file failed, {@code null} otherwise
+ */
+public record BatchUploadItem(String fileName, Outcome outcome, File file, String error) {
+
+    public enum Outcome {
+        /** Stored as a new file */
+        CREATED,
+        /** The owner already had the declared content; the part was not stored */
+        EXISTING,
+        FAILED
+    }
+
+    static BatchUploadItem created(File file) {
+        return new BatchUploadItem(file.getFileName(), Outcome.CREATED, file, null);
+    }
+
+    static BatchUploadItem existing(String fileName, File file) {
+        return new BatchUploadItem(fileName, Outcome.EXISTING, file, null);
+    }
+
+    static BatchUploadItem failed(String fileName, String error) {
+        return new BatchUploadItem(fileName, Outcome.FAILED, null, error);
+    }
+}
@@ -4,23 +4,36 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import ru.kropotov.storage.config.properties.StorageProperties;
+import ru.kropotov.storage.domain.model.DeleteJob;
+import ru.kropotov.storage.domain.model.DownloadDescriptor;
 import ru.kropotov.storage.domain.model.File;
 import ru.kropotov.storage.domain.model.FileMeta;
 import ru.kropotov.storage.domain.model.FileState;
 import ru.kropotov.storage.expection.AccessDeniedException;
 import ru.kropotov.storage.expection.FileAlreadyExistsException;
 import ru.kropotov.storage.expection.FileNotFoundException;
+import ru.kropotov.storage.service.BlobService;
+import ru.kropotov.storage.service.BulkDeleteService;
 import ru.kropotov.storage.service.FileService;
+import ru.kropotov.storage.service.KeysetPage;
+import ru.kropotov.storage.service.KeysetPosition;
 import ru.kropotov.storage.infra.ObjectStoreClient;
+import ru.kropotov.storage.infra.io.CountingInputStream;
 import ru.kropotov.storage.web.dto.UploadMetaDto;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.util.HexFormat;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Application‑layer façade that encapsulates the end‑to‑end workflow around files
@@ -34,19 +47,37 @@ public class FileFacade {
 
     private final ObjectStoreClient objectStoreClient;
     private final FileService fileService;
+    private final BlobService blobService;
+    private final BulkDeleteService bulkDeleteService;
+    private final StorageProperties storageProperties;
 
     public File upload(String ownerId, MultipartFile multipartFile, UploadMetaDto uploadMetaDto) {
+        try (InputStream content = multipartFile.getInputStream()) {
+            return upload(ownerId, content, multipartFile.getSize(),
+                    multipartFile.getOriginalFilename(), multipartFile.getContentType(), uploadMetaDto);
+        } catch (IOException e) {
+            throw new RuntimeException("Upload failed", e);
+        }
+    }
+
+    /**
+     * Uploads content that is read straight from the request, without servlet spooling.
+     * The caller owns {@code content}; {@code sizeBytes} is the declared length, or {@code -1}
+     * if unknown. A declared length is verified against the number of bytes actually read.
+     */
+    public File upload(String ownerId, InputStream content, long sizeBytes,
+                       String originalFileName, String contentType, UploadMetaDto uploadMetaDto) {
         String reservedId = null;
         String objectStoreKey = null;
 
         try {
             String fileName = uploadMetaDto.getFileName() != null ?
-                    uploadMetaDto.getFileName() : multipartFile.getOriginalFilename();
+                    uploadMetaDto.getFileName() : originalFileName;
 
             FileMeta fileMeta = FileMeta.builder()
                     .ownerId(ownerId)
                     .fileName(fileName)
-                    .contentType(multipartFile.getContentType())
+                    .contentType(contentType)
                     .visibility(uploadMetaDto.getVisibility())
                     .tags(uploadMetaDto.getTags())
                     .build();
@@ -57,12 +88,16 @@ public class FileFacade {
 
             log.info("Reserved file ID: {} with key: {}", reservedId, objectStoreKey);
 
-            UploadResult uploadResult = uploadWithSha256(multipartFile, objectStoreKey);
+            UploadResult uploadResult = uploadWithSha256(content, sizeBytes, uploadMetaDto.getSha256(),
+                    contentType, objectStoreKey);
+
+            objectStoreKey = storeContentAddressed(uploadResult, objectStoreKey);
 
             File finalizedFile = fileService.finaliseUpload(
                     reservedId,
                     uploadResult.sha256,
-                    uploadResult.actualSize
+                    uploadResult.actualSize,
+                    objectStoreKey
             );
 
             log.info("Successfully uploaded file: {} ({})", reservedId, finalizedFile.getFileName());
@@ -75,6 +110,13 @@ public class FileFacade {
 
             throw e;
 
+        } catch (IllegalArgumentException e) {
+            log.warn("Upload rejected for reserved ID: {} - {}", reservedId, e.getMessage());
+
+            compensateFailedUpload(reservedId, objectStoreKey);
+
+            throw e;
+
         } catch (Exception e) {
             log.error("Upload failed for reserved ID: {}", reservedId, e);
 
@@ -84,12 +126,55 @@ public class FileFacade {
         }
     }
 
-    public Page<File> listOwn(String userId, Optional<String> tag, Pageable pageable) {
-        return fileService.getUserFiles(userId, tag, pageable);
+    /**
+     * Uploads many files of one owner in one pass, see {@link BatchUpload}
+     *
+     * @param metas one entry per file, in the order of the parts; every entry must name its file
+     * @param parts the file parts, read once and in order
+     * @return one result per entry of {@code metas}, in the same order
+     */
+    public List<BatchUploadItem> uploadBatch(String ownerId, List<UploadMetaDto> metas,
+                                             PartSource parts) throws IOException {
+        return new BatchUpload(this, fileService, blobService, storageProperties.getBatch(), ownerId, metas)
+                .run(parts);
+    }
+
+    /**
+     * Finds a file the owner has already uploaded with the given content, so that the client
+     * does not have to send it again
+     *
+     * @param sha256 declared SHA-256, no lookup is made if {@code null}
+     * @param sizeBytes declared size, or {@code null}; a file of another size is not a match
+     */
+    public Optional<File> findByContent(String ownerId, String sha256, Long sizeBytes) {
+        if (sha256 == null) {
+            return Optional.empty();
+        }
+        return fileService.findReadyByContent(ownerId, sha256)
+                .filter(file -> sizeBytes == null || file.getSizeBytes() == sizeBytes);
+    }
+
+    /**
+     * @param fields the {@link File} properties to read, all of them if empty
+     */
+    public Page<File> listOwn(String userId, Optional<String> tag, Pageable pageable, Set<String> fields) {
+        return fileService.getUserFiles(userId, tag, pageable, fields);
+    }
+
+    public Page<File> listPublic(Optional<String> tag, Pageable pageable, Set<String> fields) {
+        return fileService.getPublicFiles(tag, pageable, fields);
+    }
+
+    public KeysetPage<File> listOwn(String userId, Optional<String> tag, String sortField,
+                                    Sort.Direction direction, KeysetPosition after, int limit,
+                                    Set<String> fields) {
+        return fileService.getUserFiles(userId, tag, sortField, direction, after, limit, fields);
     }
 
-    public Page<File> listPublic(Optional<String> tag, Pageable pageable) {
-        return fileService.getPublicFiles(tag, pageable);
+    public KeysetPage<File> listPublic(Optional<String> tag, String sortField,
+                                       Sort.Direction direction, KeysetPosition after, int limit,
+                                       Set<String> fields) {
+        return fileService.getPublicFiles(tag, sortField, direction, after, limit, fields);
     }
 
     public File rename(String fileId, String ownerId, String newName) {
@@ -99,7 +184,7 @@ public class FileFacade {
     public void delete(String fileId, String ownerId) {
         try {
             File file = fileService.markForDeletion(fileId, ownerId);
-            objectStoreClient.delete(file.getObjectStoreKey());
+            blobService.release(file.getObjectStoreKey());
             fileService.deleteMetadata(fileId);
 
             log.info("Successfully deleted file: {}", fileId);
@@ -118,29 +203,101 @@ public class FileFacade {
         }
     }
 
-    public File getFileForDownload(String fileId, String secret) {
-        return fileService.getFileForDownload(fileId, secret);
+    /**
+     * Starts deleting the owner's files given by IDs or by tag, see {@link BulkDeleteService}
+     */
+    public DeleteJob deleteAll(String ownerId, List<String> fileIds, String tag) {
+        return bulkDeleteService.start(ownerId, fileIds, tag);
+    }
+
+    public DeleteJob getDeleteJob(String jobId, String ownerId) {
+        return bulkDeleteService.get(jobId, ownerId);
     }
 
-    private UploadResult uploadWithSha256(MultipartFile multipartFile, String objectStoreKey) throws Exception {
+    /**
+     * Files for an archive download: the given IDs among the owner's and public files,
+     * or the owner's files with the tag. The caller must close the stream.
+     */
+    public Stream<File> filesForArchive(String ownerId, List<String> fileIds, String tag) {
+        boolean byIds = fileIds != null && !fileIds.isEmpty();
+        boolean byTag = tag != null && !tag.trim().isEmpty();
+        if (byIds == byTag) {
+            throw new IllegalArgumentException("Either file IDs or a tag must be given");
+        }
+        int maxIds = storageProperties.getDownload().getArchiveMaxIds();
+        if (byIds && fileIds.size() > maxIds) {
+            throw new IllegalArgumentException("At most " + maxIds + " files may be archived at once");
+        }
+        return fileService.streamForArchive(ownerId, fileIds, tag);
+    }
+
+    public DownloadDescriptor getFileForDownload(String fileId, String secret) {
+        return fileService.getDownloadDescriptor(fileId, secret);
+    }
+
+    /**
+     * Stores the content of a reserved file, verifying the declared size and SHA-256
+     *
+     * @return what is needed to finalize the file
+     */
+    StoredContent storeContent(InputStream content, long sizeBytes, String declaredSha256,
+                               String contentType, String objectStoreKey) throws Exception {
+        UploadResult uploadResult = uploadWithSha256(content, sizeBytes, declaredSha256, contentType, objectStoreKey);
+        String storedKey = storeContentAddressed(uploadResult, objectStoreKey);
+        return new StoredContent(uploadResult.sha256, uploadResult.actualSize, storedKey);
+    }
+
+    private UploadResult uploadWithSha256(InputStream content, long sizeBytes, String declaredSha256,
+                                          String contentType, String objectStoreKey) throws Exception {
         MessageDigest md = MessageDigest.getInstance("SHA-256");
 
-        try (InputStream originalStream = multipartFile.getInputStream();
-             DigestInputStream hashingStream = new DigestInputStream(originalStream, md)) {
+        CountingInputStream countingStream = new CountingInputStream(content);
+        DigestInputStream hashingStream = new DigestInputStream(countingStream, md);
+
+        if (sizeBytes < 0 || sizeBytes >= storageProperties.getMultipart().getThreshold().toBytes()) {
+            objectStoreClient.uploadMultipart(hashingStream, sizeBytes, contentType, objectStoreKey);
+        } else {
+            objectStoreClient.uploadWithKey(hashingStream, sizeBytes, contentType, objectStoreKey);
+        }
 
-            objectStoreClient.uploadWithKey(hashingStream, multipartFile.getSize(),
-                    multipartFile.getContentType(), objectStoreKey);
+        if (sizeBytes >= 0 && (countingStream.getCount() != sizeBytes || hashingStream.read() != -1)) {
+            throw new IllegalArgumentException(
+                    "Uploaded content does not match the declared size of " + sizeBytes + " bytes");
+        }
 
-            String sha256 = HexFormat.of().formatHex(md.digest());
+        String sha256 = HexFormat.of().formatHex(md.digest());
 
-            return new UploadResult(sha256, multipartFile.getSize());
+        if (declaredSha256 != null && !declaredSha256.equalsIgnoreCase(sha256)) {
+            throw new IllegalArgumentException("Uploaded content does not match the declared SHA-256");
         }
+
+        return new UploadResult(sha256, countingStream.getCount());
+    }
+
+    /**
+     * With content addressing enabled, moves the uploaded object under its content-addressed key,
+     * or references the copy that is already there
+     *
+     * @return the key the file should point to
+     */
+    private String storeContentAddressed(UploadResult uploadResult, String uploadedKey) {
+        if (!blobService.isEnabled()) {
+            return uploadedKey;
+        }
+
+        String contentKey = blobService.acquire(uploadResult.sha256, uploadedKey, uploadResult.actualSize);
+        if (contentKey == null) {
+            return uploadedKey;
+        }
+
+        objectStoreClient.delete(uploadedKey);
+        return contentKey;
     }
 
     private void compensateFailedUpload(String reservedId, String objectStoreKey) {
         try {
             if (objectStoreKey != null) {
-                objectStoreClient.delete(objectStoreKey);
+                blobService.release(objectStoreKey);
             }
 
             if (reservedId != null) {
@@ -154,6 +311,28 @@ public class FileFacade {
         }
     }
 
+    /**
+     * Source of the file parts of a batch upload
+     */
+    @FunctionalInterface
+    public interface PartSource {
+
+        void forEach(PartConsumer consumer) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface PartConsumer {
+
+        /**
+         * @param contentType content type of the part, may be {@code null}
+         * @param content live part stream, valid only until this method returns
+         */
+        void accept(String contentType, InputStream content) throws IOException;
+    }
+
+    record StoredContent(String sha256, long sizeBytes, String objectStoreKey) {
+    }
+
     private static class UploadResult {
         final String sha256;
         final long actualSize;
@@ -0,0 +1,642 @@
+package ru.kropotov.storage.infra;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.kropotov.storage.config.properties.StorageProperties;
+import ru.kropotov.storage.infra.dto.ObjectListing;
+import ru.kropotov.storage.infra.dto.UploadResult;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Read-through cache of object content on local disk, in front of the object store.
+ * <p>
+ * A miss is streamed from the object store as before, and the bytes are teed into a temporary file
+ * on the way. Only a stream read to its end becomes an entry, so an aborted download leaves nothing
+ * behind. Every entry keeps the SHA-256 of its content in a metadata file next to it, which must
+ * match the content address of {@code cas/} keys. Entries are weighed by size and evicted by
+ * Caffeine's frequency-aware policy once {@code storage.diskCache.maxSize} is exceeded, so a burst
+ * of one-off downloads does not flush the hot objects.
+ * <p>
+ * On startup the index is rebuilt from the cache directory, so a node is warm right after a deploy.
+ * Restored entries are checked against their digest before they are trusted: a full read verifies
+ * it on the way and fails the stream on a mismatch, a range read hashes the whole entry first.
+ * Object keys never get other content, so an entry is only dropped when its object is deleted or
+ * overwritten through this client.
+ * <p>
+ * Verified entries are also offered as {@linkplain #localFile(String) local files}, which downloads
+ * hand to the container's sendfile instead of reading them.
+ */
+@Slf4j
+@Primary
+@Component
+@ConditionalOnExpression("${storage.disk-cache.enabled:false} and '${storage.backend:s3}'.equalsIgnoreCase('s3')")
+public class CachingObjectStoreClient implements ObjectStoreClient {
+
+    static final String CACHE_NAME = "objectDiskCache";
+
+    private static final String CONTENT_KEY_PREFIX = "cas/";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final HexFormat HEX = HexFormat.of();
+
+    /**
+     * Names of the files this cache writes: the hashed key, its metadata, and temporary files of
+     * either, with the random digits {@link Files#createTempFile} inserts
+     */
+    private static final Pattern OWN_FILE_NAME = Pattern.compile("([0-9a-f]{64})(\\.meta)?(\\d+\\" + TEMP_SUFFIX + ")?");
+
+    /**
+     * Evicted files outlive their entry briefly, as the container may be about to send one of them
+     */
+    private static final Executor EVICTED_FILE_REMOVAL = CompletableFuture.delayedExecutor(30, TimeUnit.SECONDS);
+
+    private final ObjectStoreClient delegate;
+    private final Path directory;
+    private final long maxEntrySize;
+    private final Cache<String, CachedObject> entries;
+    private final Set<String> filling = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public CachingObjectStoreClient(MinioObjectStoreClient delegate, StorageProperties storageProperties,
+                                    MeterRegistry meterRegistry) {
+        this(delegate, storageProperties.getDiskCache(), meterRegistry);
+    }
+
+    CachingObjectStoreClient(ObjectStoreClient delegate, StorageProperties.DiskCache settings,
+                             MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.directory = settings.getDirectory();
+        this.maxEntrySize = Math.min(settings.getMaxEntrySize().toBytes(), Integer.MAX_VALUE);
+        this.entries = Caffeine.newBuilder()
+                .maximumWeight(settings.getMaxSize().toBytes())
+                .weigher((String key, CachedObject entry) -> (int) Math.min(entry.sizeBytes, Integer.MAX_VALUE))
+                .evictionListener((String key, CachedObject entry, RemovalCause cause) -> {
+                    if (entry != null) {
+                        EVICTED_FILE_REMOVAL.execute(entry::deleteFilesIfUnchanged);
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, entries, CACHE_NAME);
+
+        try {
+            rebuild();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open disk cache in " + directory, e);
+        }
+    }
+
+    @Override
+    public UploadResult upload(InputStream inputStream, long sizeBytes, String contentType) {
+        return delegate.upload(inputStream, sizeBytes, contentType);
+    }
+
+    @Override
+    public void uploadWithKey(InputStream inputStream, long sizeBytes, String contentType, String key) {
+        delegate.uploadWithKey(inputStream, sizeBytes, contentType, key);
+        invalidate(key);
+    }
+
+    @Override
+    public void uploadMultipart(InputStream inputStream, long sizeBytes, String contentType, String key) {
+        delegate.uploadMultipart(inputStream, sizeBytes, contentType, key);
+        invalidate(key);
+    }
+
+    @Override
+    public InputStream download(String key) {
+        CachedObject entry = entries.getIfPresent(key);
+        if (entry != null) {
+            InputStream cached = open(key, entry);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        InputStream content = delegate.download(key);
+        // one download fills an entry, concurrent misses of the same key just pass through
+        if (!filling.add(key)) {
+            return content;
+        }
+        try {
+            return new FillingInputStream(key, content);
+        } catch (IOException e) {
+            filling.remove(key);
+            log.warn("Failed to start caching object {}: {}", key, e.toString());
+            return content;
+        }
+    }
+
+    @Override
+    public InputStream download(String key, long offset, long length) {
+        CachedObject entry = entries.getIfPresent(key);
+        if (entry != null && offset + length <= entry.sizeBytes && verify(key, entry)) {
+            try {
+                InputStream content = Files.newInputStream(entry.data);
+                try {
+                    content.skipNBytes(offset);
+                } catch (IOException e) {
+                    content.close();
+                    throw e;
+                }
+                return new RangeInputStream(content, length);
+            } catch (IOException e) {
+                log.warn("Failed to read cached object {}, reading it from the object store: {}", key, e.toString());
+                remove(key, entry);
+            }
+        }
+        return delegate.download(key, offset, length);
+    }
+
+    /**
+     * Only entries whose content is verified are handed out
+     */
+    @Override
+    public Optional<Path> localFile(String key) {
+        CachedObject entry = entries.getIfPresent(key);
+        return entry != null && verify(key, entry) ? Optional.of(entry.data) : Optional.empty();
+    }
+
+    @Override
+    public void copy(String sourceKey, String targetKey, long sizeBytes) {
+        delegate.copy(sourceKey, targetKey, sizeBytes);
+        invalidate(targetKey);
+    }
+
+    @Override
+    public void delete(String key) {
+        delegate.delete(key);
+        invalidate(key);
+    }
+
+    @Override
+    public Set<String> deleteAll(Collection<String> keys) {
+        Set<String> failed = delegate.deleteAll(keys);
+        keys.forEach(this::invalidate);
+        return failed;
+    }
+
+    @Override
+    public ObjectListing list(String startAfter, int maxKeys) {
+        return delegate.list(startAfter, maxKeys);
+    }
+
+    private void invalidate(String key) {
+        CachedObject entry = entries.asMap().remove(key);
+        if (entry != null) {
+            entry.deleteFiles();
+        }
+    }
+
+    private void remove(String key, CachedObject entry) {
+        if (entries.asMap().remove(key, entry)) {
+            entry.deleteFiles();
+        }
+    }
+
+    /**
+     * @return the cached content, or {@code null} if the entry is gone from disk
+     */
+    private InputStream open(String key, CachedObject entry) {
+        try {
+            InputStream content = Files.newInputStream(entry.data);
+            return entry.verified ? content : new VerifyingInputStream(key, entry, content);
+        } catch (IOException e) {
+            log.warn("Failed to read cached object {}, reading it from the object store: {}", key, e.toString());
+            remove(key, entry);
+            return null;
+        }
+    }
+
+    /**
+     * Hashes a restored entry once before a range of it is served
+     */
+    private boolean verify(String key, CachedObject entry) {
+        if (entry.verified) {
+            return true;
+        }
+        MessageDigest digest = sha256();
+        try (InputStream content = new DigestInputStream(Files.newInputStream(entry.data), digest)) {
+            content.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            log.warn("Failed to verify cached object {}: {}", key, e.toString());
+            remove(key, entry);
+            return false;
+        }
+        if (!HEX.formatHex(digest.digest()).equals(entry.sha256)) {
+            log.warn("Cached object {} is corrupt, dropping it", key);
+            remove(key, entry);
+            return false;
+        }
+        entry.verified = true;
+        return true;
+    }
+
+    /**
+     * Indexes the entries left in the cache directory and removes anything incomplete. Only files
+     * in the cache's own layout are considered, so files of others in a shared directory are kept.
+     */
+    private void rebuild() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory, 2)) {
+            files = walk.filter(Files::isRegularFile)
+                    .filter(this::isOwnFile)
+                    .toList();
+        }
+
+        int restored = 0;
+        long restoredBytes = 0;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                Files.deleteIfExists(file);
+            } else if (name.endsWith(META_SUFFIX)) {
+                CachedObject entry = restore(file);
+                if (entry != null) {
+                    entries.put(entry.key, entry);
+                    restored++;
+                    restoredBytes += entry.sizeBytes;
+                }
+            } else if (Files.notExists(metaOf(file))) {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        log.info("Disk cache in {} restored {} objects, {} bytes", directory, restored, restoredBytes);
+    }
+
+    private CachedObject restore(Path meta) {
+        Path data = meta.resolveSibling(meta.getFileName().toString().replace(META_SUFFIX, ""));
+        try {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(meta, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+            String key = properties.getProperty("key");
+            String sha256 = properties.getProperty("sha256");
+            long sizeBytes = Long.parseLong(properties.getProperty("sizeBytes", "-1"));
+
+            boolean valid = key != null && sha256 != null
+                    && dataOf(key).equals(data)
+                    && Files.exists(data) && Files.size(data) == sizeBytes
+                    && matchesContentKey(key, sha256);
+            if (valid) {
+                return new CachedObject(key, data, meta, sizeBytes, sha256, false);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Unreadable disk cache entry {}", meta, e);
+        }
+        new CachedObject(null, data, meta, 0, null, false).deleteFiles();
+        return null;
+    }
+
+    /**
+     * @return whether the file is named and placed the way {@link #dataOf(String)} places entries
+     */
+    private boolean isOwnFile(Path file) {
+        Matcher name = OWN_FILE_NAME.matcher(file.getFileName().toString());
+        Path shard = file.getParent();
+        return name.matches()
+                && directory.equals(shard.getParent())
+                && shard.getFileName().toString().equals(name.group(1).substring(0, 2));
+    }
+
+    private Path dataOf(String key) {
+        String name = HEX.formatHex(sha256().digest(key.getBytes(StandardCharsets.UTF_8)));
+        return directory.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    private static Path metaOf(Path data) {
+        return data.resolveSibling(data.getFileName() + META_SUFFIX);
+    }
+
+    /**
+     * Content-addressed keys end with the SHA-256 of their content
+     */
+    private static boolean matchesContentKey(String key, String sha256) {
+        return !key.startsWith(CONTENT_KEY_PREFIX) || key.endsWith("/" + sha256);
+    }
+
+    /**
+     * @return the identity of the file on its file system, or {@code null} if unknown
+     */
+    private static Object fileKey(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static final class CachedObject {
+
+        private final String key;
+        private final Path data;
+        private final Path meta;
+        private final long sizeBytes;
+        private final String sha256;
+        private final Object fileKey;
+        private volatile boolean verified;
+
+        private CachedObject(String key, Path data, Path meta, long sizeBytes, String sha256, boolean verified) {
+            this.key = key;
+            this.data = data;
+            this.meta = meta;
+            this.sizeBytes = sizeBytes;
+            this.sha256 = sha256;
+            this.fileKey = fileKey(data);
+            this.verified = verified;
+        }
+
+        /**
+         * Skips files that were replaced by a new entry of the same key in the meantime
+         */
+        void deleteFilesIfUnchanged() {
+            Object current = fileKey(data);
+            if (fileKey == null || current == null || fileKey.equals(current)) {
+                deleteFiles();
+            }
+        }
+
+        void deleteFiles() {
+            try {
+                // the metadata goes first, so a half-deleted entry is not restored
+                Files.deleteIfExists(meta);
+                Files.deleteIfExists(data);
+            } catch (IOException e) {
+                log.warn("Failed to delete disk cache entry {}: {}", data, e.toString());
+            }
+        }
+    }
+
+    /**
+     * Copies an object stream into a new entry while it is read. Caching problems only abandon
+     * the entry, they never fail the download.
+     */
+    private final class FillingInputStream extends FilterInputStream {
+
+        private final String key;
+        private final Path data;
+        private final Path temp;
+        private final MessageDigest digest = sha256();
+        private OutputStream out;
+        private long sizeBytes;
+
+        private FillingInputStream(String key, InputStream in) throws IOException {
+            super(in);
+            this.key = key;
+            this.data = dataOf(key);
+            Files.createDirectories(data.getParent());
+            this.temp = Files.createTempFile(data.getParent(), data.getFileName().toString(), TEMP_SUFFIX);
+            this.out = new BufferedOutputStream(Files.newOutputStream(temp));
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                complete();
+            } else {
+                append(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n == -1) {
+                complete();
+            } else if (n > 0) {
+                append(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            abandon();
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            abandon();
+            super.close();
+        }
+
+        private void append(byte[] b, int off, int len) {
+            if (out == null) {
+                return;
+            }
+            if (sizeBytes + len > maxEntrySize) {
+                abandon();
+                return;
+            }
+            try {
+                out.write(b, off, len);
+                digest.update(b, off, len);
+                sizeBytes += len;
+            } catch (IOException e) {
+                log.warn("Failed to cache object {}: {}", key, e.toString());
+                abandon();
+            }
+        }
+
+        private void complete() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.close();
+                out = null;
+                String sha256 = HEX.formatHex(digest.digest());
+                if (!matchesContentKey(key, sha256)) {
+                    log.warn("Object {} does not match its content address, not caching it", key);
+                    Files.deleteIfExists(temp);
+                    return;
+                }
+
+                Path meta = metaOf(data);
+                Path metaTemp = Files.createTempFile(data.getParent(), meta.getFileName().toString(), TEMP_SUFFIX);
+                Properties properties = new Properties();
+                properties.setProperty("key", key);
+                properties.setProperty("sha256", sha256);
+                properties.setProperty("sizeBytes", Long.toString(sizeBytes));
+                try (Writer writer = Files.newBufferedWriter(metaTemp, StandardCharsets.UTF_8)) {
+                    properties.store(writer, null);
+                }
+
+                // the content is in place before its metadata, a crash in between leaves an orphan that rebuild removes
+                Files.move(temp, data, StandardCopyOption.ATOMIC_MOVE);
+                Files.move(metaTemp, meta, StandardCopyOption.ATOMIC_MOVE);
+                entries.put(key, new CachedObject(key, data, meta, sizeBytes, sha256, true));
+                log.debug("Cached object {}, {} bytes", key, sizeBytes);
+            } catch (IOException e) {
+                log.warn("Failed to cache object {}: {}", key, e.toString());
+                deleteTemp();
+            } finally {
+                filling.remove(key);
+            }
+        }
+
+        private void abandon() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    log.debug("Failed to close disk cache entry of {}", key, e);
+                }
+                out = null;
+                deleteTemp();
+            }
+            filling.remove(key);
+        }
+
+        private void deleteTemp() {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                log.debug("Failed to delete disk cache temp file {}", temp, e);
+            }
+        }
+    }
+
+    /**
+     * Serves a restored entry and checks its digest at the end; a mismatch drops the entry and
+     * fails the read, so corrupt content is never passed on as a complete download
+     */
+    private final class VerifyingInputStream extends DigestInputStream {
+
+        private final String key;
+        private final CachedObject entry;
+        private boolean unverifiable;
+
+        private VerifyingInputStream(String key, CachedObject entry, InputStream in) {
+            super(in, sha256());
+            this.key = key;
+            this.entry = entry;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                check();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n == -1) {
+                check();
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes are not hashed, the stream can no longer be verified
+            unverifiable = true;
+            return super.skip(n);
+        }
+
+        private void check() throws IOException {
+            if (unverifiable || entry.verified) {
+                return;
+            }
+            if (HEX.formatHex(getMessageDigest().digest()).equals(entry.sha256)) {
+                entry.verified = true;
+                return;
+            }
+            unverifiable = true;
+            remove(key, entry);
+            throw new IOException("Cached object " + key + " is corrupt");
+        }
+    }
+
+    private static final class RangeInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        private RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b != -1) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
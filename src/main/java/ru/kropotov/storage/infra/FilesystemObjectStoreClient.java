@@ -0,0 +1,420 @@
+package ru.kropotov.storage.infra;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.kropotov.storage.config.properties.StorageProperties;
+import ru.kropotov.storage.infra.dto.ObjectListing;
+import ru.kropotov.storage.infra.dto.UploadResult;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Object store on a local file system, for single-node installs, tests and benchmarks without a network hop.
+ * <p>
+ * An object is a file named by the hex of its key's UTF-8 bytes, so file names sort exactly like
+ * S3 keys. Files are sharded into two directory levels named by the first 6 and the next 2 key bytes,
+ * in hex and padded with {@code -} for shorter keys, which keeps the tree walk in key order for
+ * {@link #list(String, int)}. Keys of up to {@value #MAX_KEY_BYTES} bytes are supported.
+ * <p>
+ * Content is written to a temp file under the same root and renamed into place atomically, so
+ * readers never see a partial object. {@code storage.filesystem.fsync} decides how much of that
+ * is forced to disk before the write returns. Ranges are read with positional reads on the open
+ * file; the content type is not kept, as it lives in the file metadata.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "storage", name = "backend", havingValue = "filesystem")
+public class FilesystemObjectStoreClient implements ObjectStoreClient {
+
+    static final int MAX_KEY_BYTES = 127;
+
+    private static final int SHARD_HEX_CHARS = 16;
+    private static final int FIRST_SHARD_HEX_CHARS = 12;
+    private static final Pattern FIRST_SHARD = Pattern.compile("[0-9a-f-]{12}");
+    private static final Pattern SECOND_SHARD = Pattern.compile("[0-9a-f-]{4}");
+    private static final Pattern OBJECT_NAME = Pattern.compile("([0-9a-f]{2})+");
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path root;
+    private final Path tempDirectory;
+    private final StorageProperties.Filesystem.Fsync fsync;
+
+    @Autowired
+    public FilesystemObjectStoreClient(StorageProperties storageProperties) {
+        this(storageProperties.getFilesystem());
+    }
+
+    FilesystemObjectStoreClient(StorageProperties.Filesystem settings) {
+        this.root = settings.getRoot().toAbsolutePath();
+        this.tempDirectory = root.resolve("tmp");
+        this.fsync = settings.getFsync();
+    }
+
+    /**
+     * Temp files left by a previous run are uploads that never completed
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            Files.createDirectories(tempDirectory);
+            try (Stream<Path> leftovers = Files.list(tempDirectory)) {
+                for (Path leftover : leftovers.toList()) {
+                    Files.deleteIfExists(leftover);
+                }
+            }
+            log.info("Object store directory '{}' ready, fsync {}", root, fsync);
+        } catch (IOException e) {
+            throw new IllegalStateException("Object store directory is not usable: " + root, e);
+        }
+    }
+
+    @Override
+    public UploadResult upload(InputStream inputStream, long sizeBytes, String contentType) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String key = generateKey();
+            uploadWithKey(new DigestInputStream(inputStream, digest), sizeBytes, contentType, key);
+
+            String sha256 = HEX.formatHex(digest.digest());
+            log.info("Successfully uploaded object with key: {}, size: {}, sha256: {}", key, sizeBytes, sha256);
+            return new UploadResult(key, sha256, sizeBytes);
+
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not available", e);
+        }
+    }
+
+    @Override
+    public void uploadWithKey(InputStream inputStream, long sizeBytes, String contentType, String key) {
+        Path target = path(key);
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(tempDirectory, "upload-", ".part");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                long written = inputStream.transferTo(Channels.newOutputStream(channel));
+                if (sizeBytes >= 0 && written != sizeBytes) {
+                    throw new IOException("Expected " + sizeBytes + " bytes but received " + written);
+                }
+                if (fsync != StorageProperties.Filesystem.Fsync.NEVER) {
+                    channel.force(true);
+                }
+            }
+            moveIntoPlace(temp, target);
+            log.info("Successfully uploaded object with key: {}", key);
+
+        } catch (Exception e) {
+            deleteQuietly(temp);
+            throw new RuntimeException("Failed to upload object with key: " + key, e);
+        }
+    }
+
+    /**
+     * Local writes gain nothing from parts, the content is written as one file
+     */
+    @Override
+    public void uploadMultipart(InputStream inputStream, long sizeBytes, String contentType, String key) {
+        uploadWithKey(inputStream, sizeBytes, contentType, key);
+    }
+
+    @Override
+    public InputStream download(String key) {
+        try {
+            return Files.newInputStream(path(key));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to download object with key: " + key, e);
+        }
+    }
+
+    @Override
+    public InputStream download(String key, long offset, long length) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(path(key), StandardOpenOption.READ);
+            if (offset + length > channel.size()) {
+                throw new IOException("Range " + offset + "+" + length + " is beyond the object size " + channel.size());
+            }
+            return new RangeInputStream(channel, offset, length);
+        } catch (Exception e) {
+            closeQuietly(channel);
+            throw new RuntimeException("Failed to download range of object with key: " + key, e);
+        }
+    }
+
+    @Override
+    public Optional<Path> localFile(String key) {
+        Path path = path(key);
+        return Files.isRegularFile(path) ? Optional.of(path) : Optional.empty();
+    }
+
+    @Override
+    public void copy(String sourceKey, String targetKey, long sizeBytes) {
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(tempDirectory, "copy-", ".part");
+            Files.copy(path(sourceKey), temp, StandardCopyOption.REPLACE_EXISTING);
+            if (fsync != StorageProperties.Filesystem.Fsync.NEVER) {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+            }
+            moveIntoPlace(temp, path(targetKey));
+            log.info("Copied object {} to {}", sourceKey, targetKey);
+
+        } catch (Exception e) {
+            deleteQuietly(temp);
+            throw new RuntimeException("Failed to copy object " + sourceKey + " to " + targetKey, e);
+        }
+    }
+
+    @Override
+    public void delete(String key) {
+        try {
+            Files.deleteIfExists(path(key));
+            log.info("Successfully deleted object with key: {}", key);
+        } catch (Exception e) {
+            log.warn("Failed to delete object with key: {}", key, e);
+        }
+    }
+
+    /**
+     * Unlinks are local and cheap, so keys are deleted one by one without retries
+     */
+    @Override
+    public Set<String> deleteAll(Collection<String> keys) {
+        Set<String> failed = new LinkedHashSet<>();
+        Set<Path> directories = new HashSet<>();
+        for (String key : new LinkedHashSet<>(keys)) {
+            try {
+                Path path = path(key);
+                if (Files.deleteIfExists(path)) {
+                    directories.add(path.getParent());
+                }
+            } catch (Exception e) {
+                log.debug("Failed to delete object with key: {}", key, e);
+                failed.add(key);
+            }
+        }
+        if (fsync == StorageProperties.Filesystem.Fsync.ALWAYS) {
+            directories.forEach(this::syncDirectory);
+        }
+
+        log.info("Deleted {} of {} objects", keys.size() - failed.size(), keys.size());
+        return failed;
+    }
+
+    @Override
+    public ObjectListing list(String startAfter, int maxKeys) {
+        String after = startAfter != null ? hex(startAfter) : null;
+        String afterShard = after != null ? shard(after) : null;
+
+        List<ObjectListing.StoredObject> objects = new ArrayList<>();
+        try {
+            for (String first : sortedNames(root, FIRST_SHARD)) {
+                if (afterShard != null && first.compareTo(afterShard.substring(0, FIRST_SHARD_HEX_CHARS)) < 0) {
+                    continue;
+                }
+                Path firstDirectory = root.resolve(first);
+                for (String second : sortedNames(firstDirectory, SECOND_SHARD)) {
+                    if (afterShard != null && (first + second).compareTo(afterShard) < 0) {
+                        continue;
+                    }
+                    Path secondDirectory = firstDirectory.resolve(second);
+                    for (String name : sortedNames(secondDirectory, OBJECT_NAME)) {
+                        if (after != null && name.compareTo(after) <= 0) {
+                            continue;
+                        }
+                        ObjectListing.StoredObject object = storedObject(secondDirectory.resolve(name), name);
+                        if (object == null) {
+                            continue;
+                        }
+                        if (objects.size() == maxKeys) {
+                            return new ObjectListing(objects, true);
+                        }
+                        objects.add(object);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to list objects after key: " + startAfter, e);
+        }
+        return new ObjectListing(objects, false);
+    }
+
+    Path path(String key) {
+        String name = hex(key);
+        String shard = shard(name);
+        return root.resolve(shard.substring(0, FIRST_SHARD_HEX_CHARS))
+                .resolve(shard.substring(FIRST_SHARD_HEX_CHARS))
+                .resolve(name);
+    }
+
+    private static String hex(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length == 0 || bytes.length > MAX_KEY_BYTES) {
+            throw new IllegalArgumentException("Object keys must have 1 to " + MAX_KEY_BYTES + " bytes");
+        }
+        return HEX.formatHex(bytes);
+    }
+
+    /**
+     * The padding sorts before every hex digit, so a shorter key still comes before its extensions
+     */
+    private static String shard(String name) {
+        if (name.length() >= SHARD_HEX_CHARS) {
+            return name.substring(0, SHARD_HEX_CHARS);
+        }
+        return name + "-".repeat(SHARD_HEX_CHARS - name.length());
+    }
+
+    private static List<String> sortedNames(Path directory, Pattern pattern) throws IOException {
+        try (Stream<Path> entries = Files.list(directory)) {
+            return entries.map(entry -> entry.getFileName().toString())
+                    .filter(name -> pattern.matcher(name).matches())
+                    .sorted()
+                    .toList();
+        } catch (NoSuchFileException e) {
+            return List.of();
+        }
+    }
+
+    /**
+     * @return the listed object, or {@code null} if it was deleted while listing
+     */
+    private static ObjectListing.StoredObject storedObject(Path path, String name) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            String key = new String(HEX.parseHex(name), StandardCharsets.UTF_8);
+            return new ObjectListing.StoredObject(key, attributes.lastModifiedTime().toInstant(), attributes.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private void moveIntoPlace(Path temp, Path target) throws IOException {
+        Path directory = target.getParent();
+        if (Files.notExists(directory)) {
+            Files.createDirectories(directory);
+            if (fsync == StorageProperties.Filesystem.Fsync.ALWAYS) {
+                syncDirectory(directory.getParent());
+                syncDirectory(root);
+            }
+        }
+        // replaces an existing object, readers keep the content they have opened
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        if (fsync == StorageProperties.Filesystem.Fsync.ALWAYS) {
+            syncDirectory(directory);
+        }
+    }
+
+    /**
+     * Makes renames and unlinks in the directory durable; not every platform can open a directory for this
+     */
+    private void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Failed to sync directory {}", directory, e);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.debug("Failed to delete temp file {}", path, e);
+        }
+    }
+
+    private String generateKey() {
+        return "object-" + RandomIds.uuid() + "-" + System.nanoTime();
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Failed to close channel", e);
+        }
+    }
+
+    /**
+     * Reads a range with positional reads into the caller's buffer. The open channel keeps the
+     * content it was opened with readable, even if the object is overwritten or deleted meanwhile,
+     * and it is the only resource held: it is released when the stream is closed.
+     */
+    private static final class RangeInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        private RangeInputStream(FileChannel channel, long offset, long length) {
+            this.channel = channel;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (n == -1) {
+                throw new EOFException("Object ended at " + position + ", before the end of the range at " + end);
+            }
+            position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(end - position, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
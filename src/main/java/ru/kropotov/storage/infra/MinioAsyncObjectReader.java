@@ -0,0 +1,47 @@
+package ru.kropotov.storage.infra;
+
+import org.reactivestreams.Publisher;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reads objects through the non-blocking S3 client. The returned publisher honours subscriber
+ * demand, so a slow consumer pauses the socket read instead of buffering the object.
+ */
+@Component
+@ConditionalOnExpression("${storage.download.async:false} and '${storage.backend:s3}'.equalsIgnoreCase('s3')")
+public class MinioAsyncObjectReader {
+
+    private final S3AsyncClient s3AsyncClient;
+    private final String bucketName;
+
+    public MinioAsyncObjectReader(S3AsyncClient s3AsyncClient) {
+        this.s3AsyncClient = s3AsyncClient;
+        this.bucketName = System.getenv().getOrDefault("MINIO_BUCKET", "default-bucket");
+    }
+
+    /**
+     * @param key the object key
+     * @param offset the first byte to read
+     * @param length the number of bytes to read, or {@code -1} for the rest of the object from {@code offset}
+     * @return publisher of the object content, completed once the response headers have arrived
+     */
+    public CompletableFuture<? extends Publisher<ByteBuffer>> read(String key, long offset, long length) {
+        GetObjectRequest.Builder request = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key);
+        if (length > 0) {
+            request.range("bytes=" + offset + "-" + (offset + length - 1));
+        } else if (offset > 0) {
+            request.range("bytes=" + offset + "-");
+        }
+
+        return s3AsyncClient.getObject(request.build(), AsyncResponseTransformer.toPublisher());
+    }
+}
@@ -2,7 +2,9 @@ package ru.kropotov.storage.infra;
 
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
+import ru.kropotov.storage.infra.dto.ObjectListing;
 import ru.kropotov.storage.infra.dto.UploadResult;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
@@ -12,18 +14,27 @@ import java.io.InputStream;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.UUID;
+import java.util.*;
 
 
 @Slf4j
 @Component
+@ConditionalOnProperty(prefix = "storage", name = "backend", havingValue = "s3", matchIfMissing = true)
 public class MinioObjectStoreClient implements ObjectStoreClient {
 
+    private static final long MAX_SINGLE_COPY_BYTES = 5L * 1024 * 1024 * 1024;
+    private static final long COPY_PART_BYTES = 512L * 1024 * 1024;
+    private static final int MAX_KEYS_PER_DELETE = 1000;
+    private static final int DELETE_ATTEMPTS = 3;
+    private static final long DELETE_RETRY_MILLIS = 200;
+
     private final S3Client s3Client;
+    private final S3MultipartUploader multipartUploader;
     private final String bucketName;
     
-    public MinioObjectStoreClient(S3Client s3Client) {
+    public MinioObjectStoreClient(S3Client s3Client, S3MultipartUploader multipartUploader) {
         this.s3Client = s3Client;
+        this.multipartUploader = multipartUploader;
         this.bucketName = System.getenv().getOrDefault("MINIO_BUCKET", "default-bucket");
     }
     
@@ -91,6 +102,15 @@ public class MinioObjectStoreClient implements ObjectStoreClient {
         }
     }
 
+    @Override
+    public void uploadMultipart(InputStream inputStream, long sizeBytes, String contentType, String key) {
+        try {
+            multipartUploader.upload(bucketName, key, contentType, inputStream, sizeBytes);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to upload object with key: " + key, e);
+        }
+    }
+
     @Override
     public InputStream download(String key) {
         try {
@@ -106,6 +126,92 @@ public class MinioObjectStoreClient implements ObjectStoreClient {
         }
     }
 
+    @Override
+    public InputStream download(String key, long offset, long length) {
+        try {
+            GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .range("bytes=" + offset + "-" + (offset + length - 1))
+                    .build();
+
+            return s3Client.getObject(getObjectRequest);
+
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to download range of object with key: " + key, e);
+        }
+    }
+
+    @Override
+    public void copy(String sourceKey, String targetKey, long sizeBytes) {
+        try {
+            if (sizeBytes <= MAX_SINGLE_COPY_BYTES) {
+                s3Client.copyObject(CopyObjectRequest.builder()
+                        .sourceBucket(bucketName)
+                        .sourceKey(sourceKey)
+                        .destinationBucket(bucketName)
+                        .destinationKey(targetKey)
+                        .build());
+            } else {
+                copyMultipart(sourceKey, targetKey, sizeBytes);
+            }
+            log.info("Copied object {} to {}", sourceKey, targetKey);
+
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to copy object " + sourceKey + " to " + targetKey, e);
+        }
+    }
+
+    /**
+     * CopyObject is limited to 5GB, larger objects are copied part by part on the server side
+     */
+    private void copyMultipart(String sourceKey, String targetKey, long sizeBytes) {
+        HeadObjectResponse source = s3Client.headObject(HeadObjectRequest.builder()
+                .bucket(bucketName)
+                .key(sourceKey)
+                .build());
+        String uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(targetKey)
+                .contentType(source.contentType())
+                .build()).uploadId();
+
+        try {
+            List<CompletedPart> parts = new ArrayList<>();
+            int partNumber = 1;
+            for (long offset = 0; offset < sizeBytes; offset += COPY_PART_BYTES, partNumber++) {
+                long end = Math.min(offset + COPY_PART_BYTES, sizeBytes) - 1;
+                UploadPartCopyResponse response = s3Client.uploadPartCopy(UploadPartCopyRequest.builder()
+                        .sourceBucket(bucketName)
+                        .sourceKey(sourceKey)
+                        .destinationBucket(bucketName)
+                        .destinationKey(targetKey)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .copySourceRange("bytes=" + offset + "-" + end)
+                        .build());
+                parts.add(CompletedPart.builder()
+                        .partNumber(partNumber)
+                        .eTag(response.copyPartResult().eTag())
+                        .build());
+            }
+
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(targetKey)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+        } catch (RuntimeException e) {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(targetKey)
+                    .uploadId(uploadId)
+                    .build());
+            throw e;
+        }
+    }
+
     @Override
     public void delete(String key) {
         try {
@@ -122,8 +228,77 @@ public class MinioObjectStoreClient implements ObjectStoreClient {
         }
     }
 
+    @Override
+    public Set<String> deleteAll(Collection<String> keys) {
+        Set<String> remaining = new LinkedHashSet<>(keys);
+
+        for (int attempt = 1; attempt <= DELETE_ATTEMPTS && !remaining.isEmpty(); attempt++) {
+            if (attempt > 1) {
+                try {
+                    Thread.sleep(DELETE_RETRY_MILLIS * (attempt - 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            List<String> pending = new ArrayList<>(remaining);
+            Set<String> failed = new LinkedHashSet<>();
+            for (int from = 0; from < pending.size(); from += MAX_KEYS_PER_DELETE) {
+                failed.addAll(deleteBatch(pending.subList(from, Math.min(from + MAX_KEYS_PER_DELETE, pending.size()))));
+            }
+
+            log.info("Deleted {} of {} objects (attempt {})", pending.size() - failed.size(), pending.size(), attempt);
+            remaining = failed;
+        }
+
+        if (!remaining.isEmpty()) {
+            log.warn("Failed to delete {} objects after {} attempts", remaining.size(), DELETE_ATTEMPTS);
+        }
+        return remaining;
+    }
+
+    /**
+     * One DeleteObjects request in quiet mode, which only reports the keys that failed
+     */
+    private List<String> deleteBatch(List<String> keys) {
+        try {
+            List<ObjectIdentifier> objects = keys.stream()
+                    .map(key -> ObjectIdentifier.builder().key(key).build())
+                    .toList();
+
+            DeleteObjectsResponse response = s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                    .bucket(bucketName)
+                    .delete(Delete.builder().objects(objects).quiet(true).build())
+                    .build());
+
+            for (S3Error error : response.errors()) {
+                log.debug("Failed to delete object with key: {} ({} {})", error.key(), error.code(), error.message());
+            }
+            return response.errors().stream().map(S3Error::key).toList();
+
+        } catch (Exception e) {
+            log.warn("Failed to delete batch of {} objects", keys.size(), e);
+            return keys;
+        }
+    }
+
+    @Override
+    public ObjectListing list(String startAfter, int maxKeys) {
+        ListObjectsV2Response response = s3Client.listObjectsV2(ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .startAfter(startAfter)
+                .maxKeys(maxKeys)
+                .build());
+
+        List<ObjectListing.StoredObject> objects = response.contents().stream()
+                .map(object -> new ObjectListing.StoredObject(object.key(), object.lastModified(), object.size()))
+                .toList();
+        return new ObjectListing(objects, Boolean.TRUE.equals(response.isTruncated()));
+    }
+
     private String generateKey() {
-        return "object-" + UUID.randomUUID() + "-" + System.nanoTime();
+        return "object-" + RandomIds.uuid() + "-" + System.nanoTime();
     }
 
     private String bytesToHex(byte[] bytes) {
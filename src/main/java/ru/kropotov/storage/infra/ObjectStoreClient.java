@@ -1,8 +1,13 @@
 package ru.kropotov.storage.infra;
 
+import ru.kropotov.storage.infra.dto.ObjectListing;
 import ru.kropotov.storage.infra.dto.UploadResult;
 
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
 
 public interface ObjectStoreClient {
 
@@ -24,6 +29,15 @@ public interface ObjectStoreClient {
      */
     void uploadWithKey(InputStream inputStream, long sizeBytes, String contentType, String key);
 
+    /**
+     * Uploads a file to the storage in parts that are sent concurrently
+     * @param inputStream the data stream
+     * @param sizeBytes the file size in bytes, or {@code -1} if unknown
+     * @param contentType the MIME type of the content
+     * @param key the object key
+     */
+    void uploadMultipart(InputStream inputStream, long sizeBytes, String contentType, String key);
+
     /**
      * Downloads a file from storage
      * @param key the file key
@@ -31,11 +45,52 @@ public interface ObjectStoreClient {
      */
     InputStream download(String key);
 
+    /**
+     * Downloads a byte range of a file from storage
+     * @param key the file key
+     * @param offset the first byte to read
+     * @param length the number of bytes to read, must be positive
+     * @return the data stream of the requested range
+     */
+    InputStream download(String key, long offset, long length);
+
+    /**
+     * A local file with the full content of an object, which can be sent without reading it
+     * through the application
+     * @param key the file key
+     * @return the file, or empty if the content is only available as a stream
+     */
+    default Optional<Path> localFile(String key) {
+        return Optional.empty();
+    }
+
+    /**
+     * Copies an object within the storage without passing its content through the application
+     * @param sourceKey the key to copy from
+     * @param targetKey the key to copy to, overwritten if it exists
+     * @param sizeBytes the object size in bytes
+     */
+    void copy(String sourceKey, String targetKey, long sizeBytes);
+
     /**
      * Deletes a file from storage
      * @param key the file key
      */
     void delete(String key);
 
+    /**
+     * Deletes files from storage in bulk; keys that fail are retried together a few times
+     * @param keys the file keys
+     * @return the keys that could not be deleted
+     */
+    Set<String> deleteAll(Collection<String> keys);
+
+    /**
+     * Lists stored files in key order
+     * @param startAfter the key to continue after, or {@code null} to start from the first key
+     * @param maxKeys the maximum number of keys to return, at most 1000
+     * @return the next page of keys
+     */
+    ObjectListing list(String startAfter, int maxKeys);
 
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+package ru.kropotov.storage.infra;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Random identifiers for object keys and download secrets.
+ * <p>
+ * {@link UUID#randomUUID()} draws from the shared {@code NativePRNG}, which reads {@code /dev/urandom}
+ * while holding a monitor and so pins the carrier of every virtual thread that waits for it.
+ * A DRBG instance only computes under its lock once it is seeded.
+ */
+public final class RandomIds {
+
+    private static final SecureRandom RANDOM = createRandom();
+    private static final HexFormat HEX = HexFormat.of();
+
+    private RandomIds() {
+    }
+
+    /**
+     * @return random (version 4) UUID
+     */
+    public static UUID uuid() {
+        byte[] bytes = new byte[16];
+        RANDOM.nextBytes(bytes);
+        bytes[6] = (byte) ((bytes[6] & 0x0f) | 0x40);
+        bytes[8] = (byte) ((bytes[8] & 0x3f) | 0x80);
+
+        long msb = 0;
+        long lsb = 0;
+        for (int i = 0; i < 8; i++) {
+            msb = (msb << 8) | (bytes[i] & 0xff);
+            lsb = (lsb << 8) | (bytes[i + 8] & 0xff);
+        }
+        return new UUID(msb, lsb);
+    }
+
+    /**
+     * @return {@code byteCount} random bytes as lowercase hex
+     */
+    public static String hex(int byteCount) {
+        byte[] bytes = new byte[byteCount];
+        RANDOM.nextBytes(bytes);
+        return HEX.formatHex(bytes);
+    }
+
+    private static SecureRandom createRandom() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package ru.kropotov.storage.infra;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import ru.kropotov.storage.config.properties.StorageProperties;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sends a stream of known or unknown length as an S3 multipart upload.
+ * <p>
+ * The stream is cut into parts that are uploaded concurrently, at most {@code parallelism} per upload.
+ * Buffered parts of all uploads share one memory budget: reading the next part blocks until enough
+ * in-flight bytes are released, which pushes back on the client instead of growing the heap.
+ * Failed parts are retried on their own from the buffer, without restarting the whole upload.
+ * A stream of known length is read no further than its declared size: a client sending more fails
+ * the upload as soon as the extra byte arrives, instead of filling the bucket with parts first.
+ */
+@Slf4j
+@Component
+public class S3MultipartUploader {
+
+    /**
+     * S3 allows at most 10 000 parts per upload
+     */
+    static final int MAX_PARTS = 10_000;
+
+    /**
+     * For streams of unknown length the part size doubles every this many parts
+     */
+    static final int PARTS_PER_SIZE_STEP = 1_000;
+
+    private static final long MIN_S3_PART_SIZE = 5L * 1024 * 1024;
+    private static final long RETRY_BACKOFF_MILLIS = 200;
+
+    private final S3Client s3Client;
+    private final StorageProperties.Multipart settings;
+    private final Semaphore inFlightKilobytes;
+    private final int budgetKilobytes;
+    private final ExecutorService partExecutor;
+
+    public S3MultipartUploader(S3Client s3Client, StorageProperties storageProperties,
+                               @Qualifier("s3PartExecutor") ExecutorService partExecutor) {
+        this.s3Client = s3Client;
+        this.settings = storageProperties.getMultipart();
+        this.budgetKilobytes = (int) Math.min(Integer.MAX_VALUE, settings.getMaxInFlight().toKilobytes());
+        this.inFlightKilobytes = new Semaphore(budgetKilobytes);
+        this.partExecutor = partExecutor;
+    }
+
+    public void upload(String bucket, String key, String contentType, InputStream inputStream, long sizeBytes) {
+        if (sizeBytes > 0) {
+            if (sizeBytes > maxPartSize() * MAX_PARTS) {
+                throw new IllegalArgumentException("Declared size of " + sizeBytes
+                        + " bytes exceeds the multipart upload limit of " + maxPartSize() * MAX_PARTS + " bytes");
+            }
+            inputStream = new DeclaredSizeInputStream(inputStream, sizeBytes);
+        }
+
+        long partSize = initialPartSize(sizeBytes);
+        int charged = toKilobytes(partSize);
+
+        acquire(inFlightKilobytes, charged);
+        byte[] buffer;
+        String uploadId = null;
+        try {
+            buffer = readPart(inputStream, partSize);
+            if (buffer.length == partSize) {
+                uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                        .bucket(bucket)
+                        .key(key)
+                        .contentType(contentType)
+                        .build()).uploadId();
+            }
+        } catch (RuntimeException e) {
+            inFlightKilobytes.release(charged);
+            throw e;
+        }
+
+        if (uploadId == null) {
+            // whole stream fits into one part: a plain PUT is cheaper than a multipart round trip
+            try {
+                putSingle(bucket, key, contentType, buffer);
+            } finally {
+                inFlightKilobytes.release(charged);
+            }
+            return;
+        }
+
+        log.debug("Started multipart upload {} for key: {}, initial part size: {}", uploadId, key, partSize);
+
+        Semaphore uploadSlots = new Semaphore(settings.getParallelism());
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+
+        try {
+            int partNumber = 1;
+            acquire(uploadSlots, 1);
+
+            while (true) {
+                parts.add(submitPart(bucket, key, uploadId, partNumber, buffer, uploadSlots, charged, failure));
+
+                if (buffer.length < partSize || failure.get() != null) {
+                    break;
+                }
+                if (++partNumber > MAX_PARTS) {
+                    throw new IllegalStateException("Upload exceeds " + MAX_PARTS + " parts: " + key);
+                }
+
+                partSize = nextPartSize(partSize, partNumber, sizeBytes);
+                charged = toKilobytes(partSize);
+
+                acquire(uploadSlots, 1);
+                acquire(inFlightKilobytes, charged);
+                try {
+                    buffer = readPart(inputStream, partSize);
+                } catch (RuntimeException e) {
+                    inFlightKilobytes.release(charged);
+                    uploadSlots.release();
+                    throw e;
+                }
+
+                if (buffer.length == 0) {
+                    inFlightKilobytes.release(charged);
+                    uploadSlots.release();
+                    break;
+                }
+            }
+
+            List<CompletedPart> completedParts = new ArrayList<>(parts.size());
+            for (CompletableFuture<CompletedPart> part : parts) {
+                completedParts.add(part.join());
+            }
+            completedParts.sort(Comparator.comparing(CompletedPart::partNumber));
+
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                    .build());
+
+            log.info("Completed multipart upload for key: {} in {} parts", key, completedParts.size());
+
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+            awaitQuietly(parts);
+            abort(bucket, key, uploadId);
+            Throwable cause = failure.get() != null ? failure.get() : e;
+            throw new RuntimeException("Multipart upload failed for key: " + key, cause);
+        }
+    }
+
+    private byte[] readPart(InputStream inputStream, long partSize) {
+        try {
+            return inputStream.readNBytes((int) partSize);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read upload stream", e);
+        }
+    }
+
+    private CompletableFuture<CompletedPart> submitPart(String bucket, String key, String uploadId, int partNumber,
+                                                        byte[] buffer, Semaphore uploadSlots, int kilobytes,
+                                                        AtomicReference<Throwable> failure) {
+        try {
+            return submitPartTask(bucket, key, uploadId, partNumber, buffer, uploadSlots, kilobytes, failure);
+        } catch (RejectedExecutionException e) {
+            // the task never runs, so its share of the budget is released here
+            inFlightKilobytes.release(kilobytes);
+            uploadSlots.release();
+            throw e;
+        }
+    }
+
+    private CompletableFuture<CompletedPart> submitPartTask(String bucket, String key, String uploadId, int partNumber,
+                                                            byte[] buffer, Semaphore uploadSlots, int kilobytes,
+                                                            AtomicReference<Throwable> failure) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                if (failure.get() != null) {
+                    throw new CancellationException("Upload already failed, skipping part " + partNumber);
+                }
+                return uploadPartWithRetry(bucket, key, uploadId, partNumber, buffer);
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            } finally {
+                inFlightKilobytes.release(kilobytes);
+                uploadSlots.release();
+            }
+        }, partExecutor);
+    }
+
+    private CompletedPart uploadPartWithRetry(String bucket, String key, String uploadId, int partNumber, byte[] buffer) {
+        UploadPartRequest request = UploadPartRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .uploadId(uploadId)
+                .partNumber(partNumber)
+                .contentLength((long) buffer.length)
+                .build();
+
+        int attempt = 0;
+        while (true) {
+            try {
+                UploadPartResponse response = s3Client.uploadPart(request,
+                        RequestBody.fromContentProvider(() -> new ByteArrayInputStream(buffer), buffer.length,
+                                "application/octet-stream"));
+                return CompletedPart.builder()
+                        .partNumber(partNumber)
+                        .eTag(response.eTag())
+                        .build();
+            } catch (RuntimeException e) {
+                if (++attempt > settings.getPartRetries()) {
+                    throw e;
+                }
+                log.warn("Retrying part {} of upload {} (attempt {})", partNumber, key, attempt, e);
+                sleep(RETRY_BACKOFF_MILLIS << (attempt - 1));
+            }
+        }
+    }
+
+    private void putSingle(String bucket, String key, String contentType, byte[] content) {
+        s3Client.putObject(PutObjectRequest.builder()
+                        .bucket(bucket)
+                        .key(key)
+                        .contentType(contentType)
+                        .contentLength((long) content.length)
+                        .build(),
+                RequestBody.fromContentProvider(() -> new ByteArrayInputStream(content), content.length, contentType));
+        log.info("Uploaded object with key: {} in a single request ({} bytes)", key, content.length);
+    }
+
+    /**
+     * Parts are never cancelled, only skipped, so that every task releases its share of the budget
+     */
+    private static void awaitQuietly(List<CompletableFuture<CompletedPart>> parts) {
+        for (CompletableFuture<CompletedPart> part : parts) {
+            try {
+                part.join();
+            } catch (RuntimeException ignored) {
+                // the first failure is already recorded
+            }
+        }
+    }
+
+    private void abort(String bucket, String key, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (Exception e) {
+            log.warn("Failed to abort multipart upload {} for key: {}", uploadId, key, e);
+        }
+    }
+
+    /**
+     * Known sizes are spread over at most {@link #MAX_PARTS} parts; unknown sizes start small
+     */
+    long initialPartSize(long sizeBytes) {
+        long partSize = Math.max(MIN_S3_PART_SIZE, settings.getMinPartSize().toBytes());
+        if (sizeBytes > 0) {
+            partSize = Math.max(partSize, ceilToMegabyte((sizeBytes + MAX_PARTS - 1) / MAX_PARTS));
+        }
+        return Math.min(partSize, maxPartSize());
+    }
+
+    /**
+     * Parts of an unknown-length stream grow geometrically, so that small streams stay cheap
+     * and very large ones still fit into {@link #MAX_PARTS} parts
+     */
+    long nextPartSize(long currentPartSize, int nextPartNumber, long sizeBytes) {
+        if (sizeBytes > 0 || (nextPartNumber - 1) % PARTS_PER_SIZE_STEP != 0) {
+            return currentPartSize;
+        }
+        return Math.min(currentPartSize * 2, maxPartSize());
+    }
+
+    private long maxPartSize() {
+        long budgetBytes = (long) budgetKilobytes * 1024;
+        long maxPartSize = Math.min(settings.getMaxPartSize().toBytes(), Math.min(budgetBytes, Integer.MAX_VALUE - 8));
+        return Math.max(MIN_S3_PART_SIZE, maxPartSize);
+    }
+
+    private static long ceilToMegabyte(long bytes) {
+        long megabyte = 1024L * 1024;
+        return (bytes + megabyte - 1) / megabyte * megabyte;
+    }
+
+    private static int toKilobytes(long bytes) {
+        return (int) Math.max(1, (bytes + 1023) / 1024);
+    }
+
+    private static void acquire(Semaphore semaphore, int permits) {
+        try {
+            semaphore.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for upload capacity", e);
+        }
+    }
+
+    /**
+     * Ends after the declared number of bytes; more content than declared fails the read
+     */
+    private static final class DeclaredSizeInputStream extends FilterInputStream {
+
+        private final long sizeBytes;
+        private long remaining;
+
+        private DeclaredSizeInputStream(InputStream in, long sizeBytes) {
+            super(in);
+            this.sizeBytes = sizeBytes;
+            this.remaining = sizeBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining == 0) {
+                return endOfContent();
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining == 0) {
+                return endOfContent();
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        private int endOfContent() throws IOException {
+            if (in.read() >= 0) {
+                throw new IOException("Upload stream is longer than the declared size of " + sizeBytes + " bytes");
+            }
+            return -1;
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted during part retry backoff", e);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package ru.kropotov.storage.infra.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * One page of a bucket listing, in key order
+ *
+ * @param truncated whether more keys follow the last one of this page
+ */
+public record ObjectListing(List<StoredObject> objects, boolean truncated) {
+
+    public record StoredObject(String key, Instant lastModified, long sizeBytes) {
+    }
+}
@@ -0,0 +1,53 @@
+package ru.kropotov.storage.infra.index;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.index.Index;
+
+import java.util.List;
+
+/**
+ * One version of the index layout: the indexes it adds, in the order they are built.
+ * Applied versions are never edited; a change to the layout is a new version.
+ */
+public record IndexMigration(int version, String description, List<CollectionIndex> indexes) {
+
+    /**
+     * @return whether the migration adds a unique index, which writes rely on to reject duplicates
+     */
+    public boolean addsConstraints() {
+        return indexes.stream().anyMatch(CollectionIndex::isUnique);
+    }
+
+    public record CollectionIndex(String collection, Index index) {
+
+        public String name() {
+            return index.getIndexOptions().getString("name");
+        }
+
+        public boolean isUnique() {
+            return index.getIndexOptions().getBoolean("unique", false);
+        }
+
+        CollectionIndex unique() {
+            index.unique();
+            return this;
+        }
+
+        CollectionIndex sparse() {
+            index.sparse();
+            return this;
+        }
+    }
+
+    /**
+     * Ascending index on the given fields, named explicitly so that a rebuilt index never
+     * conflicts with one created earlier under a generated name
+     */
+    static CollectionIndex index(String collection, String name, String... fields) {
+        Index index = new Index().named(name);
+        for (String field : fields) {
+            index.on(field, Sort.Direction.ASC);
+        }
+        return new CollectionIndex(collection, index);
+    }
+}
@@ -0,0 +1,87 @@
+package ru.kropotov.storage.infra.index;
+
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import ru.kropotov.storage.domain.model.FileState;
+import ru.kropotov.storage.infra.index.IndexMigration.CollectionIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static ru.kropotov.storage.infra.index.IndexMigration.index;
+
+/**
+ * The index layout of every collection, as an ordered list of migrations
+ */
+public final class IndexMigrations {
+
+    static final String FILES = "files";
+    static final String TAGS = "tags";
+    static final String BLOBS = "blobs";
+
+    /**
+     * Sort fields of the file listings that an index can serve. Sorting by {@code tags} is not among
+     * them: the sort key of an array is its smallest or largest element, which a multikey index
+     * cannot provide, so that sort stays in memory.
+     */
+    static final List<String> INDEXED_SORT_FIELDS = List.of("uploadTs", "fileName", "contentType", "sizeBytes");
+
+    public static final List<IndexMigration> ALL = List.of(
+            new IndexMigration(1, "Indexes previously created from mapping annotations", List.of(
+                    index(FILES, "owner_name", "ownerId", "fileName").unique(),
+                    uniqueReadyContent(),
+                    index(FILES, "visibility_1", "visibility"),
+                    index(FILES, "tags_1", "tags"),
+                    index(FILES, "state_1_uploadTs_1", "state", "uploadTs"),
+                    index(FILES, "state", "state"),
+                    index(FILES, "owner_state_upload_id", "ownerId", "state", "uploadTs", "_id"),
+                    index(FILES, "visibility_state_upload_id", "visibility", "state", "uploadTs", "_id"),
+                    index(TAGS, "name", "name").unique(),
+                    index(BLOBS, "state_1_updatedTs_1", "state", "updatedTs"))),
+            new IndexMigration(2, "File listings: equality on owner or visibility, state and tag, then the sort key",
+                    listingIndexes()),
+            new IndexMigration(3, "Janitor partitions: stale files by object key range", List.of(
+                    index(FILES, "state_objectStoreKey", "state", "objectStoreKey"))),
+            new IndexMigration(4, "Bucket reconciliation: files by object key", List.of(
+                    index(FILES, "objectStoreKey", "objectStoreKey"))),
+            new IndexMigration(5, "Bulk delete: files marked by a job", List.of(
+                    index(FILES, "deleteJobId", "deleteJobId").sparse())));
+
+    private IndexMigrations() {
+    }
+
+    /**
+     * @return the version of the last migration that adds a unique index, or {@code 0} if none does
+     */
+    public static int lastConstraintVersion() {
+        return ALL.stream()
+                .filter(IndexMigration::addsConstraints)
+                .mapToInt(IndexMigration::version)
+                .max()
+                .orElse(0);
+    }
+
+    /**
+     * For every listing filter and indexed sort field: the equality fields first, then the sort key
+     * and {@code _id} as its tie-breaker. One index serves both sort directions.
+     */
+    private static List<CollectionIndex> listingIndexes() {
+        List<CollectionIndex> indexes = new ArrayList<>();
+        for (String sortField : INDEXED_SORT_FIELDS) {
+            String suffix = sortField.equals("uploadTs") ? "upload" : sortField;
+            if (!sortField.equals("uploadTs")) {
+                indexes.add(index(FILES, "owner_state_" + suffix + "_id", "ownerId", "state", sortField, "_id"));
+                indexes.add(index(FILES, "visibility_state_" + suffix + "_id", "visibility", "state", sortField, "_id"));
+            }
+            indexes.add(index(FILES, "owner_state_tags_" + suffix + "_id", "ownerId", "state", "tags", sortField, "_id"));
+            indexes.add(index(FILES, "visibility_state_tags_" + suffix + "_id", "visibility", "state", "tags", sortField, "_id"));
+        }
+        return List.copyOf(indexes);
+    }
+
+    private static CollectionIndex uniqueReadyContent() {
+        CollectionIndex index = index(FILES, "ux_owner_sha_ready", "ownerId", "sha256", "state").unique();
+        index.index().partial(PartialIndexFilter.of(Criteria.where("state").is(FileState.READY.name())));
+        return index;
+    }
+}
@@ -0,0 +1,115 @@
+package ru.kropotov.storage.infra.index;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import ru.kropotov.storage.infra.index.IndexMigration.CollectionIndex;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Applies the {@link IndexMigrations} that have not been applied yet, in version order.
+ * <p>
+ * Migrations up to the last one that adds a unique index are applied during startup, before the
+ * web server is started, because inserts rely on those indexes to reject duplicates; a failure
+ * there fails the startup. The rest only speed up queries and run on their own thread once the
+ * application is ready, so startup never waits for them. Every applied version is recorded in
+ * {@value #COLLECTION}. Creating an index that already exists with the same definition is a
+ * no-op, so nodes starting at the same time may both run a migration safely.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IndexMigrator implements SmartInitializingSingleton {
+
+    static final String COLLECTION = "index_migrations";
+
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Runs once every singleton is created and before the web server starts accepting requests
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        int constraintVersion = IndexMigrations.lastConstraintVersion();
+        if (currentVersion() < constraintVersion) {
+            log.info("Applying index migrations up to {} before accepting traffic, they add unique indexes",
+                    constraintVersion);
+            migrate(constraintVersion);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateInBackground() {
+        Thread.ofPlatform()
+                .name("index-migration")
+                .daemon()
+                .start(() -> {
+                    try {
+                        migrate();
+                    } catch (Exception e) {
+                        log.error("Index migration failed, it is retried on the next start", e);
+                    }
+                });
+    }
+
+    /**
+     * @return the number of applied migrations
+     */
+    public int migrate() {
+        return migrate(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param upToVersion the last version to apply
+     * @return the number of applied migrations
+     */
+    int migrate(int upToVersion) {
+        int current = currentVersion();
+        int applied = 0;
+
+        for (IndexMigration migration : IndexMigrations.ALL) {
+            if (migration.version() <= current || migration.version() > upToVersion) {
+                continue;
+            }
+
+            log.info("Applying index migration {}: {}", migration.version(), migration.description());
+            long started = System.nanoTime();
+            for (CollectionIndex index : migration.indexes()) {
+                mongoTemplate.indexOps(index.collection()).ensureIndex(index.index());
+                log.debug("Index {}.{} is built", index.collection(), index.name());
+            }
+            record(migration);
+            applied++;
+
+            log.info("Applied index migration {} in {} ms", migration.version(), (System.nanoTime() - started) / 1_000_000);
+        }
+        return applied;
+    }
+
+    public int currentVersion() {
+        Query latest = new Query().with(Sort.by(Sort.Direction.DESC, "_id")).limit(1);
+        List<Document> records = mongoTemplate.find(latest, Document.class, COLLECTION);
+        return records.isEmpty() ? 0 : records.get(0).getInteger("_id");
+    }
+
+    private void record(IndexMigration migration) {
+        Document record = new Document("_id", migration.version())
+                .append("description", migration.description())
+                .append("appliedTs", Instant.now());
+        try {
+            mongoTemplate.insert(record, COLLECTION);
+        } catch (DuplicateKeyException e) {
+            log.debug("Index migration {} was recorded by another node", migration.version());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package ru.kropotov.storage.infra.index;
+
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+import ru.kropotov.storage.infra.index.IndexMigration.CollectionIndex;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * {@code /actuator/indexes}: compares the indexes declared by {@link IndexMigrations} with the ones
+ * that exist, and reports how often each index was used according to {@code $indexStats}.
+ * Usage counters are per node and reset on restart, so an index is only worth dropping if it is
+ * unused on every node over a representative period.
+ */
+@Component
+@Endpoint(id = "indexes")
+@RequiredArgsConstructor
+public class IndexStatsEndpoint {
+
+    private static final String ID_INDEX = "_id_";
+
+    private final MongoTemplate mongoTemplate;
+    private final IndexMigrator indexMigrator;
+
+    @ReadOperation
+    public IndexReport report() {
+        Map<String, Set<String>> declared = new TreeMap<>();
+        for (IndexMigration migration : IndexMigrations.ALL) {
+            for (CollectionIndex index : migration.indexes()) {
+                declared.computeIfAbsent(index.collection(), collection -> new TreeSet<>()).add(index.name());
+            }
+        }
+
+        List<CollectionReport> collections = declared.entrySet().stream()
+                .map(entry -> collectionReport(entry.getKey(), entry.getValue()))
+                .toList();
+        int latestVersion = IndexMigrations.ALL.get(IndexMigrations.ALL.size() - 1).version();
+
+        return new IndexReport(indexMigrator.currentVersion(), latestVersion, collections);
+    }
+
+    private CollectionReport collectionReport(String collection, Set<String> declared) {
+        List<IndexUsage> usage = new ArrayList<>();
+        mongoTemplate.getCollection(collection)
+                .aggregate(List.of(new Document("$indexStats", new Document())))
+                .forEach(stats -> {
+                    Document accesses = stats.get("accesses", Document.class);
+                    Date since = accesses.getDate("since");
+                    usage.add(new IndexUsage(stats.getString("name"),
+                            ((Number) accesses.get("ops")).longValue(),
+                            since != null ? since.toInstant() : null));
+                });
+        usage.sort(Comparator.comparing(IndexUsage::name));
+
+        Set<String> existing = new TreeSet<>();
+        usage.forEach(index -> existing.add(index.name()));
+
+        List<String> missing = declared.stream()
+                .filter(name -> !existing.contains(name))
+                .toList();
+        List<String> undeclared = existing.stream()
+                .filter(name -> !name.equals(ID_INDEX) && !declared.contains(name))
+                .toList();
+        List<String> unused = usage.stream()
+                .filter(index -> index.ops() == 0 && !index.name().equals(ID_INDEX))
+                .map(IndexUsage::name)
+                .toList();
+
+        return new CollectionReport(collection, missing, undeclared, unused, usage);
+    }
+
+    public record IndexReport(int appliedVersion, int latestVersion, List<CollectionReport> collections) {
+    }
+
+    /**
+     * @param missing declared but not built, e.g. while a migration is still running
+     * @param undeclared built but not declared, e.g. created by hand
+     * @param unused not used by a query on this node since the counters were reset
+     */
+    public record CollectionReport(String collection, List<String> missing, List<String> undeclared,
+                                   List<String> unused, List<IndexUsage> usage) {
+    }
+
+    public record IndexUsage(String name, long ops, Instant since) {
+    }
+}
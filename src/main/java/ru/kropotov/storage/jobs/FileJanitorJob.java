@@ -1,7 +1,11 @@
 package ru.kropotov.storage.jobs;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
@@ -10,83 +14,276 @@ import org.springframework.stereotype.Component;
 import ru.kropotov.storage.config.properties.StorageProperties;
 import ru.kropotov.storage.domain.model.File;
 import ru.kropotov.storage.domain.model.FileState;
-import ru.kropotov.storage.domain.repository.FileRepository;
-import ru.kropotov.storage.infra.ObjectStoreClient;
-import ru.kropotov.storage.service.FileService;
+import ru.kropotov.storage.service.BlobService;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class FileJanitorJob {
 
-    private final ObjectStoreClient objectStoreClient;
+    static final String LEASES_COLLECTION = "janitor_leases";
+
+    private final BlobService blobService;
     private final StorageProperties storageProperties;
-    private final FileRepository fileRepository;
-    private final org.springframework.data.mongodb.core.MongoTemplate mongoTemplate;
-    private final FileService fileService;
+    private final MongoTemplate mongoTemplate;
+    private final PartitionLeases janitorLeases;
+    private final JanitorPacer janitorPacer;
+
+    private final AtomicLong backlog = new AtomicLong();
+    private Instant backlogRefreshTs = Instant.EPOCH;
+    private final Counter deletedFiles;
+    private final Counter failedFiles;
+
+    public FileJanitorJob(BlobService blobService, StorageProperties storageProperties, MongoTemplate mongoTemplate,
+                          JanitorPacer janitorPacer, MeterRegistry meterRegistry) {
+        this.blobService = blobService;
+        this.storageProperties = storageProperties;
+        this.mongoTemplate = mongoTemplate;
+        this.janitorLeases = new PartitionLeases(mongoTemplate, LEASES_COLLECTION,
+                storageProperties.getJanitor().getPartitions(), storageProperties.getJanitor().getLeaseTtl());
+        this.janitorPacer = janitorPacer;
+
+        Gauge.builder("storage.janitor.backlog", backlog, AtomicLong::get)
+                .description("Stale PENDING and FAILED files waiting for cleanup, across all nodes, counted once per cleanup interval")
+                .register(meterRegistry);
+        this.deletedFiles = Counter.builder("storage.janitor.files")
+                .description("Files cleaned up by the janitor on this node")
+                .tag("result", "deleted")
+                .register(meterRegistry);
+        this.failedFiles = Counter.builder("storage.janitor.files")
+                .description("Files cleaned up by the janitor on this node")
+                .tag("result", "failed")
+                .register(meterRegistry);
+    }
 
     /**
-     * Janitor job – cleans up outdated PENDING and FAILED documents in batches
+     * Janitor job – cleans up outdated PENDING and FAILED documents in batches.
+     * Stale files are split into partitions by object key. Each node works on the partitions it
+     * manages to claim, in parallel, so nodes share the work instead of competing for the same rows.
+     * A partition is read in one streamed pass, checkpointed after every batch, and paced by
+     * {@link JanitorPacer}. Each batch costs a constant number of round trips: objects are removed
+     * with multi-object deletes and metadata with one deleteMany. Files whose object could not be
+     * deleted go back to FAILED and are retried on the next pass.
      */
-    @Scheduled(fixedDelayString = "#{@storageProperties.cleanupInterval.toMillis()}")
+    @Scheduled(initialDelayString = "#{@storageProperties.janitor.pollInterval.toMillis()}",
+            fixedDelayString = "#{@storageProperties.janitor.pollInterval.toMillis()}")
     public void janitorCleanup() {
         Instant cutoff = Instant.now().minus(storageProperties.getCleanupHours(), ChronoUnit.HOURS);
+        refreshBacklog(cutoff);
+
+        List<Integer> partitions = janitorLeases.claimDue(storageProperties.getJanitor().getParallelism());
+        if (partitions.isEmpty()) {
+            return;
+        }
 
-        log.info("Starting janitor cleanup for files older than: {}", cutoff);
+        log.info("Starting janitor cleanup of partitions {} for files older than: {} ({} stale files at the last count)",
+                partitions, cutoff, backlog.get());
 
-        int totalProcessed = 0;
-        int batchCount = 0;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int partition : partitions) {
+                executor.execute(() -> cleanupPartition(partition, cutoff));
+            }
+        }
+    }
 
-        while (true) {
-            Query findQuery = new Query(Criteria.where("state").in(FileState.PENDING, FileState.FAILED)
-                    .and("uploadTs").lt(cutoff))
-                    .limit(storageProperties.getJanitorBatchSize());
+    /**
+     * Counting the stale files scans the whole backlog, so it runs at most once per cleanup interval
+     * on each node; a failed count leaves the previous value and never holds up the cleanup
+     */
+    private void refreshBacklog(Instant cutoff) {
+        Instant now = Instant.now();
+        if (now.isBefore(backlogRefreshTs.plus(storageProperties.getCleanupInterval()))) {
+            return;
+        }
+        backlogRefreshTs = now;
+        try {
+            backlog.set(mongoTemplate.count(new Query(staleCriteria(cutoff)), File.class));
+        } catch (Exception e) {
+            log.warn("Failed to count the janitor backlog", e);
+        }
+    }
 
-            List<File> staleBatch = mongoTemplate.find(findQuery, File.class);
+    private void cleanupPartition(int partition, Instant cutoff) {
+        try {
+            boolean completed = cleanupFiles(partition, cutoff);
 
-            if (staleBatch.isEmpty()) {
-                break;
+            if (partition == 0) {
+                int staleBlobs = blobService.cleanupStale(cutoff);
+                log.info("Janitor removed {} stale blobs", staleBlobs);
             }
 
-            batchCount++;
-            List<String> fileIds = staleBatch.stream().map(File::getId).toList();
+            // an unfinished partition is due again right away, possibly on another node
+            Instant nextRunTs = completed ? Instant.now().plus(storageProperties.getCleanupInterval()) : Instant.now();
+            janitorLeases.release(partition, nextRunTs, completed);
 
-            Query markQuery = new Query(Criteria.where("id").in(fileIds)
-                    .and("state").in(FileState.PENDING, FileState.FAILED));
-            Update markUpdate = new Update().set("state", FileState.JANITOR);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            janitorLeases.release(partition, Instant.now(), false);
+        } catch (Exception e) {
+            log.warn("Janitor failed on partition {}", partition, e);
+            janitorLeases.release(partition, Instant.now(), false);
+        }
+    }
 
-            int markedCount = (int) mongoTemplate.updateMulti(markQuery, markUpdate, File.class).getModifiedCount();
+    /**
+     * One pass over the stale files of a partition in key order, from its checkpoint on
+     *
+     * @return {@code false} if the pass stopped before the end of the partition
+     */
+    private boolean cleanupFiles(int partition, Instant cutoff) throws InterruptedException {
+        StorageProperties.Janitor settings = storageProperties.getJanitor();
+        int batchSize = storageProperties.getJanitorBatchSize();
+        Instant deadline = Instant.now().plus(settings.getMaxRunDuration());
 
-            if (markedCount == 0) {
-                continue;
-            }
+        String checkpoint = janitorLeases.checkpoint(partition);
+        if (checkpoint != null) {
+            log.info("Resuming janitor cleanup of partition {} after key {}", partition, checkpoint);
+        }
 
-            log.debug("Janitor batch {}: marked {} files for cleanup", batchCount, markedCount);
+        Query streamQuery = new Query(new Criteria().andOperator(
+                staleCriteria(cutoff),
+                keyRange(partition, settings.getPartitions(), checkpoint)))
+                .with(Sort.by("objectStoreKey"))
+                .cursorBatchSize(batchSize);
+        streamQuery.fields().include("id", "objectStoreKey");
 
-            for (File file : staleBatch) {
-                try {
-                    objectStoreClient.delete(file.getObjectStoreKey());
+        BatchTotals totals = new BatchTotals();
+        List<File> staleBatch = new ArrayList<>(batchSize);
 
-                    fileRepository.deleteById(file.getId());
+        // files marked, deleted or failed by this pass leave the PENDING and FAILED key ranges
+        // behind the cursor, so they are not read again
+        try (Stream<File> staleFiles = mongoTemplate.stream(streamQuery, File.class)) {
+            Iterator<File> iterator = staleFiles.iterator();
+            while (iterator.hasNext()) {
+                staleBatch.add(iterator.next());
+                if (staleBatch.size() < batchSize && iterator.hasNext()) {
+                    continue;
+                }
+
+                janitorPacer.pace(staleBatch.size());
+                cleanupBatch(partition, staleBatch, totals);
 
-                    totalProcessed++;
+                String lastKey = staleBatch.get(staleBatch.size() - 1).getObjectStoreKey();
+                if (lastKey != null) {
+                    checkpoint = lastKey;
+                }
+                staleBatch.clear();
 
-                } catch (Exception e) {
-                    log.warn("Janitor failed to clean up file: {} ({})", file.getId(), file.getState(), e);
-                    fileService.updateState(file.getId(), FileState.FAILED);
+                if (!janitorLeases.renew(partition, checkpoint)) {
+                    log.warn("Janitor lost the lease on partition {}, stopping", partition);
+                    totals.report(partition, "stopped");
+                    return false;
+                }
+                if (Instant.now().isAfter(deadline)) {
+                    log.info("Janitor reached the run limit of {} on partition {}, it resumes after key {}",
+                            settings.getMaxRunDuration(), partition, checkpoint);
+                    totals.report(partition, "paused");
+                    return false;
                 }
             }
+        }
+
+        totals.report(partition, "completed");
+        return true;
+    }
 
-            if (batchCount >= 100) {
-                log.warn("Janitor processed maximum number of batches ({}), stopping current run", batchCount);
-                break;
+    private void cleanupBatch(int partition, List<File> staleBatch, BatchTotals totals) {
+        totals.batches++;
+        List<String> fileIds = staleBatch.stream().map(File::getId).toList();
+
+        Query markQuery = new Query(Criteria.where("id").in(fileIds)
+                .and("state").in(FileState.PENDING, FileState.FAILED));
+        Update markUpdate = new Update().set("state", FileState.JANITOR);
+
+        int markedCount = (int) mongoTemplate.updateMulti(markQuery, markUpdate, File.class).getModifiedCount();
+
+        if (markedCount == 0) {
+            return;
+        }
+
+        log.debug("Janitor partition {} batch {}: marked {} files for cleanup", partition, totals.batches, markedCount);
+
+        Map<String, String> keysByFileId = new LinkedHashMap<>();
+        for (File file : staleBatch) {
+            if (file.getObjectStoreKey() != null) {
+                keysByFileId.put(file.getId(), file.getObjectStoreKey());
             }
         }
+        Set<String> unreleasedIds = blobService.releaseAll(keysByFileId);
+        janitorPacer.onBatch(keysByFileId.size(), unreleasedIds.size());
+
+        List<String> failedIds = new ArrayList<>();
+        List<String> cleanedIds = new ArrayList<>();
+        for (File file : staleBatch) {
+            (unreleasedIds.contains(file.getId()) ? failedIds : cleanedIds).add(file.getId());
+        }
+
+        long deleted = mongoTemplate.remove(new Query(Criteria.where("id").in(cleanedIds)
+                .and("state").is(FileState.JANITOR)), File.class).getDeletedCount();
+        totals.processed += deleted;
+        deletedFiles.increment(deleted);
+
+        if (!failedIds.isEmpty()) {
+            log.warn("Janitor partition {} batch {}: failed to delete objects of {} files, they are retried on the next pass",
+                    partition, totals.batches, failedIds.size());
+            mongoTemplate.updateMulti(new Query(Criteria.where("id").in(failedIds)
+                    .and("state").is(FileState.JANITOR)), new Update().set("state", FileState.FAILED), File.class);
+            totals.failed += failedIds.size();
+            failedFiles.increment(failedIds.size());
+        }
+    }
+
+    private static Criteria staleCriteria(Instant cutoff) {
+        return Criteria.where("state").in(FileState.PENDING, FileState.FAILED).and("uploadTs").lt(cutoff);
+    }
 
-        log.info("Janitor cleanup completed: {} files processed in {} batches", totalProcessed, batchCount);
+    private static final class BatchTotals {
+
+        private long processed;
+        private long failed;
+        private int batches;
+
+        private void report(int partition, String outcome) {
+            log.info("Janitor cleanup of partition {} {}: {} files processed, {} failed in {} batches",
+                    partition, outcome, processed, failed, batches);
+        }
+    }
+
+    /**
+     * Criteria for the files of a partition, in the ranges of {@link KeyPartitions}; files without a key
+     * belong to the first partition
+     *
+     * @param afterKey the last key already seen in this partition, or {@code null}
+     */
+    static Criteria keyRange(int partition, int partitions, String afterKey) {
+        String lowerKey = KeyPartitions.lowerKey(partition, partitions);
+        String upperKey = KeyPartitions.upperKey(partition, partitions);
+
+        if (afterKey == null && lowerKey == null) {
+            if (upperKey == null) {
+                return new Criteria();
+            }
+            return new Criteria().orOperator(
+                    Criteria.where("objectStoreKey").is(null),
+                    Criteria.where("objectStoreKey").lt(upperKey));
+        }
+
+        Criteria range = Criteria.where("objectStoreKey");
+        if (afterKey != null) {
+            range.gt(afterKey);
+        } else {
+            range.gte(lowerKey);
+        }
+        if (upperKey != null) {
+            range.lt(upperKey);
+        }
+        return range;
     }
-}
\ No newline at end of file
+}
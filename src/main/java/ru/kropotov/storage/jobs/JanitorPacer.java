@@ -0,0 +1,123 @@
+package ru.kropotov.storage.jobs;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.kropotov.storage.config.properties.StorageProperties;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Node-wide rate limit for janitor deletions, adjusted additively up and multiplicatively down.
+ * <p>
+ * After every batch the rate grows by {@code minRate} while the foreground is healthy, and halves
+ * as soon as the mean latency of HTTP requests since the previous batch exceeds
+ * {@code latencyTarget} or the share of failed object deletions exceeds {@code maxErrorRate}.
+ * Cleanup therefore runs at full speed on an idle node and backs off under load.
+ */
+@Slf4j
+@Component
+public class JanitorPacer {
+
+    private static final String HTTP_REQUESTS = "http.server.requests";
+
+    private final StorageProperties.Janitor settings;
+    private final MeterRegistry meterRegistry;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private double rate;
+    private long nextFreeNanos = System.nanoTime();
+    private long lastRequestCount;
+    private double lastRequestNanos;
+
+    public JanitorPacer(StorageProperties storageProperties, MeterRegistry meterRegistry) {
+        this.settings = storageProperties.getJanitor();
+        this.meterRegistry = meterRegistry;
+        this.rate = settings.getMinRate();
+        Gauge.builder("storage.janitor.rate", this, JanitorPacer::rate)
+                .description("Files per second the janitor is currently allowed to delete on this node")
+                .register(meterRegistry);
+    }
+
+    public double rate() {
+        lock.lock();
+        try {
+            return rate;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until {@code files} more deletions fit into the current rate
+     */
+    public void pace(int files) throws InterruptedException {
+        long waitNanos;
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            long start = Math.max(now, nextFreeNanos);
+            nextFreeNanos = start + (long) (files * TimeUnit.SECONDS.toNanos(1) / rate);
+            waitNanos = start - now;
+        } finally {
+            lock.unlock();
+        }
+
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Adjusts the rate after a batch
+     *
+     * @param attempted the number of objects the batch tried to delete
+     * @param failed the number of them that could not be deleted
+     */
+    public void onBatch(int attempted, int failed) {
+        double errorRate = attempted > 0 ? (double) failed / attempted : 0;
+        double latencyMillis = foregroundLatencyMillis();
+
+        lock.lock();
+        try {
+            double previous = rate;
+            if (errorRate > settings.getMaxErrorRate() || latencyMillis > settings.getLatencyTarget().toMillis()) {
+                rate = Math.max(settings.getMinRate(), rate / 2);
+            } else {
+                rate = Math.min(settings.getMaxRate(), rate + settings.getMinRate());
+            }
+            if (rate < previous) {
+                log.info("Janitor slowed down to {} files/s (error rate {}, foreground latency {} ms)",
+                        (int) rate, String.format("%.3f", errorRate), (int) latencyMillis);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return mean latency of the HTTP requests completed since the previous call, zero if there were none
+     */
+    private double foregroundLatencyMillis() {
+        long count = 0;
+        double totalNanos = 0;
+        for (Timer timer : meterRegistry.find(HTTP_REQUESTS).timers()) {
+            count += timer.count();
+            totalNanos += timer.totalTime(TimeUnit.NANOSECONDS);
+        }
+
+        lock.lock();
+        try {
+            long requests = count - lastRequestCount;
+            double nanos = totalNanos - lastRequestNanos;
+            lastRequestCount = count;
+            lastRequestNanos = totalNanos;
+            return requests > 0 ? nanos / requests / 1_000_000 : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
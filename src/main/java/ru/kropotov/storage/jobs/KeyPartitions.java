@@ -0,0 +1,68 @@
+package ru.kropotov.storage.jobs;
+
+import java.util.List;
+
+/**
+ * Splits the object key space into contiguous ranges.
+ * <p>
+ * Object keys of files are {@code file-<random uuid>-...}, so ranges of the first hex digit after
+ * the prefix are evenly sized. The first and the last range are open-ended, so that together the
+ * ranges cover every key, including content-addressed ones.
+ * <p>
+ * Listing a bucket needs bounded ranges instead, as it may hold objects of other applications:
+ * {@link #ownRanges} covers only the file keys and the content-addressed {@code cas/<xx>/...} keys,
+ * split by the same first hex digit.
+ */
+final class KeyPartitions {
+
+    static final int MAX_PARTITIONS = 16;
+
+    private static final String KEY_PREFIX = "file-";
+    private static final String CONTENT_KEY_PREFIX = "cas/";
+
+    private KeyPartitions() {
+    }
+
+    /**
+     * @return the inclusive lower bound of the partition, or {@code null} if it is open-ended
+     */
+    static String lowerKey(int partition, int partitions) {
+        int digit = partition * MAX_PARTITIONS / partitions;
+        return digit > 0 ? KEY_PREFIX + Character.forDigit(digit, MAX_PARTITIONS) : null;
+    }
+
+    /**
+     * @return the exclusive upper bound of the partition, or {@code null} if it is open-ended
+     */
+    static String upperKey(int partition, int partitions) {
+        int digit = (partition + 1) * MAX_PARTITIONS / partitions;
+        return digit < MAX_PARTITIONS ? KEY_PREFIX + Character.forDigit(digit, MAX_PARTITIONS) : null;
+    }
+
+    /**
+     * @return the bounded ranges of the partition within the key prefixes of this application, in key order
+     */
+    static List<KeyRange> ownRanges(int partition, int partitions) {
+        return List.of(
+                ownRange(CONTENT_KEY_PREFIX, partition, partitions),
+                ownRange(KEY_PREFIX, partition, partitions));
+    }
+
+    private static KeyRange ownRange(String prefix, int partition, int partitions) {
+        int lowerDigit = partition * MAX_PARTITIONS / partitions;
+        int upperDigit = (partition + 1) * MAX_PARTITIONS / partitions;
+        String lowerKey = lowerDigit > 0 ? prefix + Character.forDigit(lowerDigit, MAX_PARTITIONS) : prefix;
+        // the prefix with its last character incremented is the first key after the whole prefix
+        String upperKey = upperDigit < MAX_PARTITIONS
+                ? prefix + Character.forDigit(upperDigit, MAX_PARTITIONS)
+                : prefix.substring(0, prefix.length() - 1) + (char) (prefix.charAt(prefix.length() - 1) + 1);
+        return new KeyRange(lowerKey, upperKey);
+    }
+
+    /**
+     * @param lowerKey the inclusive lower bound
+     * @param upperKey the exclusive upper bound
+     */
+    record KeyRange(String lowerKey, String upperKey) {
+    }
+}
@@ -0,0 +1,242 @@
+package ru.kropotov.storage.jobs;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.kropotov.storage.config.properties.StorageProperties;
+import ru.kropotov.storage.domain.model.Blob;
+import ru.kropotov.storage.domain.model.File;
+import ru.kropotov.storage.infra.ObjectStoreClient;
+import ru.kropotov.storage.infra.dto.ObjectListing;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Deletes objects that no metadata refers to: objects whose deletion failed and was only logged,
+ * and objects of uploads that died before their metadata was cleaned up.
+ * <p>
+ * The bucket is split into the key ranges of {@link KeyPartitions}. Nodes claim ranges through
+ * {@link PartitionLeases}, list them page by page and check every page against the {@code files}
+ * collection, or against {@code blobs} for content-addressed keys. Only the key prefixes of this
+ * application are listed and only keys in its exact layout are considered, so objects of other
+ * applications sharing the bucket, or written under other keys, are never touched. The job is off
+ * unless enabled. Unreferenced objects older than
+ * the grace period are removed with multi-object deletes. The last listed key is checkpointed
+ * with every page, so a scan interrupted by a dead node continues where it stopped.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "storage.reconciliation", name = "enabled", havingValue = "true")
+public class OrphanReconciliationJob {
+
+    static final String LEASES_COLLECTION = "reconciliation_leases";
+
+    /**
+     * Keys written by {@code FileService}: {@code file-<uuid>-<nano time>}
+     */
+    private static final Pattern FILE_KEY = Pattern.compile(
+            "file-[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}--?\\d+");
+
+    /**
+     * Keys written by {@code BlobService}: {@code cas/<first two hex digits>/<sha256>}
+     */
+    private static final Pattern CONTENT_KEY = Pattern.compile("cas/([0-9a-f]{2})/(\\1[0-9a-f]{62})");
+
+    private final ObjectStoreClient objectStoreClient;
+    private final MongoTemplate mongoTemplate;
+    private final StorageProperties.Reconciliation settings;
+    private final PartitionLeases leases;
+
+    private final Counter scannedObjects;
+    private final Counter deletedObjects;
+    private final Counter failedObjects;
+
+    public OrphanReconciliationJob(ObjectStoreClient objectStoreClient, MongoTemplate mongoTemplate,
+                                   StorageProperties storageProperties, MeterRegistry meterRegistry) {
+        this.objectStoreClient = objectStoreClient;
+        this.mongoTemplate = mongoTemplate;
+        this.settings = storageProperties.getReconciliation();
+        this.leases = new PartitionLeases(mongoTemplate, LEASES_COLLECTION,
+                settings.getPartitions(), settings.getLeaseTtl());
+
+        this.scannedObjects = objectCounter(meterRegistry, "scanned");
+        this.deletedObjects = objectCounter(meterRegistry, "deleted");
+        this.failedObjects = objectCounter(meterRegistry, "failed");
+    }
+
+    @Scheduled(initialDelayString = "#{@storageProperties.reconciliation.pollInterval.toMillis()}",
+            fixedDelayString = "#{@storageProperties.reconciliation.pollInterval.toMillis()}")
+    public void reconcile() {
+        List<Integer> partitions = leases.claimDue(settings.getParallelism());
+        if (partitions.isEmpty()) {
+            return;
+        }
+
+        log.info("Starting reconciliation of bucket partitions {}", partitions);
+
+        // the node-wide rate is shared evenly by the partitions scanned at once
+        double partitionRate = settings.getMaxRate() / partitions.size();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int partition : partitions) {
+                executor.execute(() -> reconcilePartition(partition, partitionRate));
+            }
+        }
+    }
+
+    private void reconcilePartition(int partition, double rate) {
+        try {
+            boolean completed = scan(partition, rate);
+            Instant nextRunTs = completed ? Instant.now().plus(settings.getInterval()) : Instant.now();
+            leases.release(partition, nextRunTs, completed);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            leases.release(partition, Instant.now(), false);
+        } catch (Exception e) {
+            log.warn("Reconciliation failed on bucket partition {}", partition, e);
+            leases.release(partition, Instant.now(), false);
+        }
+    }
+
+    /**
+     * @return {@code false} if the scan stopped before the end of the partition
+     */
+    private boolean scan(int partition, double rate) throws InterruptedException {
+        String checkpoint = leases.checkpoint(partition);
+        ScanTotals totals = new ScanTotals();
+
+        List<KeyPartitions.KeyRange> ranges = KeyPartitions.ownRanges(partition, settings.getPartitions());
+        for (int i = 0; i < ranges.size(); i++) {
+            KeyPartitions.KeyRange range = ranges.get(i);
+            if (checkpoint != null && checkpoint.compareTo(range.upperKey()) >= 0) {
+                continue;
+            }
+            // ListObjectsV2 continues after a key, so a lower bound that is not itself a key works as one
+            String startAfter = checkpoint != null && checkpoint.compareTo(range.lowerKey()) > 0
+                    ? checkpoint : range.lowerKey();
+            if (!scanRange(partition, range, startAfter, rate, totals)) {
+                return false;
+            }
+            if (i < ranges.size() - 1 && !leases.renew(partition, range.upperKey())) {
+                log.warn("Reconciliation lost the lease on bucket partition {}, stopping", partition);
+                return false;
+            }
+        }
+
+        log.info("Reconciliation of bucket partition {} completed: {} objects scanned, {} orphans deleted, {} failed",
+                partition, totals.scanned, totals.deleted, totals.failed);
+        return true;
+    }
+
+    /**
+     * @return {@code false} if the scan stopped before the end of the range
+     */
+    private boolean scanRange(int partition, KeyPartitions.KeyRange range, String startAfter, double rate,
+                              ScanTotals totals) throws InterruptedException {
+        while (true) {
+            long pageStarted = System.nanoTime();
+            ObjectListing page = objectStoreClient.list(startAfter, settings.getPageSize());
+
+            List<ObjectListing.StoredObject> objects = page.objects().stream()
+                    .filter(object -> object.key().compareTo(range.upperKey()) < 0)
+                    .toList();
+            boolean reachedEnd = !page.truncated() || objects.size() < page.objects().size();
+
+            Set<String> orphans = findOrphans(objects);
+            if (!orphans.isEmpty()) {
+                Set<String> failedKeys = objectStoreClient.deleteAll(orphans);
+                totals.deleted += orphans.size() - failedKeys.size();
+                totals.failed += failedKeys.size();
+                deletedObjects.increment(orphans.size() - failedKeys.size());
+                failedObjects.increment(failedKeys.size());
+            }
+            totals.scanned += objects.size();
+            scannedObjects.increment(objects.size());
+
+            if (reachedEnd) {
+                return true;
+            }
+
+            startAfter = page.objects().get(page.objects().size() - 1).key();
+            if (!leases.renew(partition, startAfter)) {
+                log.warn("Reconciliation lost the lease on bucket partition {}, stopping", partition);
+                return false;
+            }
+
+            long pageNanos = (long) (page.objects().size() * TimeUnit.SECONDS.toNanos(1) / rate);
+            long waitNanos = pageNanos - (System.nanoTime() - pageStarted);
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+    }
+
+    /**
+     * @return keys of the objects past the grace period that neither a file nor a blob refers to;
+     * keys outside the layout of this application are never returned
+     */
+    private Set<String> findOrphans(List<ObjectListing.StoredObject> objects) {
+        Instant graceCutoff = Instant.now().minus(settings.getGracePeriod());
+
+        List<String> fileKeys = new ArrayList<>();
+        Map<String, String> blobKeys = new HashMap<>();
+        for (ObjectListing.StoredObject object : objects) {
+            if (object.lastModified() == null || !object.lastModified().isBefore(graceCutoff)) {
+                continue;
+            }
+            Matcher contentKey = CONTENT_KEY.matcher(object.key());
+            if (contentKey.matches()) {
+                blobKeys.put(contentKey.group(2), object.key());
+            } else if (FILE_KEY.matcher(object.key()).matches()) {
+                fileKeys.add(object.key());
+            }
+        }
+
+        Set<String> orphans = new HashSet<>();
+        if (!fileKeys.isEmpty()) {
+            Query referenced = new Query(Criteria.where("objectStoreKey").in(fileKeys));
+            referenced.fields().include("objectStoreKey");
+            Set<String> referencedKeys = new HashSet<>();
+            mongoTemplate.find(referenced, File.class).forEach(file -> referencedKeys.add(file.getObjectStoreKey()));
+            fileKeys.stream().filter(key -> !referencedKeys.contains(key)).forEach(orphans::add);
+        }
+        if (!blobKeys.isEmpty()) {
+            Query referenced = new Query(Criteria.where("id").in(blobKeys.keySet()));
+            referenced.fields().include("id");
+            Set<String> referencedBlobs = new HashSet<>();
+            mongoTemplate.find(referenced, Blob.class).forEach(blob -> referencedBlobs.add(blob.getId()));
+            blobKeys.forEach((sha256, key) -> {
+                if (!referencedBlobs.contains(sha256)) {
+                    orphans.add(key);
+                }
+            });
+        }
+        return orphans;
+    }
+
+    private static Counter objectCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("storage.reconciliation.objects")
+                .description("Bucket objects handled by the reconciliation on this node")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static final class ScanTotals {
+
+        private long scanned;
+        private long deleted;
+        private long failed;
+    }
+}
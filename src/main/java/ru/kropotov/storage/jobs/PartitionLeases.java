@@ -0,0 +1,143 @@
+package ru.kropotov.storage.jobs;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import ru.kropotov.storage.domain.model.PartitionLease;
+import ru.kropotov.storage.infra.RandomIds;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mongo-backed leases on the partitions of a periodic job, one collection per job.
+ * <p>
+ * A node claims a partition that is due and not held by a live node, renews the lease while it
+ * works on it, and hands it back with the time it is due next. Renewals record how far the pass
+ * got, so a pass cut short by a time limit or a dead node is resumed rather than restarted.
+ * If the node dies, the lease expires and any node claims the partition again, so every partition
+ * is processed once per interval by one node, whichever nodes are up.
+ */
+@Slf4j
+public class PartitionLeases {
+
+    private final MongoTemplate mongoTemplate;
+    private final String collection;
+    private final int partitions;
+    private final Duration leaseTtl;
+
+    private final String nodeId = System.getenv().getOrDefault("HOSTNAME", "node") + "-" + RandomIds.hex(4);
+
+    private volatile boolean initialized;
+
+    public PartitionLeases(MongoTemplate mongoTemplate, String collection, int partitions, Duration leaseTtl) {
+        this.mongoTemplate = mongoTemplate;
+        this.collection = collection;
+        this.partitions = partitions;
+        this.leaseTtl = leaseTtl;
+    }
+
+    /**
+     * @return up to {@code max} partitions that this node now holds
+     */
+    public List<Integer> claimDue(int max) {
+        ensurePartitions();
+
+        Instant now = Instant.now();
+        Query dueQuery = new Query(available(now).and("id").lt(partitions))
+                .with(Sort.by("nextRunTs"))
+                .limit(max);
+
+        List<Integer> claimed = new ArrayList<>();
+        for (PartitionLease lease : mongoTemplate.find(dueQuery, PartitionLease.class, collection)) {
+            Query claimQuery = new Query(available(now).and("id").is(lease.getId()));
+            Update claimUpdate = new Update()
+                    .set("owner", nodeId)
+                    .set("expiresTs", now.plus(leaseTtl));
+
+            // another node may have claimed it since it was read
+            if (mongoTemplate.updateFirst(claimQuery, claimUpdate, PartitionLease.class, collection).getModifiedCount() == 1) {
+                claimed.add(lease.getId());
+            }
+        }
+
+        if (!claimed.isEmpty()) {
+            log.debug("Node {} claimed partitions {} of {}", nodeId, claimed, collection);
+        }
+        return claimed;
+    }
+
+    /**
+     * @return where the previous, unfinished pass over a partition this node holds stopped, or {@code null}
+     */
+    public String checkpoint(int partition) {
+        PartitionLease lease = mongoTemplate.findOne(held(partition), PartitionLease.class, collection);
+        return lease != null ? lease.getCheckpointKey() : null;
+    }
+
+    /**
+     * Extends the lease of a partition this node holds and records its progress
+     *
+     * @param checkpointKey the last key processed, or {@code null} if nothing was processed yet
+     * @return {@code false} if the lease expired and the partition was claimed by another node
+     */
+    public boolean renew(int partition, String checkpointKey) {
+        Update update = new Update().set("expiresTs", Instant.now().plus(leaseTtl));
+        if (checkpointKey != null) {
+            update.set("checkpointKey", checkpointKey);
+        }
+        return mongoTemplate.updateFirst(held(partition), update, PartitionLease.class, collection).getMatchedCount() == 1;
+    }
+
+    /**
+     * Hands a partition back
+     *
+     * @param nextRunTs when the partition is due again
+     * @param completed whether the pass reached the end of the partition, so the next one starts over
+     */
+    public void release(int partition, Instant nextRunTs, boolean completed) {
+        Update update = new Update()
+                .set("owner", null)
+                .set("expiresTs", Instant.now())
+                .set("nextRunTs", nextRunTs);
+        if (completed) {
+            update.unset("checkpointKey");
+        }
+        mongoTemplate.updateFirst(held(partition), update, PartitionLease.class, collection);
+    }
+
+    private Criteria available(Instant now) {
+        return Criteria.where("nextRunTs").lte(now).and("expiresTs").lte(now);
+    }
+
+    private Query held(int partition) {
+        return new Query(Criteria.where("id").is(partition).and("owner").is(nodeId));
+    }
+
+    private void ensurePartitions() {
+        if (initialized) {
+            return;
+        }
+
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PartitionLease.class, collection);
+        for (int partition = 0; partition < partitions; partition++) {
+            bulkOps.upsert(new Query(Criteria.where("id").is(partition)), new Update()
+                    .setOnInsert("expiresTs", Instant.EPOCH)
+                    .setOnInsert("nextRunTs", Instant.EPOCH));
+        }
+        try {
+            bulkOps.execute();
+        } catch (BulkOperationException e) {
+            // another node inserted the same partitions concurrently
+            log.debug("Some partitions of {} already existed", collection);
+        }
+        initialized = true;
+    }
+}
@@ -0,0 +1,256 @@
+package ru.kropotov.storage.service;
+
+import com.mongodb.client.result.UpdateResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import ru.kropotov.storage.config.properties.StorageProperties;
+import ru.kropotov.storage.domain.model.Blob;
+import ru.kropotov.storage.domain.model.BlobState;
+import ru.kropotov.storage.infra.ObjectStoreClient;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Reference-counted, content-addressed objects shared between files.
+ * <p>
+ * An upload lands under its own key first. Once its SHA-256 is known it either adds a reference
+ * to the existing blob, or claims the blob as {@code PENDING}, copies its object to the
+ * content-addressed key and publishes it as {@code READY}. A blob whose last reference is released
+ * goes through {@code DELETING} before its object is removed, so a concurrent upload of the same
+ * content never references an object that is about to disappear; it waits and stores the content anew.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BlobService {
+
+    static final String KEY_PREFIX = "cas/";
+
+    private static final long CLAIM_RETRY_MILLIS = 100;
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectStoreClient objectStoreClient;
+    private final StorageProperties storageProperties;
+
+    public boolean isEnabled() {
+        return storageProperties.getDedup().isContentAddressed();
+    }
+
+    public static String contentKey(String sha256) {
+        return KEY_PREFIX + sha256.substring(0, 2) + "/" + sha256;
+    }
+
+    public static boolean isContentKey(String objectStoreKey) {
+        return objectStoreKey != null && objectStoreKey.startsWith(KEY_PREFIX);
+    }
+
+    /**
+     * Adds a reference to the blob with the given content, storing it from {@code uploadedKey} if it is new.
+     * The object under {@code uploadedKey} is left in place either way.
+     *
+     * @return the content-addressed key now referenced by the caller, or {@code null} if the blob
+     * could not be claimed in time and the upload should keep its own object
+     */
+    public String acquire(String sha256, String uploadedKey, long sizeBytes) {
+        String key = contentKey(sha256);
+        long deadline = System.nanoTime() + storageProperties.getDedup().getClaimWait().toNanos();
+
+        while (true) {
+            if (addReference(sha256)) {
+                log.debug("Added reference to blob {}", sha256);
+                return key;
+            }
+
+            if (claim(sha256, key, sizeBytes)) {
+                return store(sha256, uploadedKey, key, sizeBytes);
+            }
+
+            if (System.nanoTime() >= deadline) {
+                log.info("Blob {} is still being stored or deleted, upload keeps its own key: {}", sha256, uploadedKey);
+                return null;
+            }
+            sleep(CLAIM_RETRY_MILLIS);
+        }
+    }
+
+    /**
+     * Releases one reference held by a file. Objects outside the content-addressed layout belong
+     * to a single file and are deleted right away; blobs are deleted with their last reference.
+     */
+    public void release(String objectStoreKey) {
+        if (!isContentKey(objectStoreKey)) {
+            objectStoreClient.delete(objectStoreKey);
+            return;
+        }
+
+        String sha256 = objectStoreKey.substring(objectStoreKey.lastIndexOf('/') + 1);
+        Query liveBlob = new Query(Criteria.where("id").is(sha256)
+                .and("state").is(BlobState.READY)
+                .and("refCount").gt(0));
+        Update decrement = new Update()
+                .inc("refCount", -1)
+                .set("updatedTs", Instant.now());
+
+        Blob blob = mongoTemplate.findAndModify(liveBlob, decrement,
+                FindAndModifyOptions.options().returnNew(true), Blob.class);
+
+        if (blob == null) {
+            log.warn("Released key {} has no live blob", objectStoreKey);
+            return;
+        }
+        if (blob.getRefCount() > 0) {
+            log.debug("Released reference to blob {}, {} left", sha256, blob.getRefCount());
+            return;
+        }
+
+        Query unreferenced = new Query(Criteria.where("id").is(sha256)
+                .and("state").is(BlobState.READY)
+                .and("refCount").is(0));
+        UpdateResult marked = mongoTemplate.updateFirst(unreferenced,
+                new Update().set("state", BlobState.DELETING).set("updatedTs", Instant.now()), Blob.class);
+
+        // a concurrent upload may have taken a new reference in between
+        if (marked.getModifiedCount() == 1) {
+            deleteBlob(sha256, objectStoreKey);
+        }
+    }
+
+    /**
+     * Bulk variant of {@link #release(String)}: objects that belong to a single file are removed
+     * with multi-object deletes, blob references are released one at a time. Failures are reported
+     * per file, since files sharing a content-addressed key each hold their own reference.
+     *
+     * @param keysByFileId object keys of the files whose references are released
+     * @return the IDs of the files whose reference could not be released
+     */
+    public Set<String> releaseAll(Map<String, String> keysByFileId) {
+        Set<String> failedIds = new HashSet<>();
+        Map<String, List<String>> plainKeyFiles = new LinkedHashMap<>();
+
+        for (Map.Entry<String, String> file : keysByFileId.entrySet()) {
+            String objectStoreKey = file.getValue();
+            if (!isContentKey(objectStoreKey)) {
+                plainKeyFiles.computeIfAbsent(objectStoreKey, key -> new ArrayList<>()).add(file.getKey());
+                continue;
+            }
+            try {
+                release(objectStoreKey);
+            } catch (RuntimeException e) {
+                log.warn("Failed to release blob key {} of file {}", objectStoreKey, file.getKey(), e);
+                failedIds.add(file.getKey());
+            }
+        }
+
+        for (String failedKey : objectStoreClient.deleteAll(List.copyOf(plainKeyFiles.keySet()))) {
+            failedIds.addAll(plainKeyFiles.getOrDefault(failedKey, List.of()));
+        }
+        return failedIds;
+    }
+
+    /**
+     * Removes blobs left behind by uploads or deletions that did not finish before {@code cutoff}
+     *
+     * @return the number of removed blobs
+     */
+    public int cleanupStale(Instant cutoff) {
+        Query staleQuery = new Query(Criteria.where("state").in(BlobState.PENDING, BlobState.DELETING)
+                .and("updatedTs").lt(cutoff))
+                .limit(storageProperties.getJanitorBatchSize());
+
+        List<Blob> staleBlobs = mongoTemplate.find(staleQuery, Blob.class);
+        int removed = 0;
+
+        for (Blob blob : staleBlobs) {
+            if (blob.getState() == BlobState.PENDING) {
+                Query claim = new Query(Criteria.where("id").is(blob.getId())
+                        .and("state").is(BlobState.PENDING)
+                        .and("updatedTs").lt(cutoff));
+                UpdateResult marked = mongoTemplate.updateFirst(claim,
+                        new Update().set("state", BlobState.DELETING).set("updatedTs", Instant.now()), Blob.class);
+                if (marked.getModifiedCount() == 0) {
+                    continue;
+                }
+            }
+            deleteBlob(blob.getId(), blob.getObjectStoreKey());
+            removed++;
+        }
+
+        if (removed > 0) {
+            log.info("Removed {} stale blobs", removed);
+        }
+        return removed;
+    }
+
+    private boolean addReference(String sha256) {
+        Query query = new Query(Criteria.where("id").is(sha256).and("state").is(BlobState.READY));
+        Update update = new Update()
+                .inc("refCount", 1)
+                .set("updatedTs", Instant.now());
+        return mongoTemplate.updateFirst(query, update, Blob.class).getModifiedCount() == 1;
+    }
+
+    private boolean claim(String sha256, String key, long sizeBytes) {
+        Blob blob = Blob.builder()
+                .id(sha256)
+                .objectStoreKey(key)
+                .sizeBytes(sizeBytes)
+                .refCount(1)
+                .state(BlobState.PENDING)
+                .updatedTs(Instant.now())
+                .build();
+        try {
+            mongoTemplate.insert(blob);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    private String store(String sha256, String uploadedKey, String key, long sizeBytes) {
+        try {
+            objectStoreClient.copy(uploadedKey, key, sizeBytes);
+        } catch (RuntimeException e) {
+            log.warn("Failed to store blob {}, upload keeps its own key: {}", sha256, uploadedKey, e);
+            mongoTemplate.remove(new Query(Criteria.where("id").is(sha256).and("state").is(BlobState.PENDING)),
+                    Blob.class);
+            return null;
+        }
+
+        Query pending = new Query(Criteria.where("id").is(sha256).and("state").is(BlobState.PENDING));
+        UpdateResult published = mongoTemplate.updateFirst(pending,
+                new Update().set("state", BlobState.READY).set("updatedTs", Instant.now()), Blob.class);
+
+        if (published.getModifiedCount() == 0) {
+            // the claim went stale and was cleaned up while the object was being copied
+            log.warn("Claim on blob {} was lost, upload keeps its own key: {}", sha256, uploadedKey);
+            return null;
+        }
+
+        log.info("Stored new blob {} ({} bytes)", sha256, sizeBytes);
+        return key;
+    }
+
+    private void deleteBlob(String sha256, String key) {
+        objectStoreClient.delete(key);
+        mongoTemplate.remove(new Query(Criteria.where("id").is(sha256).and("state").is(BlobState.DELETING)),
+                Blob.class);
+        log.info("Deleted blob {}", sha256);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a blob claim", e);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package ru.kropotov.storage.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.kropotov.storage.config.properties.StorageProperties;
+import ru.kropotov.storage.domain.model.DeleteJob;
+import ru.kropotov.storage.domain.model.DeleteJobState;
+import ru.kropotov.storage.domain.model.File;
+import ru.kropotov.storage.domain.model.FileState;
+import ru.kropotov.storage.expection.FileNotFoundException;
+import ru.kropotov.storage.infra.RandomIds;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.util.CollectionUtils.isEmpty;
+
+/**
+ * Deletes many files of one owner as a background job.
+ * <p>
+ * The owner's READY files that match the request are moved to {@code DELETING} with one update
+ * that also stamps them with the job ID, so a concurrent single delete can never pick the same
+ * file up and files of other owners are never touched. The job then takes the stamped files batch
+ * by batch: their content is released with multi-object deletes and their metadata removed with one
+ * delete. Files whose content could not be released go back to READY. Progress is kept in the
+ * {@code delete_jobs} collection, so it can be read from any node.
+ * <p>
+ * A RUNNING job is leased to the node working on it and the lease is renewed with every batch.
+ * If the node dies or shuts down mid-job, the lease expires or is handed back, and any node
+ * resumes the job with the files still stamped with it. A job that fails on an error returns its
+ * unprocessed files to READY, so no file is left hidden in DELETING.
+ */
+@Slf4j
+@Service
+public class BulkDeleteService {
+
+    private final MongoTemplate mongoTemplate;
+    private final BlobService blobService;
+    private final TagService tagService;
+    private final DownloadDescriptorCache downloadDescriptorCache;
+    private final StorageProperties.BulkDelete settings;
+
+    private final String nodeId = System.getenv().getOrDefault("HOSTNAME", "node") + "-" + RandomIds.hex(4);
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private volatile boolean stopping;
+
+    public BulkDeleteService(MongoTemplate mongoTemplate, BlobService blobService, TagService tagService,
+                             DownloadDescriptorCache downloadDescriptorCache, StorageProperties storageProperties) {
+        this.mongoTemplate = mongoTemplate;
+        this.blobService = blobService;
+        this.tagService = tagService;
+        this.downloadDescriptorCache = downloadDescriptorCache;
+        this.settings = storageProperties.getBulkDelete();
+    }
+
+    /**
+     * Marks the matching files and starts removing them in the background
+     *
+     * @param fileIds IDs of the files to delete; IDs of missing, foreign or not READY files are skipped
+     * @param tag tag of the files to delete, if no IDs are given
+     * @return the started job, with the number of matched files
+     */
+    public DeleteJob start(String ownerId, List<String> fileIds, String tag) {
+        boolean byIds = !isEmpty(fileIds);
+        boolean byTag = tag != null && !tag.trim().isEmpty();
+        if (byIds == byTag) {
+            throw new IllegalArgumentException("Either file IDs or a tag must be given");
+        }
+        if (byIds && fileIds.size() > settings.getMaxIds()) {
+            throw new IllegalArgumentException("At most " + settings.getMaxIds() + " file IDs may be deleted at once");
+        }
+
+        Criteria criteria = Criteria.where("ownerId").is(ownerId).and("state").is(FileState.READY);
+        String normalizedTag = null;
+        if (byTag) {
+            normalizedTag = tag.trim().toLowerCase();
+            if (!tagService.tagExists(normalizedTag)) {
+                throw new FileNotFoundException("Tag not found: " + tag);
+            }
+            criteria.and("tags").is(normalizedTag);
+        } else {
+            criteria.and("id").in(Set.copyOf(fileIds));
+        }
+
+        Instant now = Instant.now();
+        DeleteJob job = mongoTemplate.insert(DeleteJob.builder()
+                .id(new ObjectId().toHexString())
+                .ownerId(ownerId)
+                .state(DeleteJobState.RUNNING)
+                .requested(byIds ? fileIds.size() : null)
+                .tag(normalizedTag)
+                .createdTs(now)
+                .updatedTs(now)
+                .leaseOwner(nodeId)
+                .leaseExpiresTs(now.plus(settings.getLeaseTtl()))
+                .build());
+
+        long matched = mongoTemplate.updateMulti(new Query(criteria),
+                new Update().set("state", FileState.DELETING).set("deleteJobId", job.getId()),
+                File.class).getModifiedCount();
+
+        job.setMatched(matched);
+        mongoTemplate.updateFirst(new Query(Criteria.where("id").is(job.getId())),
+                new Update().set("matched", matched), DeleteJob.class);
+
+        log.info("Started bulk delete {} of {} files for owner {}", job.getId(), matched, ownerId);
+        submit(job.getId());
+        return job;
+    }
+
+    /**
+     * Takes over RUNNING jobs whose node died or shut down before finishing them
+     */
+    @Scheduled(initialDelayString = "#{@storageProperties.bulkDelete.pollInterval.toMillis()}",
+            fixedDelayString = "#{@storageProperties.bulkDelete.pollInterval.toMillis()}")
+    public void resumeStale() {
+        if (stopping) {
+            return;
+        }
+
+        Instant now = Instant.now();
+        for (DeleteJob job : mongoTemplate.find(new Query(expiredLease(now)), DeleteJob.class)) {
+            Query claimQuery = new Query(expiredLease(now).and("id").is(job.getId()));
+            Update claimUpdate = new Update()
+                    .set("leaseOwner", nodeId)
+                    .set("leaseExpiresTs", now.plus(settings.getLeaseTtl()));
+
+            // another node may have claimed it since it was read
+            if (mongoTemplate.updateFirst(claimQuery, claimUpdate, DeleteJob.class).getModifiedCount() == 1) {
+                log.info("Resuming bulk delete {} of owner {}, {} of {} files done",
+                        job.getId(), job.getOwnerId(), job.getDeleted() + job.getFailed(), job.getMatched());
+                submit(job.getId());
+            }
+        }
+    }
+
+    /**
+     * @throws FileNotFoundException if the job does not exist or belongs to another owner
+     */
+    public DeleteJob get(String jobId, String ownerId) {
+        DeleteJob job = mongoTemplate.findById(jobId, DeleteJob.class);
+        if (job == null || !ownerId.equals(job.getOwnerId())) {
+            throw new FileNotFoundException("Delete job not found");
+        }
+        return job;
+    }
+
+    /**
+     * Running jobs stop after their current batch and hand their lease back, so another node
+     * resumes them right away
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        stopping = true;
+        executor.shutdown();
+        if (!executor.awaitTermination(settings.getShutdownTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("Bulk delete jobs did not stop within {}, they are resumed once their lease expires",
+                    settings.getShutdownTimeout());
+        }
+    }
+
+    private void submit(String jobId) {
+        try {
+            executor.execute(() -> run(jobId));
+        } catch (RejectedExecutionException e) {
+            log.info("Shutting down, bulk delete {} is resumed by another node once its lease expires", jobId);
+        }
+    }
+
+    private void run(String jobId) {
+        long deleted = 0;
+        long failed = 0;
+
+        try {
+            Query batchQuery = new Query(Criteria.where("deleteJobId").is(jobId).and("state").is(FileState.DELETING))
+                    .limit(settings.getBatchSize());
+            batchQuery.fields().include("objectStoreKey");
+
+            // every batch leaves the query: removed, or back in READY without the job ID
+            while (true) {
+                if (stopping) {
+                    handBack(jobId);
+                    log.info("Bulk delete {} handed back on shutdown after {} files deleted", jobId, deleted);
+                    return;
+                }
+                if (!renew(jobId)) {
+                    log.warn("Bulk delete {} lost its lease, stopping after {} files deleted", jobId, deleted);
+                    return;
+                }
+                List<File> batch = mongoTemplate.find(batchQuery, File.class);
+                if (batch.isEmpty()) {
+                    break;
+                }
+
+                batch.forEach(file -> downloadDescriptorCache.invalidate(file.getId()));
+
+                Map<String, String> keysByFileId = new LinkedHashMap<>();
+                batch.forEach(file -> keysByFileId.put(file.getId(), file.getObjectStoreKey()));
+                Set<String> unreleasedIds = blobService.releaseAll(keysByFileId);
+
+                List<String> releasedIds = new ArrayList<>(batch.size());
+                List<String> failedIds = new ArrayList<>();
+                for (File file : batch) {
+                    (unreleasedIds.contains(file.getId()) ? failedIds : releasedIds).add(file.getId());
+                }
+
+                if (!releasedIds.isEmpty()) {
+                    mongoTemplate.remove(new Query(Criteria.where("id").in(releasedIds)), File.class);
+                }
+                if (!failedIds.isEmpty()) {
+                    mongoTemplate.updateMulti(new Query(Criteria.where("id").in(failedIds)),
+                            new Update().set("state", FileState.READY).unset("deleteJobId"), File.class);
+                }
+
+                deleted += releasedIds.size();
+                failed += failedIds.size();
+                mongoTemplate.updateFirst(new Query(Criteria.where("id").is(jobId)), new Update()
+                        .inc("deleted", releasedIds.size())
+                        .inc("failed", failedIds.size())
+                        .set("updatedTs", Instant.now()), DeleteJob.class);
+            }
+
+            finish(jobId, DeleteJobState.COMPLETED);
+            log.info("Bulk delete {} completed: {} files deleted, {} failed", jobId, deleted, failed);
+
+        } catch (Exception e) {
+            log.error("Bulk delete {} failed after {} files deleted", jobId, deleted, e);
+            fail(jobId);
+        }
+    }
+
+    /**
+     * Returns the files the job has not processed to READY and marks it FAILED. If that fails as
+     * well, the job keeps its lease until it expires and is then resumed.
+     */
+    private void fail(String jobId) {
+        try {
+            long reverted = mongoTemplate.updateMulti(
+                    new Query(Criteria.where("deleteJobId").is(jobId).and("state").is(FileState.DELETING)),
+                    new Update().set("state", FileState.READY).unset("deleteJobId"), File.class).getModifiedCount();
+            mongoTemplate.updateFirst(held(jobId), new Update()
+                    .inc("failed", reverted)
+                    .set("state", DeleteJobState.FAILED)
+                    .set("updatedTs", Instant.now())
+                    .unset("leaseOwner")
+                    .unset("leaseExpiresTs"), DeleteJob.class);
+            log.info("Bulk delete {} returned {} unprocessed files to READY", jobId, reverted);
+        } catch (RuntimeException e) {
+            log.error("Failed to stop bulk delete {}, it is resumed once its lease expires", jobId, e);
+        }
+    }
+
+    private void finish(String jobId, DeleteJobState state) {
+        mongoTemplate.updateFirst(held(jobId), new Update()
+                .set("state", state)
+                .set("updatedTs", Instant.now())
+                .unset("leaseOwner")
+                .unset("leaseExpiresTs"), DeleteJob.class);
+    }
+
+    /**
+     * @return {@code false} if the lease expired and the job was taken over by another node
+     */
+    private boolean renew(String jobId) {
+        Update update = new Update().set("leaseExpiresTs", Instant.now().plus(settings.getLeaseTtl()));
+        return mongoTemplate.updateFirst(held(jobId), update, DeleteJob.class).getMatchedCount() == 1;
+    }
+
+    private void handBack(String jobId) {
+        mongoTemplate.updateFirst(held(jobId), new Update().set("leaseExpiresTs", Instant.now()), DeleteJob.class);
+    }
+
+    private Query held(String jobId) {
+        return new Query(Criteria.where("id").is(jobId)
+                .and("state").is(DeleteJobState.RUNNING)
+                .and("leaseOwner").is(nodeId));
+    }
+
+    /**
+     * RUNNING jobs whose lease expired, including jobs created before leases existed
+     */
+    private static Criteria expiredLease(Instant now) {
+        return Criteria.where("state").is(DeleteJobState.RUNNING).and("leaseExpiresTs").not().gt(now);
+    }
+}
@@ -0,0 +1,11 @@
+package ru.kropotov.storage.service;
+
+/**
+ * Content stored for a reserved file, ready to be finalized
+ *
+ * @param objectStoreKey the key the content ended up under
+ * @param contentType content type sent with the content, or {@code null} to keep the reserved one
+ */
+public record CompletedUpload(String fileId, String sha256, long sizeBytes, String objectStoreKey,
+                              String contentType) {
+}
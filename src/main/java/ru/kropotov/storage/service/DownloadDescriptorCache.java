@@ -0,0 +1,71 @@
+package ru.kropotov.storage.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import ru.kropotov.storage.config.properties.StorageProperties;
+import ru.kropotov.storage.domain.model.DownloadDescriptor;
+import ru.kropotov.storage.domain.model.File;
+import ru.kropotov.storage.domain.model.FileState;
+import ru.kropotov.storage.expection.FileNotFoundException;
+
+/**
+ * Read-through cache of download descriptors of READY files, keyed by file ID.
+ * <p>
+ * Entries are invalidated by every change made through {@link FileService} on this node.
+ * Changes made on other nodes become visible after {@code storage.download.descriptorCacheTtl}.
+ */
+@Slf4j
+@Component
+public class DownloadDescriptorCache {
+
+    static final String CACHE_NAME = "downloadDescriptors";
+
+    private final MongoTemplate mongoTemplate;
+    private final Cache<String, DownloadDescriptor> cache;
+
+    public DownloadDescriptorCache(MongoTemplate mongoTemplate, StorageProperties storageProperties,
+                                   MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        StorageProperties.Download settings = storageProperties.getDownload();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(settings.getDescriptorCacheSize())
+                .expireAfterWrite(settings.getDescriptorCacheTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * @throws FileNotFoundException if the file does not exist or is not READY; such lookups are not cached
+     */
+    public DownloadDescriptor get(String fileId) {
+        return cache.get(fileId, this::load);
+    }
+
+    public void invalidate(String fileId) {
+        cache.invalidate(fileId);
+    }
+
+    private DownloadDescriptor load(String fileId) {
+        Query query = new Query(Criteria.where("id").is(fileId));
+        query.fields().include(DownloadDescriptor.FIELDS);
+
+        File file = mongoTemplate.findOne(query, File.class);
+        if (file == null) {
+            throw new FileNotFoundException("File not found");
+        }
+        if (file.getState() != FileState.READY) {
+            throw new FileNotFoundException("File not available");
+        }
+
+        log.debug("Loaded download descriptor: {}", fileId);
+        return DownloadDescriptor.of(file);
+    }
+}
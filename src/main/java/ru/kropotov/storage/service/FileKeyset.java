@@ -0,0 +1,122 @@
+package ru.kropotov.storage.service;
+
+import org.bson.BsonType;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import ru.kropotov.storage.domain.model.File;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Seek predicates over (sort key, {@code _id}) for file listings.
+ * <p>
+ * They follow Mongo's sort order: missing values sort before any value, and an array field is
+ * ordered by its smallest element ascending and by its largest element descending, with an empty
+ * array before a missing one.
+ */
+final class FileKeyset {
+
+    private static final String ID = "id";
+    private static final String TAGS = "tags";
+
+    private FileKeyset() {
+    }
+
+    static Sort sort(String sortField, Sort.Direction direction) {
+        return Sort.by(direction, sortField).and(Sort.by(direction, ID));
+    }
+
+    /**
+     * @return criteria matching the rows that come after {@code position}
+     */
+    static Criteria after(KeysetPosition position) {
+        boolean ascending = position.direction().isAscending();
+        Criteria idAfter = ascending ? Criteria.where(ID).gt(position.id()) : Criteria.where(ID).lt(position.id());
+
+        if (TAGS.equals(position.sortField())) {
+            return ascending ? tagsAfterAscending(position.value(), idAfter) : tagsAfterDescending(position.value(), idAfter);
+        }
+
+        String field = position.sortField();
+        Object value = position.value();
+        if (ascending) {
+            return value == null
+                    ? new Criteria().orOperator(and(Criteria.where(field).is(null), idAfter), Criteria.where(field).ne(null))
+                    : new Criteria().orOperator(Criteria.where(field).gt(value), and(Criteria.where(field).is(value), idAfter));
+        }
+        return value == null
+                ? and(Criteria.where(field).is(null), idAfter)
+                : new Criteria().orOperator(Criteria.where(field).lt(value),
+                        and(Criteria.where(field).is(value), idAfter), Criteria.where(field).is(null));
+    }
+
+    /**
+     * @return the position of {@code file} in a listing sorted by {@code sortField}
+     */
+    static KeysetPosition positionOf(File file, String sortField, Sort.Direction direction) {
+        Object value = switch (sortField) {
+            case "fileName" -> file.getFileName();
+            case "uploadTs" -> file.getUploadTs();
+            case "contentType" -> file.getContentType();
+            case "sizeBytes" -> file.getSizeBytes();
+            case TAGS -> tagsKey(file.getTags(), direction);
+            default -> throw new IllegalArgumentException("Invalid sort field: " + sortField);
+        };
+        return new KeysetPosition(sortField, direction, value, file.getId());
+    }
+
+    private static Object tagsKey(List<String> tags, Sort.Direction direction) {
+        if (tags == null) {
+            return null;
+        }
+        if (tags.isEmpty()) {
+            return KeysetPosition.EMPTY_ARRAY;
+        }
+        return direction.isAscending() ? Collections.min(tags) : Collections.max(tags);
+    }
+
+    /**
+     * Ascending order: empty array, missing, then by smallest tag
+     */
+    private static Criteria tagsAfterAscending(Object value, Criteria idAfter) {
+        if (value == KeysetPosition.EMPTY_ARRAY) {
+            return new Criteria().orOperator(
+                    and(Criteria.where(TAGS).is(List.of()), idAfter),
+                    Criteria.where(TAGS).ne(List.of()));
+        }
+        if (value == null) {
+            return new Criteria().orOperator(
+                    and(Criteria.where(TAGS).is(null), idAfter),
+                    Criteria.where(TAGS).type(BsonType.STRING.getValue()));
+        }
+        return new Criteria().orOperator(
+                // smallest tag > value: every tag is
+                and(Criteria.where(TAGS).gt(value), Criteria.where(TAGS).not().lte(value)),
+                and(Criteria.where(TAGS).is(value), Criteria.where(TAGS).not().lt(value), idAfter));
+    }
+
+    /**
+     * Descending order: by largest tag, missing, then empty array
+     */
+    private static Criteria tagsAfterDescending(Object value, Criteria idAfter) {
+        if (value == KeysetPosition.EMPTY_ARRAY) {
+            return and(Criteria.where(TAGS).is(List.of()), idAfter);
+        }
+        if (value == null) {
+            return new Criteria().orOperator(
+                    and(Criteria.where(TAGS).is(null), idAfter),
+                    Criteria.where(TAGS).is(List.of()));
+        }
+        return new Criteria().orOperator(
+                // largest tag < value: every tag is
+                and(Criteria.where(TAGS).lt(value), Criteria.where(TAGS).not().gte(value)),
+                and(Criteria.where(TAGS).is(value), Criteria.where(TAGS).not().gt(value), idAfter),
+                Criteria.where(TAGS).is(null),
+                Criteria.where(TAGS).is(List.of()));
+    }
+
+    private static Criteria and(Criteria... criteria) {
+        return new Criteria().andOperator(criteria);
+    }
+}
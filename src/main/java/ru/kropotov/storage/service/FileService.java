@@ -1,27 +1,37 @@
 package ru.kropotov.storage.service;
 
+import com.mongodb.ErrorCategory;
+import com.mongodb.bulk.BulkWriteError;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.stereotype.Service;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.transaction.annotation.Transactional;
 import ru.kropotov.storage.domain.model.*;
 import ru.kropotov.storage.domain.repository.FileRepository;
 import ru.kropotov.storage.expection.AccessDeniedException;
 import ru.kropotov.storage.expection.FileAlreadyExistsException;
 import ru.kropotov.storage.expection.FileNotFoundException;
+import ru.kropotov.storage.infra.RandomIds;
 
 import java.time.Instant;
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static org.springframework.util.CollectionUtils.isEmpty;
 import static ru.kropotov.storage.domain.model.Visibility.PRIVATE;
 
 @Slf4j
@@ -32,24 +42,13 @@ public class FileService {
     private final FileRepository fileRepository;
     private final TagService tagService;
     private final MongoTemplate mongoTemplate;
+    private final DownloadDescriptorCache downloadDescriptorCache;
 
     @Transactional(rollbackFor = Exception.class)
     public File reserveId(FileMeta fileMeta) {
         tagService.ensureExists(fileMeta.getTags());
 
-        File file = File.builder()
-                .ownerId(fileMeta.getOwnerId())
-                .fileName(fileMeta.getFileName())
-                .contentType(fileMeta.getContentType())
-                .sizeBytes(0L)
-                .sha256(null)
-                .visibility(fileMeta.getVisibility())
-                .tags(fileMeta.getTags())
-                .uploadTs(Instant.now())
-                .state(FileState.PENDING)
-                .objectStoreKey(generateObjectStoreKey())
-                .downloadSecret(generateDownloadSecret())
-                .build();
+        File file = pendingFile(fileMeta);
 
         try {
             return fileRepository.save(file);
@@ -58,8 +57,62 @@ public class FileService {
         }
     }
 
+    /**
+     * Bulk variant of {@link #reserveId(FileMeta)}: creates the tags of all files at once and
+     * reserves the files with one unordered insert, so a name conflict only fails that file
+     *
+     * @return the reserved file or the reason it was rejected, in the order of {@code fileMetas}
+     */
+    public List<ItemResult<File>> reserveAll(List<FileMeta> fileMetas) {
+        tagService.ensureExists(fileMetas.stream()
+                .map(FileMeta::getTags)
+                .filter(Objects::nonNull)
+                .flatMap(List::stream)
+                .distinct()
+                .toList());
+
+        List<File> files = new ArrayList<>(fileMetas.size());
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, File.class);
+        for (FileMeta fileMeta : fileMetas) {
+            File file = pendingFile(fileMeta);
+            // bulk inserts do not report generated IDs back
+            file.setId(new ObjectId().toHexString());
+            files.add(file);
+            bulkOps.insert(file);
+        }
+
+        Map<Integer, RuntimeException> rejected = new HashMap<>();
+        try {
+            bulkOps.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                FileMeta fileMeta = fileMetas.get(error.getIndex());
+                rejected.put(error.getIndex(), isDuplicateKey(error)
+                        ? handleDuplicateKey(error.getMessage(), fileMeta)
+                        : new IllegalStateException("Failed to reserve file: " + fileMeta.getFileName()));
+            }
+        }
+
+        List<ItemResult<File>> results = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            RuntimeException error = rejected.get(i);
+            results.add(error == null ? ItemResult.ok(files.get(i)) : ItemResult.failed(error));
+        }
+
+        log.info("Reserved {} of {} files", files.size() - rejected.size(), files.size());
+        return results;
+    }
+
     @Transactional(rollbackFor = Exception.class)
     public File finaliseUpload(String fileId, String sha256, long actualSize) {
+        return finaliseUpload(fileId, sha256, actualSize, null);
+    }
+
+    /**
+     * @param objectStoreKey the key the content ended up under, or {@code null} to keep the reserved one
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public File finaliseUpload(String fileId, String sha256, long actualSize, String objectStoreKey) {
         File pendingFile = fileRepository.findById(fileId)
                 .orElseThrow(() -> new IllegalStateException("File not found: " + fileId));
 
@@ -67,13 +120,7 @@ public class FileService {
             throw new IllegalStateException("File not in PENDING state: " + fileId);
         }
 
-        Query duplicateQuery = new Query(Criteria.where("ownerId").is(pendingFile.getOwnerId())
-                .and("sha256").is(sha256.toLowerCase())
-                .and("state").is(FileState.READY));
-
-        File existingFile = mongoTemplate.findOne(duplicateQuery, File.class);
-
-        if (existingFile != null) {
+        if (findReadyByContent(pendingFile.getOwnerId(), sha256).isPresent()) {
             updateState(fileId, FileState.FAILED);
             throw new FileAlreadyExistsException(
                     "File with identical content already exists for this user",
@@ -85,6 +132,9 @@ public class FileService {
                 .set("sha256", sha256.toLowerCase())
                 .set("sizeBytes", actualSize)
                 .set("state", FileState.READY);
+        if (objectStoreKey != null) {
+            update.set("objectStoreKey", objectStoreKey);
+        }
 
         File result = mongoTemplate.findAndModify(query, update, File.class);
 
@@ -95,18 +145,138 @@ public class FileService {
         result.setSha256(sha256.toLowerCase());
         result.setSizeBytes(actualSize);
         result.setState(FileState.READY);
+        if (objectStoreKey != null) {
+            result.setObjectStoreKey(objectStoreKey);
+        }
 
         log.info("Finalized upload: {} -> {} bytes, SHA-256: {}", fileId, actualSize, sha256);
         return result;
     }
 
+    /**
+     * Bulk variant of {@link #finaliseUpload(String, String, long, String)} for files of one owner:
+     * content the owner already has, or that repeats within the batch, fails that file; the rest
+     * is finalized with one unordered bulk write and read back with one query
+     *
+     * @return the finalized file or the reason it was not finalized, in the order of {@code uploads}.
+     * Files that were not finalized are left PENDING for the caller to compensate
+     */
+    public List<ItemResult<File>> finaliseAll(String ownerId, List<CompletedUpload> uploads) {
+        List<ItemResult<File>> results = new ArrayList<>(Collections.nCopies(uploads.size(), null));
+
+        Set<String> knownContent = new HashSet<>(findReadyByContent(ownerId,
+                uploads.stream().map(CompletedUpload::sha256).toList()).keySet());
+
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, File.class);
+        List<Integer> bulkIndexes = new ArrayList<>();
+        for (int i = 0; i < uploads.size(); i++) {
+            CompletedUpload upload = uploads.get(i);
+            if (!knownContent.add(upload.sha256().toLowerCase())) {
+                results.set(i, ItemResult.failed(duplicateContent()));
+                continue;
+            }
+
+            Update update = new Update()
+                    .set("sha256", upload.sha256().toLowerCase())
+                    .set("sizeBytes", upload.sizeBytes())
+                    .set("objectStoreKey", upload.objectStoreKey())
+                    .set("state", FileState.READY);
+            if (upload.contentType() != null) {
+                update.set("contentType", upload.contentType());
+            }
+            bulkOps.updateOne(new Query(Criteria.where("id").is(upload.fileId()).and("state").is(FileState.PENDING)),
+                    update);
+            bulkIndexes.add(i);
+        }
+
+        if (!bulkIndexes.isEmpty()) {
+            try {
+                bulkOps.execute();
+            } catch (BulkOperationException e) {
+                for (BulkWriteError error : e.getErrors()) {
+                    int i = bulkIndexes.get(error.getIndex());
+                    // a concurrent upload of the same content won the race on ux_owner_sha_ready
+                    results.set(i, ItemResult.failed(isDuplicateKey(error)
+                            ? duplicateContent()
+                            : new IllegalStateException("Failed to finalize upload: " + uploads.get(i).fileId())));
+                }
+            }
+        }
+
+        List<String> finalizedIds = new ArrayList<>();
+        for (int i = 0; i < uploads.size(); i++) {
+            if (results.get(i) == null) {
+                finalizedIds.add(uploads.get(i).fileId());
+            }
+        }
+        Map<String, File> finalized = mongoTemplate.find(new Query(Criteria.where("id").in(finalizedIds)), File.class)
+                .stream()
+                .collect(Collectors.toMap(File::getId, Function.identity()));
+
+        for (int i = 0; i < uploads.size(); i++) {
+            if (results.get(i) != null) {
+                continue;
+            }
+            CompletedUpload upload = uploads.get(i);
+            File file = finalized.get(upload.fileId());
+            if (file != null && file.getState() == FileState.READY
+                    && upload.objectStoreKey().equals(file.getObjectStoreKey())) {
+                results.set(i, ItemResult.ok(file));
+            } else {
+                results.set(i, ItemResult.failed(new IllegalStateException(
+                        "File not found in PENDING state during finalization: " + upload.fileId())));
+            }
+        }
+
+        log.info("Finalized {} of {} uploads for owner {}",
+                results.stream().filter(ItemResult::isOk).count(), uploads.size(), ownerId);
+        return results;
+    }
+
+    /**
+     * Served by the {@code ux_owner_sha_ready} index
+     */
+    public Optional<File> findReadyByContent(String ownerId, String sha256) {
+        Query query = new Query(Criteria.where("ownerId").is(ownerId)
+                .and("sha256").is(sha256.toLowerCase())
+                .and("state").is(FileState.READY));
+        return Optional.ofNullable(mongoTemplate.findOne(query, File.class));
+    }
+
+    /**
+     * Bulk variant of {@link #findReadyByContent(String, String)}
+     *
+     * @return the owner's READY files by lower-case SHA-256
+     */
+    public Map<String, File> findReadyByContent(String ownerId, Collection<String> sha256s) {
+        if (sha256s.isEmpty()) {
+            return Map.of();
+        }
+        Query query = new Query(Criteria.where("ownerId").is(ownerId)
+                .and("sha256").in(sha256s.stream().map(String::toLowerCase).collect(Collectors.toSet()))
+                .and("state").is(FileState.READY));
+        return mongoTemplate.find(query, File.class).stream()
+                .collect(Collectors.toMap(File::getSha256, Function.identity(), (first, second) -> first));
+    }
+
     public void updateState(String fileId, FileState newState) {
         Query query = new Query(Criteria.where("id").is(fileId));
         Update update = new Update().set("state", newState);
         mongoTemplate.updateFirst(query, update, File.class);
+        downloadDescriptorCache.invalidate(fileId);
         log.debug("Updated file {} state to {}", fileId, newState);
     }
 
+    public void updateStates(Collection<String> fileIds, FileState newState) {
+        if (fileIds.isEmpty()) {
+            return;
+        }
+        Query query = new Query(Criteria.where("id").in(fileIds));
+        mongoTemplate.updateMulti(query, new Update().set("state", newState), File.class);
+        fileIds.forEach(downloadDescriptorCache::invalidate);
+        log.debug("Updated {} files state to {}", fileIds.size(), newState);
+    }
+
     @Transactional(rollbackFor = Exception.class)
     public File markForDeletion(String fileId, String userId) {
         Query query = new Query(Criteria.where("id").is(fileId)
@@ -115,6 +285,7 @@ public class FileService {
         Update update = new Update().set("state", FileState.DELETING);
 
         File result = mongoTemplate.findAndModify(query, update, File.class);
+        downloadDescriptorCache.invalidate(fileId);
 
         if (result == null) {
             Optional<File> fileOpt = fileRepository.findById(fileId);
@@ -136,10 +307,22 @@ public class FileService {
 
     public void deleteMetadata(String fileId) {
         fileRepository.deleteById(fileId);
+        downloadDescriptorCache.invalidate(fileId);
         log.debug("Deleted file metadata: {}", fileId);
     }
 
     public Page<File> getUserFiles(String userId, Optional<String> tag, Pageable pageable) {
+        return getUserFiles(userId, tag, pageable, Set.of());
+    }
+
+    /**
+     * @param fields the {@link File} properties to read, all of them if empty; the id is always read
+     */
+    public Page<File> getUserFiles(String userId, Optional<String> tag, Pageable pageable, Set<String> fields) {
+        if (!fields.isEmpty()) {
+            Criteria criteria = Criteria.where("ownerId").is(userId).and("state").is(FileState.READY);
+            return findPage(withTag(criteria, tag), pageable, fields);
+        }
         if (tag.isPresent() && !tag.get().trim().isEmpty()) {
             String normalizedTag = tag.get().trim().toLowerCase();
             if (!tagService.tagExists(normalizedTag)) {
@@ -152,6 +335,17 @@ public class FileService {
     }
 
     public Page<File> getPublicFiles(Optional<String> tag, Pageable pageable) {
+        return getPublicFiles(tag, pageable, Set.of());
+    }
+
+    /**
+     * @param fields the {@link File} properties to read, all of them if empty; the id is always read
+     */
+    public Page<File> getPublicFiles(Optional<String> tag, Pageable pageable, Set<String> fields) {
+        if (!fields.isEmpty()) {
+            Criteria criteria = Criteria.where("visibility").is(Visibility.PUBLIC).and("state").is(FileState.READY);
+            return findPage(withTag(criteria, tag), pageable, fields);
+        }
         if (tag.isPresent() && !tag.get().trim().isEmpty()) {
             String normalizedTag = tag.get().trim().toLowerCase();
             if (!tagService.tagExists(normalizedTag)) {
@@ -163,6 +357,92 @@ public class FileService {
         return fileRepository.findByVisibilityAndState(Visibility.PUBLIC, FileState.READY, pageable);
     }
 
+    /**
+     * Keyset variant of {@link #getUserFiles(String, Optional, Pageable, Set)}: seeks past {@code after}
+     * instead of skipping rows and does not count
+     */
+    public KeysetPage<File> getUserFiles(String userId, Optional<String> tag, String sortField,
+                                         Sort.Direction direction, KeysetPosition after, int limit,
+                                         Set<String> fields) {
+        Criteria criteria = Criteria.where("ownerId").is(userId).and("state").is(FileState.READY);
+        return findAfter(withTag(criteria, tag), sortField, direction, after, limit, fields);
+    }
+
+    /**
+     * Keyset variant of {@link #getPublicFiles(Optional, Pageable, Set)}
+     */
+    public KeysetPage<File> getPublicFiles(Optional<String> tag, String sortField,
+                                           Sort.Direction direction, KeysetPosition after, int limit,
+                                           Set<String> fields) {
+        Criteria criteria = Criteria.where("visibility").is(Visibility.PUBLIC).and("state").is(FileState.READY);
+        return findAfter(withTag(criteria, tag), sortField, direction, after, limit, fields);
+    }
+
+    /**
+     * READY files for an archive, ordered by name: the given IDs among the owner's and public files,
+     * or else the owner's files with the tag. Only what an archive entry needs is read.
+     * The caller must close the stream.
+     */
+    public Stream<File> streamForArchive(String ownerId, Collection<String> fileIds, String tag) {
+        Criteria criteria;
+        if (!isEmpty(fileIds)) {
+            criteria = Criteria.where("id").in(Set.copyOf(fileIds)).and("state").is(FileState.READY)
+                    .orOperator(Criteria.where("ownerId").is(ownerId), Criteria.where("visibility").is(Visibility.PUBLIC));
+        } else {
+            criteria = withTag(Criteria.where("ownerId").is(ownerId).and("state").is(FileState.READY),
+                    Optional.ofNullable(tag));
+        }
+
+        Query query = new Query(criteria).with(Sort.by("fileName", "id"));
+        query.fields().include("fileName", "contentType", "sizeBytes", "uploadTs", "objectStoreKey");
+        return mongoTemplate.stream(query, File.class);
+    }
+
+    private Criteria withTag(Criteria criteria, Optional<String> tag) {
+        if (tag.isEmpty() || tag.get().trim().isEmpty()) {
+            return criteria;
+        }
+        String normalizedTag = tag.get().trim().toLowerCase();
+        if (!tagService.tagExists(normalizedTag)) {
+            throw new FileNotFoundException("Tag not found: " + tag.get());
+        }
+        return criteria.and("tags").is(normalizedTag);
+    }
+
+    private Page<File> findPage(Criteria criteria, Pageable pageable, Set<String> fields) {
+        Query query = new Query(criteria).with(pageable);
+        query.fields().include(fields.toArray(String[]::new));
+
+        List<File> content = mongoTemplate.find(query, File.class);
+        return PageableExecutionUtils.getPage(content, pageable,
+                () -> mongoTemplate.count(Query.of(query).limit(-1).skip(-1), File.class));
+    }
+
+    private KeysetPage<File> findAfter(Criteria criteria, String sortField, Sort.Direction direction,
+                                       KeysetPosition after, int limit, Set<String> fields) {
+        if (after != null && (!sortField.equals(after.sortField()) || direction != after.direction())) {
+            throw new IllegalArgumentException("Cursor does not match the requested sort");
+        }
+
+        Criteria seek = after != null ? new Criteria().andOperator(criteria, FileKeyset.after(after)) : criteria;
+        Query query = new Query(seek)
+                .with(FileKeyset.sort(sortField, direction))
+                .limit(limit + 1);
+        if (!fields.isEmpty()) {
+            // the sort key of the last row becomes the next cursor
+            query.fields().include(fields.toArray(String[]::new)).include(sortField);
+        }
+
+        // the extra row only tells whether there is a next page
+        List<File> rows = mongoTemplate.find(query, File.class);
+        if (rows.size() <= limit) {
+            return new KeysetPage<>(rows, null);
+        }
+
+        List<File> items = List.copyOf(rows.subList(0, limit));
+        return new KeysetPage<>(items, FileKeyset.positionOf(items.get(limit - 1), sortField, direction));
+    }
+
     @Transactional(rollbackFor = Exception.class)
     public File renameFile(String fileId, String userId, String newName) {
         File file = findFileByIdAndOwner(fileId, userId);
@@ -174,7 +454,9 @@ public class FileService {
         file.setFileName(newName);
 
         try {
-            return fileRepository.save(file);
+            File renamed = fileRepository.save(file);
+            downloadDescriptorCache.invalidate(fileId);
+            return renamed;
         } catch (DuplicateKeyException e) {
             throw new FileAlreadyExistsException(
                     String.format("File with name '%s' already exists for this user", newName),
@@ -201,6 +483,19 @@ public class FileService {
         return file;
     }
 
+    /**
+     * Same checks as {@link #getFileForDownload}, served from the descriptor cache
+     */
+    public DownloadDescriptor getDownloadDescriptor(String fileId, String secret) {
+        DownloadDescriptor descriptor = downloadDescriptorCache.get(fileId);
+
+        if (!secret.equals(descriptor.downloadSecret())) {
+            throw new AccessDeniedException("Invalid download secret");
+        }
+
+        return descriptor;
+    }
+
     private File findFileByIdAndOwner(String fileId, String ownerId) {
         Optional<File> fileOpt = fileRepository.findById(fileId);
         if (fileOpt.isEmpty()) {
@@ -219,16 +514,43 @@ public class FileService {
         return file;
     }
 
+    private File pendingFile(FileMeta fileMeta) {
+        return File.builder()
+                .ownerId(fileMeta.getOwnerId())
+                .fileName(fileMeta.getFileName())
+                .contentType(fileMeta.getContentType())
+                .sizeBytes(0L)
+                .sha256(null)
+                .visibility(fileMeta.getVisibility())
+                .tags(fileMeta.getTags())
+                .uploadTs(Instant.now())
+                .state(FileState.PENDING)
+                .objectStoreKey(generateObjectStoreKey())
+                .downloadSecret(generateDownloadSecret())
+                .build();
+    }
+
     private String generateObjectStoreKey() {
-        return "file-" + UUID.randomUUID() + "-" + System.nanoTime();
+        return "file-" + RandomIds.uuid() + "-" + System.nanoTime();
     }
 
     private String generateDownloadSecret() {
-        return UUID.randomUUID().toString().replace("-", "");
+        return RandomIds.hex(16);
+    }
+
+    private static boolean isDuplicateKey(BulkWriteError error) {
+        return ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY;
+    }
+
+    private static FileAlreadyExistsException duplicateContent() {
+        return new FileAlreadyExistsException("File with identical content already exists for this user", "content");
     }
 
     private FileAlreadyExistsException handleDuplicateKeyException(DuplicateKeyException e, FileMeta fileMeta) {
-        String errorMessage = e.getMessage();
+        return handleDuplicateKey(e.getMessage(), fileMeta);
+    }
+
+    private FileAlreadyExistsException handleDuplicateKey(String errorMessage, FileMeta fileMeta) {
         String duplicateType;
         String message;
 
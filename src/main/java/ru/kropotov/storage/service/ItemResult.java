@@ -0,0 +1,19 @@
+package ru.kropotov.storage.service;
+
+/**
+ * Outcome of one item of a bulk operation: either a value or the error that item failed with
+ */
+public record ItemResult<T>(T value, RuntimeException error) {
+
+    public static <T> ItemResult<T> ok(T value) {
+        return new ItemResult<>(value, null);
+    }
+
+    public static <T> ItemResult<T> failed(RuntimeException error) {
+        return new ItemResult<>(null, error);
+    }
+
+    public boolean isOk() {
+        return error == null;
+    }
+}
@@ -0,0 +1,11 @@
+package ru.kropotov.storage.service;
+
+import java.util.List;
+
+/**
+ * Page of a keyset (seek) pagination
+ *
+ * @param next position to continue after, or {@code null} on the last page
+ */
+public record KeysetPage<T>(List<T> items, KeysetPosition next) {
+}
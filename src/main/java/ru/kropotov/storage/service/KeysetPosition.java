@@ -0,0 +1,19 @@
+package ru.kropotov.storage.service;
+
+import org.springframework.data.domain.Sort;
+
+/**
+ * Position of the last row of a keyset page: its sort key and ID.
+ *
+ * @param sortField the sorted field
+ * @param value the sort key of the row: a {@link String}, {@link Long}, {@link java.time.Instant},
+ *              {@code null} for a missing value, or {@link #EMPTY_ARRAY} for a field holding an empty array
+ * @param id the ID of the row, the tie breaker
+ */
+public record KeysetPosition(String sortField, Sort.Direction direction, Object value, String id) {
+
+    /**
+     * Sort key of an empty array, which Mongo orders before {@code null}
+     */
+    public static final Object EMPTY_ARRAY = java.util.List.of();
+}
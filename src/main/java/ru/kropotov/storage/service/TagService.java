@@ -1,59 +1,171 @@
 package ru.kropotov.storage.service;
 
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.DuplicateKeyException;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
 import ru.kropotov.storage.domain.model.Tag;
 import ru.kropotov.storage.domain.repository.TagRepository;
 
-import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.springframework.util.CollectionUtils.isEmpty;
 
+/**
+ * Tag vocabulary, served from an in-process dictionary.
+ * <p>
+ * The dictionary is loaded when the application is ready and grows with every tag created through
+ * this node. Tags are never removed, so a name missing from it is looked up in Mongo before it is
+ * reported as unknown, and a periodic refresh picks up tags created on other nodes.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class TagService {
-    
+
     private final TagRepository tagRepository;
+    private final MongoTemplate mongoTemplate;
+
+    private final AtomicReference<Vocabulary> vocabulary = new AtomicReference<>();
 
+    /**
+     * Creates the tags that are not known yet with one unordered bulk upsert
+     */
     public void ensureExists(List<String> tagNames) {
         if (isEmpty(tagNames)) {
             return;
         }
 
-        List<Tag> existingTags = tagRepository.findByNameIn(tagNames);
-        Set<String> existingTagNames = existingTags.stream()
-                .map(Tag::getName)
-                .collect(Collectors.toSet());
-
-        List<Tag> newTags = tagNames.stream()
-                .filter(tagName -> !existingTagNames.contains(tagName))
-                .map(Tag::new)
+        Vocabulary current = getVocabulary();
+        List<String> newTagNames = tagNames.stream()
+                .map(String::toLowerCase)
+                .filter(tagName -> !current.contains(tagName))
+                .distinct()
                 .toList();
-        
-        if (!newTags.isEmpty()) {
-            try {
-                tagRepository.saveAll(newTags);
-                log.debug("Created {} new tags", newTags.size());
-            } catch (DuplicateKeyException e) {
-                log.debug("Some tags already existed during parallel insertion");
-            }
+
+        if (newTagNames.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Tag.class);
+        for (String tagName : newTagNames) {
+            bulkOps.upsert(new Query(Criteria.where("name").is(tagName)),
+                    new Update().setOnInsert("name", tagName));
+        }
+        BulkWriteResult result;
+        try {
+            result = bulkOps.execute();
+        } catch (BulkOperationException e) {
+            // a concurrent upsert of the same name lost the race on the unique index
+            log.debug("Some tags already existed during parallel insertion");
+            result = e.getResult();
         }
+
+        // tags that already existed in Mongo are picked up by the next refresh or lookup
+        List<Tag> createdTags = new ArrayList<>(result.getUpserts().size());
+        for (BulkWriteUpsert upsert : result.getUpserts()) {
+            createdTags.add(Tag.builder()
+                    .id(upsert.getId().asObjectId().getValue().toHexString())
+                    .name(newTagNames.get(upsert.getIndex()))
+                    .build());
+        }
+        merge(createdTags);
+
+        log.debug("Created {} new tags", createdTags.size());
     }
 
     public List<Tag> getAllTags() {
-        return tagRepository.findAll();
+        return getVocabulary().tags();
+    }
+
+    /**
+     * @return the whole vocabulary with a version that changes whenever its content does
+     */
+    public Vocabulary getVocabulary() {
+        Vocabulary current = vocabulary.get();
+        return current != null ? current : refresh();
     }
 
     public boolean tagExists(String tagName) {
         if (tagName == null || tagName.trim().isEmpty()) {
             return false;
         }
-        List<Tag> found = tagRepository.findByNameIn(List.of(tagName.trim().toLowerCase()));
+        String normalizedName = tagName.trim().toLowerCase();
+        if (getVocabulary().contains(normalizedName)) {
+            return true;
+        }
+
+        List<Tag> found = tagRepository.findByNameIn(List.of(normalizedName));
+        merge(found);
         return !found.isEmpty();
     }
-}
\ No newline at end of file
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            Vocabulary loaded = refresh();
+            log.info("Loaded tag vocabulary: {} tags", loaded.tags().size());
+        } catch (Exception e) {
+            log.warn("Failed to load tag vocabulary, it will be loaded on first use", e);
+        }
+    }
+
+    @Scheduled(initialDelayString = "#{@storageProperties.tagRefreshInterval.toMillis()}",
+            fixedDelayString = "#{@storageProperties.tagRefreshInterval.toMillis()}")
+    public void scheduledRefresh() {
+        refresh();
+    }
+
+    private Vocabulary refresh() {
+        return merge(tagRepository.findAll());
+    }
+
+    private Vocabulary merge(Collection<Tag> tags) {
+        return vocabulary.updateAndGet(current -> {
+            if (current != null && tags.stream().allMatch(tag -> current.contains(tag.getName()))) {
+                return current;
+            }
+            return Vocabulary.of(current, tags);
+        });
+    }
+
+    /**
+     * Immutable snapshot of the tag dictionary
+     *
+     * @param tags all tags, ordered by name
+     * @param version digest of the content, the same on every node that knows the same tags
+     */
+    public record Vocabulary(List<Tag> tags, Set<String> names, String version) {
+
+        public boolean contains(String tagName) {
+            return names.contains(tagName);
+        }
+
+        private static Vocabulary of(Vocabulary base, Collection<Tag> additions) {
+            SortedMap<String, Tag> byName = new TreeMap<>();
+            if (base != null) {
+                base.tags().forEach(tag -> byName.put(tag.getName(), tag));
+            }
+            additions.forEach(tag -> byName.putIfAbsent(tag.getName(), tag));
+
+            StringBuilder content = new StringBuilder();
+            byName.values().forEach(tag -> content.append(tag.getId()).append(':').append(tag.getName()).append('\n'));
+            String version = DigestUtils.md5DigestAsHex(content.toString().getBytes(StandardCharsets.UTF_8));
+
+            return new Vocabulary(List.copyOf(byName.values()), Set.copyOf(byName.keySet()), version);
+        }
+    }
+}
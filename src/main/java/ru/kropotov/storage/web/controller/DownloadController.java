@@ -2,20 +2,36 @@ package ru.kropotov.storage.web.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RestController;
-import ru.kropotov.storage.domain.model.File;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.bind.annotation.*;
+import ru.kropotov.storage.config.properties.StorageProperties;
+import ru.kropotov.storage.domain.model.DownloadDescriptor;
+import ru.kropotov.storage.domain.model.Visibility;
 import ru.kropotov.storage.facade.FileFacade;
 import ru.kropotov.storage.infra.ObjectStoreClient;
+import ru.kropotov.storage.web.download.AsyncDownloadStreamer;
+import ru.kropotov.storage.web.download.ByteRange;
+import ru.kropotov.storage.web.download.SendfileWriter;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
 
 @Slf4j
 @RestController
@@ -23,33 +39,243 @@ import java.io.InputStream;
 @Tag(name = "Download", description = "File download operations")
 public class DownloadController {
 
+    private static final String CRLF = "\r\n";
 
     private final FileFacade fileFacade;
     private final ObjectStoreClient objectStoreClient;
-    
+    private final ObjectProvider<AsyncDownloadStreamer> asyncDownloadStreamer;
+    private final SendfileWriter sendfileWriter;
+    private final StorageProperties storageProperties;
+
     @GetMapping("/d/{id}/{secret}")
-    @Operation(summary = "Download file", description = "Download file by ID and secret")
-    public ResponseEntity<InputStreamResource> downloadFile(
+    @Operation(summary = "Download file",
+            description = "Download file by ID and secret. Honours Range and If-Range with single and multiple byte ranges, "
+                    + "sends locally cached content with sendfile, and answers If-None-Match and If-Modified-Since with 304 without reading the content")
+    public void downloadFile(
+            @PathVariable String id,
+            @PathVariable String secret,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.IF_MODIFIED_SINCE, required = false) String ifModifiedSince,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+
+        DownloadDescriptor file = fileFacade.getFileForDownload(id, secret);
+
+        writeMetadataHeaders(file, response);
+        if (notModified(ifNoneMatch, ifModifiedSince, file)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        List<ByteRange> ranges = ifRangeMatches(ifRange, file)
+                ? ByteRange.parse(range, file.sizeBytes())
+                : List.of();
+
+        MediaType mediaType = mediaType(file);
+
+        AsyncDownloadStreamer asyncStreamer = asyncDownloadStreamer.getIfAvailable();
+
+        if (ranges.isEmpty()) {
+            log.info("Downloading file: {} ({})", file.fileName(), file.id());
+            response.setContentType(mediaType.toString());
+            response.setContentLengthLong(file.sizeBytes());
+            Path localFile = localFile(request, file);
+            if (localFile != null) {
+                sendfileWriter.send(request, localFile, 0, file.sizeBytes());
+                return;
+            }
+            if (asyncStreamer != null) {
+                asyncStreamer.stream(request, response, file.objectStoreKey(), 0, -1);
+                return;
+            }
+            try (InputStream inputStream = objectStoreClient.download(file.objectStoreKey())) {
+                inputStream.transferTo(response.getOutputStream());
+            }
+        } else if (ranges.size() == 1) {
+            ByteRange byteRange = ranges.get(0);
+            log.info("Downloading range {} of file: {} ({})", byteRange, file.fileName(), file.id());
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setContentType(mediaType.toString());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, byteRange.contentRange(file.sizeBytes()));
+            response.setContentLengthLong(byteRange.length());
+            Path localFile = localFile(request, file);
+            if (localFile != null) {
+                sendfileWriter.send(request, localFile, byteRange.start(), byteRange.length());
+                return;
+            }
+            if (asyncStreamer != null) {
+                asyncStreamer.stream(request, response, file.objectStoreKey(), byteRange.start(), byteRange.length());
+                return;
+            }
+            copyRange(file, byteRange, response.getOutputStream());
+        } else {
+            // multipart/byteranges responses are rare and always take the blocking path
+            log.info("Downloading {} ranges of file: {} ({})", ranges.size(), file.fileName(), file.id());
+            writeByteRanges(file, mediaType, ranges, response);
+        }
+    }
+
+    @RequestMapping(path = "/d/{id}/{secret}", method = RequestMethod.HEAD)
+    @Operation(summary = "Download file headers",
+            description = "Headers of a download, served from the file metadata without reading the content")
+    public void headFile(
             @PathVariable String id,
-            @PathVariable String secret) {
+            @PathVariable String secret,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.IF_MODIFIED_SINCE, required = false) String ifModifiedSince,
+            HttpServletResponse response) {
+
+        DownloadDescriptor file = fileFacade.getFileForDownload(id, secret);
+
+        writeMetadataHeaders(file, response);
+        if (notModified(ifNoneMatch, ifModifiedSince, file)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+        response.setContentType(mediaType(file).toString());
+        response.setContentLengthLong(file.sizeBytes());
+    }
 
-        File file = fileFacade.getFileForDownload(id, secret);
+    /**
+     * Headers that depend on the metadata only, sent with full, partial and 304 responses alike.
+     * The content of a file never changes, so caches may keep it for {@code storage.download.cacheMaxAge};
+     * shared caches only for public files, since the URL of a private one carries its secret.
+     */
+    private void writeMetadataHeaders(DownloadDescriptor file, HttpServletResponse response) {
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"" + file.fileName() + "\"");
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified(file).toEpochMilli());
+        if (file.etag() != null) {
+            response.setHeader(HttpHeaders.ETAG, file.etag());
+        }
+        response.setHeader(HttpHeaders.CACHE_CONTROL,
+                (file.visibility() == Visibility.PUBLIC ? "public" : "private")
+                        + ", max-age=" + storageProperties.getDownload().getCacheMaxAge().toSeconds()
+                        + ", immutable");
+    }
 
-        InputStream inputStream = objectStoreClient.download(file.getObjectStoreKey());
+    /**
+     * {@code If-None-Match} takes precedence; {@code If-Modified-Since} is only evaluated without it (RFC 9110, 13.2.2)
+     */
+    private static boolean notModified(String ifNoneMatch, String ifModifiedSince, DownloadDescriptor file) {
+        if (ifNoneMatch != null && !ifNoneMatch.isBlank()) {
+            return etagMatches(ifNoneMatch, file.etag());
+        }
+        Instant since = parseHttpDate(ifModifiedSince);
+        return since != null && !lastModified(file).isAfter(since);
+    }
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.add(HttpHeaders.CONTENT_DISPOSITION,
-                   "attachment; filename=\"" + file.getFileName() + "\"");
-        headers.add(HttpHeaders.CONTENT_LENGTH, String.valueOf(file.getSizeBytes()));
+    /**
+     * Weak comparison, as {@code If-None-Match} requires
+     */
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch.trim().equals("*")) {
+            return true;
+        }
+        if (etag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes a {@code multipart/byteranges} body, one ranged object store read per part
+     */
+    private void writeByteRanges(DownloadDescriptor file, MediaType mediaType, List<ByteRange> ranges,
+                                 HttpServletResponse response) throws IOException {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+
+        byte[][] partHeaders = new byte[ranges.size()][];
+        long contentLength = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            ByteRange byteRange = ranges.get(i);
+            partHeaders[i] = (CRLF + "--" + boundary + CRLF
+                    + HttpHeaders.CONTENT_TYPE + ": " + mediaType + CRLF
+                    + HttpHeaders.CONTENT_RANGE + ": " + byteRange.contentRange(file.sizeBytes()) + CRLF
+                    + CRLF).getBytes(StandardCharsets.US_ASCII);
+            contentLength += partHeaders[i].length + byteRange.length();
+        }
+        byte[] closingBoundary = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+        contentLength += closingBoundary.length;
+
+        response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+
+        ServletOutputStream out = response.getOutputStream();
+        for (int i = 0; i < ranges.size(); i++) {
+            out.write(partHeaders[i]);
+            copyRange(file, ranges.get(i), out);
+        }
+        out.write(closingBoundary);
+    }
+
+    /**
+     * @return the local file to send the content from with sendfile, or {@code null} to stream it
+     */
+    private Path localFile(HttpServletRequest request, DownloadDescriptor file) {
+        if (!sendfileWriter.canSend(request)) {
+            return null;
+        }
+        return objectStoreClient.localFile(file.objectStoreKey()).orElse(null);
+    }
+
+    private void copyRange(DownloadDescriptor file, ByteRange byteRange, ServletOutputStream out) throws IOException {
+        try (InputStream inputStream = objectStoreClient.download(
+                file.objectStoreKey(), byteRange.start(), byteRange.length())) {
+            inputStream.transferTo(out);
+        }
+    }
+
+    /**
+     * A range request is only honoured if the {@code If-Range} validator, when present,
+     * still matches the stored content; otherwise the full content is sent
+     */
+    private boolean ifRangeMatches(String ifRange, DownloadDescriptor file) {
+        if (ifRange == null || ifRange.isBlank()) {
+            return true;
+        }
+        String validator = ifRange.trim();
+        if (validator.startsWith("W/")) {
+            return false;
+        }
+        if (validator.startsWith("\"")) {
+            // strong comparison: only the exact content may be resumed
+            return validator.equals(file.etag());
+        }
+        Instant since = parseHttpDate(validator);
+        return since != null && since.equals(lastModified(file));
+    }
+
+    private static Instant parseHttpDate(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static MediaType mediaType(DownloadDescriptor file) {
+        return MediaType.parseMediaType(
+                file.contentType() != null ? file.contentType() : MediaType.APPLICATION_OCTET_STREAM_VALUE);
+    }
 
-        MediaType mediaType = MediaType.parseMediaType(
-                file.getContentType() != null ? file.getContentType() : MediaType.APPLICATION_OCTET_STREAM_VALUE);
-        
-        log.info("Downloading file: {} ({})", file.getFileName(), file.getId());
-        
-        return ResponseEntity.ok()
-                .headers(headers)
-                .contentType(mediaType)
-                .body(new InputStreamResource(inputStream));
+    private static Instant lastModified(DownloadDescriptor file) {
+        return file.uploadTs().truncatedTo(ChronoUnit.SECONDS);
     }
-}
\ No newline at end of file
+}
@@ -5,13 +5,21 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Encoding;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.PositiveOrZero;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -19,19 +27,39 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import ru.kropotov.storage.domain.model.DeleteJob;
 import ru.kropotov.storage.domain.model.File;
 import ru.kropotov.storage.domain.model.FileState;
+import ru.kropotov.storage.facade.BatchUploadItem;
 import ru.kropotov.storage.facade.FileFacade;
+import ru.kropotov.storage.service.KeysetPage;
+import ru.kropotov.storage.service.KeysetPosition;
+import ru.kropotov.storage.web.dto.ArchiveRequest;
+import ru.kropotov.storage.web.dto.BatchUploadItemDto;
+import ru.kropotov.storage.web.dto.BulkDeleteRequest;
+import ru.kropotov.storage.web.dto.CursorPage;
+import ru.kropotov.storage.web.dto.DeleteJobDto;
 import ru.kropotov.storage.web.dto.FileDto;
 import ru.kropotov.storage.web.dto.RenameRequest;
 import ru.kropotov.storage.web.dto.UploadMetaDto;
+import ru.kropotov.storage.web.dto.request.BatchUploadRequest;
 import ru.kropotov.storage.web.dto.request.UploadRequest;
+import ru.kropotov.storage.web.download.ZipArchiveWriter;
+import ru.kropotov.storage.web.fields.FileFields;
+import ru.kropotov.storage.web.fields.SparseFieldset;
 import ru.kropotov.storage.web.mapper.FileMapper;
+import ru.kropotov.storage.web.pagination.CursorCodec;
+import ru.kropotov.storage.web.upload.StreamingUploadReader;
 import ru.kropotov.storage.web.validation.NonEmptyFile;
 
 import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/api/files")
@@ -41,11 +69,25 @@ import java.util.Set;
 @Tag(name = "Files", description = "File management operations")
 public class FileController {
 
+    /**
+     * Declared SHA-256 and size of the file part of a streaming upload
+     */
+    public static final String CONTENT_SHA256_HEADER = "X-Content-SHA256";
+    public static final String CONTENT_LENGTH_HEADER = "X-Content-Length";
+
+    private static final int MAX_CURSOR_PAGE_SIZE = 1000;
+
+    private static final String FIELDS_DESCRIPTION = "Optional comma-separated fields (e.g. id,fileName,sizeBytes) "
+            + "limit both the response and what is read from the database";
+
     private static final Set<String> ALLOWED_SORT_FIELDS = Set.of(
             "fileName", "uploadTs", "contentType", "sizeBytes", "tags");
 
     private final FileFacade fileFacade;
     private final FileMapper fileMapper;
+    private final StreamingUploadReader streamingUploadReader;
+    private final CursorCodec cursorCodec;
+    private final ZipArchiveWriter zipArchiveWriter;
 
     @PostMapping(
             consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
@@ -65,6 +107,11 @@ public class FileController {
             @NonEmptyFile @RequestPart("file") MultipartFile file,
             @Valid @RequestPart("meta") UploadMetaDto meta) throws IOException {
 
+        Optional<File> existingFile = fileFacade.findByContent(userId, meta.getSha256(), file.getSize());
+        if (existingFile.isPresent()) {
+            return existingFile(existingFile.get());
+        }
+
         File savedFile = fileFacade.upload(userId, file, meta);
 
         if (savedFile.getState() != FileState.READY) {
@@ -75,38 +122,212 @@ public class FileController {
         return ResponseEntity.status(HttpStatus.CREATED).body(fileMapper.toDto(savedFile));
     }
 
+    @PostMapping(
+            path = "/stream",
+            consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(
+            summary = "Upload file (streaming)",
+            description = "Parses the multipart body on the fly and pipes the file part straight to the object store. "
+                    + "The 'meta' part must precede the 'file' part and may declare sizeBytes and sha256. "
+                    + "If the content is declared in the " + CONTENT_SHA256_HEADER + " header and the user already "
+                    + "has it, the existing file is returned with 200 before the body is read",
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    content = @Content(
+                            mediaType = MediaType.MULTIPART_FORM_DATA_VALUE,
+                            schema = @Schema(implementation = UploadRequest.class),
+                            encoding = {
+                                    @Encoding(name = "meta", contentType = "application/json")
+                            }))
+    )
+    public ResponseEntity<FileDto> uploadStreaming(
+            @AuthenticationPrincipal(expression = "name") String userId,
+            @RequestHeader(value = CONTENT_SHA256_HEADER, required = false)
+            @Pattern(regexp = UploadMetaDto.SHA256_PATTERN, message = "SHA-256 must be 64 hexadecimal characters")
+            String declaredSha256,
+            @RequestHeader(value = CONTENT_LENGTH_HEADER, required = false)
+            @PositiveOrZero(message = "Size must not be negative") Long declaredSize,
+            HttpServletRequest request) throws IOException {
+
+        // decided on headers alone: a client that sent Expect: 100-continue never transmits the body
+        Optional<File> existingFile = fileFacade.findByContent(userId, declaredSha256, declaredSize);
+        if (existingFile.isPresent()) {
+            return existingFile(existingFile.get());
+        }
+
+        StoredFile stored = streamingUploadReader.read(request, (meta, originalFileName, contentType, content) -> {
+            if (meta.getSha256() == null) {
+                meta.setSha256(declaredSha256);
+            }
+            if (meta.getSizeBytes() == null) {
+                meta.setSizeBytes(declaredSize);
+            }
+
+            // the file part has not been read yet; it is skipped, not stored, on a match
+            if (meta.getSha256() != null && !meta.getSha256().equalsIgnoreCase(declaredSha256)) {
+                Optional<File> duplicate = fileFacade.findByContent(userId, meta.getSha256(), meta.getSizeBytes());
+                if (duplicate.isPresent()) {
+                    return new StoredFile(duplicate.get(), false);
+                }
+            }
+
+            File uploaded = fileFacade.upload(userId, content, meta.getSizeBytes() != null ? meta.getSizeBytes() : -1,
+                    originalFileName, contentType, meta);
+            return new StoredFile(uploaded, true);
+        });
+
+        if (!stored.created()) {
+            return existingFile(stored.file());
+        }
+
+        File savedFile = stored.file();
+        if (savedFile.getState() != FileState.READY) {
+            throw new IllegalStateException("File upload not completed");
+        }
+
+        log.debug("File uploaded successfully (streaming): {}", savedFile.getId());
+        return ResponseEntity.status(HttpStatus.CREATED).body(fileMapper.toDto(savedFile));
+    }
+
+    @PostMapping(
+            path = "/batch",
+            consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(
+            summary = "Upload files (batch)",
+            description = "Uploads many files in one streamed multipart request. The 'meta' part is a JSON array "
+                    + "with one entry per file and must precede the 'file' parts, which follow in the same order. "
+                    + "Every entry must have a fileName. Files whose declared sha256 the user already has are "
+                    + "answered as EXISTING and their parts skipped. Returns one result per entry; a failed file "
+                    + "does not fail the others",
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    content = @Content(
+                            mediaType = MediaType.MULTIPART_FORM_DATA_VALUE,
+                            schema = @Schema(implementation = BatchUploadRequest.class),
+                            encoding = {
+                                    @Encoding(name = "meta", contentType = "application/json")
+                            }))
+    )
+    public ResponseEntity<List<BatchUploadItemDto>> uploadBatch(
+            @AuthenticationPrincipal(expression = "name") String userId,
+            HttpServletRequest request) throws IOException {
+
+        List<BatchUploadItem> items = streamingUploadReader.readBatch(request, (metas, fileParts) ->
+                fileFacade.uploadBatch(userId, metas, fileParts));
+
+        List<BatchUploadItemDto> results = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            BatchUploadItem item = items.get(i);
+            results.add(new BatchUploadItemDto(i, item.fileName(), item.outcome(),
+                    item.file() != null ? fileMapper.toDto(item.file()) : null, item.error()));
+        }
+
+        log.debug("Batch of {} files processed", items.size());
+        return ResponseEntity.ok(results);
+    }
+
     @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
-    @Operation(summary = "List current user's files")
+    @SparseFieldset
+    @Operation(summary = "List current user's files", description = FIELDS_DESCRIPTION)
     public ResponseEntity<Page<FileDto>> getUserFiles(
             @AuthenticationPrincipal(expression = "name") String userId,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size,
             @RequestParam(required = false) String sort,
-            @RequestParam(required = false) String tag) {
+            @RequestParam(required = false) String tag,
+            @RequestParam(name = FileFields.PARAM, required = false) String fields) {
 
         Pageable pageable = createPageable(page, size, sort);
 
-        Page<File> files = fileFacade.listOwn(userId, Optional.ofNullable(tag), pageable);
+        Page<File> files = fileFacade.listOwn(userId, Optional.ofNullable(tag), pageable, documentFields(fields));
         Page<FileDto> fileDtos = files.map(fileMapper::toDto);
 
         return ResponseEntity.ok(fileDtos);
     }
 
+    @GetMapping(params = "cursor", produces = MediaType.APPLICATION_JSON_VALUE)
+    @SparseFieldset
+    @Operation(summary = "List current user's files (cursor)",
+            description = "Keyset pagination without counting: pass an empty cursor for the first page, "
+                    + "then nextCursor of the previous page. Newest first unless sort is given. " + FIELDS_DESCRIPTION)
+    public ResponseEntity<CursorPage<FileDto>> getUserFilesByCursor(
+            @AuthenticationPrincipal(expression = "name") String userId,
+            @RequestParam String cursor,
+            @RequestParam(defaultValue = "20") @Min(1) @Max(MAX_CURSOR_PAGE_SIZE) int size,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String tag,
+            @RequestParam(name = FileFields.PARAM, required = false) String fields) {
+
+        KeysetPosition after = cursorCodec.decode(cursor);
+        Sort.Order order = cursorOrder(sort, after);
+
+        KeysetPage<File> files = fileFacade.listOwn(userId, Optional.ofNullable(tag),
+                order.getProperty(), order.getDirection(), after, size, documentFields(fields));
+
+        return ResponseEntity.ok(toCursorPage(files));
+    }
+
+    @GetMapping(path = "/public", params = "cursor", produces = MediaType.APPLICATION_JSON_VALUE)
+    @SparseFieldset
+    @Operation(summary = "Get public files (cursor)",
+            description = "Keyset pagination of public files, see the cursor variant of the own files listing")
+    public ResponseEntity<CursorPage<FileDto>> getPublicFilesByCursor(
+            @RequestParam String cursor,
+            @RequestParam(defaultValue = "20") @Min(1) @Max(MAX_CURSOR_PAGE_SIZE) int size,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String tag,
+            @RequestParam(name = FileFields.PARAM, required = false) String fields) {
+
+        KeysetPosition after = cursorCodec.decode(cursor);
+        Sort.Order order = cursorOrder(sort, after);
+
+        KeysetPage<File> files = fileFacade.listPublic(Optional.ofNullable(tag),
+                order.getProperty(), order.getDirection(), after, size, documentFields(fields));
+
+        return ResponseEntity.ok(toCursorPage(files));
+    }
+
     @GetMapping("/public")
-    @Operation(summary = "Get public files", description = "Get paginated list of public files")
+    @SparseFieldset
+    @Operation(summary = "Get public files", description = "Get paginated list of public files. " + FIELDS_DESCRIPTION)
     public ResponseEntity<Page<FileDto>> getPublicFiles(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size,
             @RequestParam(required = false) String sort,
-            @RequestParam(required = false) String tag) {
+            @RequestParam(required = false) String tag,
+            @RequestParam(name = FileFields.PARAM, required = false) String fields) {
 
         Pageable pageable = createPageable(page, size, sort);
-        Page<File> files = fileFacade.listPublic(Optional.ofNullable(tag), pageable);
+        Page<File> files = fileFacade.listPublic(Optional.ofNullable(tag), pageable, documentFields(fields));
         Page<FileDto> fileDtos = files.map(fileMapper::toDto);
 
         return ResponseEntity.ok(fileDtos);
     }
 
+    @PostMapping(path = "/archive")
+    @Operation(summary = "Download files as a ZIP archive",
+            description = "Streams a ZIP of the given own or public files, or of all own files with a tag. "
+                    + "The archive is built on the fly; already compressed content is not compressed again")
+    public void downloadArchive(
+            @AuthenticationPrincipal(expression = "name") String userId,
+            @Valid @RequestBody ArchiveRequest request,
+            HttpServletResponse response) throws IOException {
+
+        // the files are looked up before the response is committed, so an unknown tag is still a 404
+        try (Stream<File> files = fileFacade.filesForArchive(userId, request.getIds(), request.getTag())) {
+            String archiveName = (request.getTag() != null && !request.getTag().isBlank()
+                    ? request.getTag().trim() : "files") + ".zip";
+            response.setContentType("application/zip");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                    .filename(archiveName, StandardCharsets.UTF_8)
+                    .build()
+                    .toString());
+
+            int written = zipArchiveWriter.write(files, response.getOutputStream());
+            log.debug("Archive of {} files streamed to user {}", written, userId);
+        }
+    }
+
     @PutMapping("/{id}")
     @Operation(summary = "Rename file", description = "Rename a file")
     public ResponseEntity<FileDto> renameFile(
@@ -133,6 +354,67 @@ public class FileController {
         return ResponseEntity.noContent().build();
     }
 
+    @PostMapping(path = "/bulk-delete", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Delete files (bulk)",
+            description = "Deletes the user's READY files given by IDs or by tag in the background. "
+                    + "Files are hidden from listings right away; IDs of other users' files are skipped. "
+                    + "Returns 202 with the job, whose progress is at the Location URL")
+    public ResponseEntity<DeleteJobDto> bulkDelete(
+            @AuthenticationPrincipal(expression = "name") String userId,
+            @Valid @RequestBody BulkDeleteRequest request) {
+
+        DeleteJob job = fileFacade.deleteAll(userId, request.getIds(), request.getTag());
+
+        log.info("Bulk delete started: {} ({} files)", job.getId(), job.getMatched());
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/files/bulk-delete/" + job.getId()))
+                .body(fileMapper.toDto(job));
+    }
+
+    @GetMapping(path = "/bulk-delete/{jobId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Get bulk delete progress")
+    public ResponseEntity<DeleteJobDto> getBulkDelete(
+            @AuthenticationPrincipal(expression = "name") String userId,
+            @PathVariable String jobId) {
+
+        return ResponseEntity.ok(fileMapper.toDto(fileFacade.getDeleteJob(jobId, userId)));
+    }
+
+    private ResponseEntity<FileDto> existingFile(File file) {
+        log.debug("Upload matches existing file by content: {}", file.getId());
+        return ResponseEntity.ok(fileMapper.toDto(file));
+    }
+
+    private record StoredFile(File file, boolean created) {
+    }
+
+    /**
+     * A cursor continues the sort it was created with; an explicit sort must agree with it
+     */
+    private Sort.Order cursorOrder(String sort, KeysetPosition after) {
+        if (after != null && !ALLOWED_SORT_FIELDS.contains(after.sortField())) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (sort == null || sort.trim().isEmpty()) {
+            return after != null
+                    ? new Sort.Order(after.direction(), after.sortField())
+                    : Sort.Order.desc("uploadTs");
+        }
+        return createPageable(0, 1, sort).getSort().iterator().next();
+    }
+
+    private CursorPage<FileDto> toCursorPage(KeysetPage<File> files) {
+        List<FileDto> content = files.items().stream()
+                .map(fileMapper::toDto)
+                .toList();
+        String nextCursor = files.next() != null ? cursorCodec.encode(files.next()) : null;
+        return new CursorPage<>(content, nextCursor);
+    }
+
+    private static Set<String> documentFields(String fields) {
+        return FileFields.documentFields(FileFields.parse(fields));
+    }
+
     private Pageable createPageable(int page, int size, String sort) {
         if (sort == null || sort.trim().isEmpty()) {
             return PageRequest.of(page, size);
@@ -2,6 +2,7 @@ package ru.kropotov.storage.web.controller;
 
 import jakarta.validation.ConstraintViolationException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -10,6 +11,7 @@ import org.springframework.web.bind.annotation.RestControllerAdvice;
 import ru.kropotov.storage.expection.AccessDeniedException;
 import ru.kropotov.storage.expection.FileAlreadyExistsException;
 import ru.kropotov.storage.expection.FileNotFoundException;
+import ru.kropotov.storage.expection.RangeNotSatisfiableException;
 
 import java.time.Instant;
 import java.util.HashMap;
@@ -37,6 +39,13 @@ public class GlobalExceptionHandler {
         return createErrorResponse(HttpStatus.NOT_FOUND, e.getMessage(), "FILE_NOT_FOUND");
     }
     
+    @ExceptionHandler(RangeNotSatisfiableException.class)
+    public ResponseEntity<Void> handleRangeNotSatisfiable(RangeNotSatisfiableException e) {
+        return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes */" + e.getResourceLength())
+                .build();
+    }
+    
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<Map<String, Object>> handleValidationErrors(MethodArgumentNotValidException e) {
         StringBuilder message = new StringBuilder("Validation failed: ");
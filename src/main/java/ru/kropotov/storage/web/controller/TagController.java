@@ -3,10 +3,12 @@ package ru.kropotov.storage.web.controller;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import ru.kropotov.storage.service.TagService;
 import ru.kropotov.storage.web.dto.TagDto;
 import ru.kropotov.storage.web.mapper.TagMapper;
@@ -23,12 +25,22 @@ public class TagController {
     private final TagMapper tagMapper;
 
     @GetMapping
-    @Operation(summary = "Get all tags", description = "Retrieve complete tag vocabulary")
-    public ResponseEntity<List<TagDto>> getAllTags() {
-        List<ru.kropotov.storage.domain.model.Tag> tags = tagService.getAllTags();
-        List<TagDto> tagDtos = tags.stream()
+    @Operation(summary = "Get all tags",
+            description = "Retrieve complete tag vocabulary. Supports If-None-Match with the returned ETag")
+    public ResponseEntity<List<TagDto>> getAllTags(WebRequest request) {
+        TagService.Vocabulary vocabulary = tagService.getVocabulary();
+        String eTag = "\"" + vocabulary.version() + "\"";
+
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+
+        List<TagDto> tagDtos = vocabulary.tags().stream()
                 .map(tagMapper::toDto)
                 .toList();
-        return ResponseEntity.ok(tagDtos);
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache())
+                .body(tagDtos);
     }
 }
\ No newline at end of file
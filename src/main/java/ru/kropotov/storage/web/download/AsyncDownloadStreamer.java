@@ -0,0 +1,245 @@
+package ru.kropotov.storage.web.download;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import ru.kropotov.storage.config.properties.StorageProperties;
+import ru.kropotov.storage.infra.MinioAsyncObjectReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Streams an object to the client without holding a request thread for the transfer.
+ * <p>
+ * The request is switched to servlet async mode and the object is read through the
+ * non-blocking S3 client. One buffer is requested from the object store at a time, and
+ * the next one only once the servlet output stream reports {@code isReady()}; when it does not,
+ * the container calls {@link WriteListener#onWritePossible()} as soon as the socket drains.
+ * A slow client therefore pauses the object store read instead of a thread or the heap.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnExpression("${storage.download.async:false} and '${storage.backend:s3}'.equalsIgnoreCase('s3')")
+public class AsyncDownloadStreamer {
+
+    private final MinioAsyncObjectReader objectReader;
+    private final StorageProperties storageProperties;
+
+    /**
+     * Response status and headers must be set before calling this method
+     *
+     * @param length the number of bytes to stream, or {@code -1} for the whole object
+     */
+    public void stream(HttpServletRequest request, HttpServletResponse response,
+                       String key, long offset, long length) throws IOException {
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(storageProperties.getDownload().getAsyncTimeout().toMillis());
+
+        ServletOutputStream out = response.getOutputStream();
+        ResponseBridge bridge = new ResponseBridge(asyncContext, response, out, key);
+        asyncContext.addListener(bridge);
+        out.setWriteListener(bridge);
+
+        objectReader.read(key, offset, length).whenComplete((publisher, error) -> {
+            if (error != null) {
+                bridge.fail(error);
+            } else {
+                publisher.subscribe(bridge);
+            }
+        });
+    }
+
+    /**
+     * Couples object store demand to servlet write readiness. Callbacks arrive on SDK and
+     * container threads, so all state is guarded by one lock; demand is signalled outside it.
+     */
+    private static final class ResponseBridge implements Subscriber<ByteBuffer>, WriteListener, AsyncListener {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final AsyncContext asyncContext;
+        private final HttpServletResponse response;
+        private final ServletOutputStream out;
+        private final String key;
+
+        private Subscription subscription;
+        private ByteBuffer pending;
+        private boolean demanded;
+        private boolean upstreamDone;
+        private boolean finished;
+
+        private ResponseBridge(AsyncContext asyncContext, HttpServletResponse response,
+                               ServletOutputStream out, String key) {
+            this.asyncContext = asyncContext;
+            this.response = response;
+            this.out = out;
+            this.key = key;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            lock.lock();
+            try {
+                this.subscription = subscription;
+                if (finished) {
+                    subscription.cancel();
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            drain();
+        }
+
+        @Override
+        public void onNext(ByteBuffer buffer) {
+            lock.lock();
+            try {
+                pending = buffer;
+                demanded = false;
+            } finally {
+                lock.unlock();
+            }
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            lock.lock();
+            try {
+                upstreamDone = true;
+            } finally {
+                lock.unlock();
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            fail(t);
+        }
+
+        @Override
+        public void onWritePossible() {
+            drain();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            fail(event.getThrowable());
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            fail(new IOException("Async download timed out"));
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            cancelUpstream();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // not restarted
+        }
+
+        private void drain() {
+            Subscription toRequest = null;
+            lock.lock();
+            try {
+                if (finished) {
+                    return;
+                }
+                if (pending != null) {
+                    if (!out.isReady()) {
+                        return;
+                    }
+                    write(pending);
+                    pending = null;
+                }
+                if (upstreamDone) {
+                    if (out.isReady()) {
+                        finished = true;
+                        asyncContext.complete();
+                    }
+                    return;
+                }
+                if (subscription != null && !demanded && out.isReady()) {
+                    demanded = true;
+                    toRequest = subscription;
+                }
+            } catch (IOException e) {
+                failLocked(e);
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            if (toRequest != null) {
+                toRequest.request(1);
+            }
+        }
+
+        private void write(ByteBuffer buffer) throws IOException {
+            if (buffer.hasArray()) {
+                out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            } else {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                out.write(bytes);
+            }
+        }
+
+        void fail(Throwable error) {
+            lock.lock();
+            try {
+                failLocked(error);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void failLocked(Throwable error) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            log.warn("Async download of object {} failed: {}", key, error != null ? error.toString() : "unknown error");
+
+            if (subscription != null) {
+                subscription.cancel();
+            }
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            }
+            asyncContext.complete();
+        }
+
+        private void cancelUpstream() {
+            lock.lock();
+            try {
+                if (!upstreamDone && subscription != null) {
+                    subscription.cancel();
+                }
+                finished = true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
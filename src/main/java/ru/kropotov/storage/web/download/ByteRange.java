@@ -0,0 +1,108 @@
+package ru.kropotov.storage.web.download;
+
+import ru.kropotov.storage.expection.RangeNotSatisfiableException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Resolved, inclusive byte range of a resource of known length (RFC 9110, section 14)
+ */
+public record ByteRange(long start, long end) {
+
+    /**
+     * Upper bound for ranges in one request; longer lists are ignored and the full content is served
+     */
+    static final int MAX_RANGES = 32;
+
+    private static final String BYTES_UNIT = "bytes=";
+
+    public long length() {
+        return end - start + 1;
+    }
+
+    public String contentRange(long resourceLength) {
+        return "bytes " + start + "-" + end + "/" + resourceLength;
+    }
+
+    /**
+     * Resolves a {@code Range} header against the resource length.
+     * Overlapping and adjacent ranges are coalesced.
+     *
+     * @return resolved ranges in ascending order, or an empty list when the header is absent,
+     * malformed or uses another unit and the full content should be served
+     * @throws RangeNotSatisfiableException if the header is valid but none of its ranges overlaps the content
+     */
+    public static List<ByteRange> parse(String rangeHeader, long resourceLength) {
+        if (rangeHeader == null || !rangeHeader.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+            return List.of();
+        }
+
+        String[] specs = rangeHeader.substring(BYTES_UNIT.length()).split(",");
+        if (specs.length > MAX_RANGES) {
+            return List.of();
+        }
+
+        List<ByteRange> ranges = new ArrayList<>(specs.length);
+        for (String rawSpec : specs) {
+            String spec = rawSpec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return List.of();
+            }
+
+            try {
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+
+                if (first.isEmpty()) {
+                    long suffixLength = Long.parseLong(last);
+                    if (suffixLength < 0) {
+                        return List.of();
+                    }
+                    if (suffixLength > 0 && resourceLength > 0) {
+                        ranges.add(new ByteRange(Math.max(0, resourceLength - suffixLength), resourceLength - 1));
+                    }
+                } else {
+                    long firstPos = Long.parseLong(first);
+                    long lastPos = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                    if (firstPos < 0 || lastPos < firstPos) {
+                        return List.of();
+                    }
+                    if (firstPos < resourceLength) {
+                        ranges.add(new ByteRange(firstPos, Math.min(lastPos, resourceLength - 1)));
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return List.of();
+            }
+        }
+
+        if (ranges.isEmpty()) {
+            throw new RangeNotSatisfiableException("None of the requested ranges is satisfiable", resourceLength);
+        }
+        return coalesce(ranges);
+    }
+
+    private static List<ByteRange> coalesce(List<ByteRange> ranges) {
+        if (ranges.size() == 1) {
+            return ranges;
+        }
+
+        ranges.sort(Comparator.comparingLong(ByteRange::start));
+        List<ByteRange> merged = new ArrayList<>(ranges.size());
+        ByteRange current = ranges.get(0);
+        for (int i = 1; i < ranges.size(); i++) {
+            ByteRange next = ranges.get(i);
+            if (next.start() <= current.end() + 1) {
+                current = new ByteRange(current.start(), Math.max(current.end(), next.end()));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+}
@@ -0,0 +1,54 @@
+package ru.kropotov.storage.web.download;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.stereotype.Component;
+import ru.kropotov.storage.config.properties.StorageProperties;
+
+import java.nio.file.Path;
+
+/**
+ * Hands a local file to Tomcat's sendfile, which moves the bytes from the page cache to the socket
+ * with {@code FileChannel.transferTo} on its poller thread. Neither a request thread nor a heap
+ * buffer is held for the transfer.
+ * <p>
+ * The kernel copy only works on plain connections: with TLS the bytes must be encrypted, and
+ * with response compression they must be deflated, both in user space. Such requests, and
+ * connectors without sendfile, keep the buffered path.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SendfileWriter {
+
+    static final String SUPPORTED = "org.apache.tomcat.sendfile.support";
+    static final String FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String START = "org.apache.tomcat.sendfile.start";
+    static final String END = "org.apache.tomcat.sendfile.end";
+
+    private final StorageProperties storageProperties;
+    private final ServerProperties serverProperties;
+
+    public boolean canSend(HttpServletRequest request) {
+        return storageProperties.getDownload().isSendfile()
+                && Boolean.TRUE.equals(request.getAttribute(SUPPORTED))
+                && !request.isSecure()
+                && !serverProperties.getCompression().getEnabled();
+    }
+
+    /**
+     * Response status and headers, including the content length, must be set before calling this
+     * method, and nothing may be written to the response body
+     *
+     * @param offset the first byte of the file to send
+     * @param length the number of bytes to send
+     */
+    public void send(HttpServletRequest request, Path file, long offset, long length) {
+        request.setAttribute(FILENAME, file.toAbsolutePath().toString());
+        request.setAttribute(START, offset);
+        request.setAttribute(END, offset + length);
+        log.debug("Sending {} bytes of {} with sendfile", length, file);
+    }
+}
@@ -0,0 +1,180 @@
+package ru.kropotov.storage.web.download;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.kropotov.storage.config.properties.StorageProperties;
+import ru.kropotov.storage.domain.model.File;
+import ru.kropotov.storage.infra.ObjectStoreClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a ZIP archive of files straight from their object store streams.
+ * <p>
+ * The archive is never held in full: every entry is copied from its object stream to the output
+ * through the deflater's buffers. While one entry is written, the next
+ * {@code storage.download.archivePrefetch} objects are already being opened on virtual threads,
+ * so the first-byte latency of each object overlaps the transfer of the previous ones.
+ * <p>
+ * Content that is already compressed is written at {@link Deflater#NO_COMPRESSION}. A true
+ * {@code STORED} entry would need its CRC-32 in the local header, before the data, and the object
+ * store does not keep one, so the object would have to be read twice or buffered.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ZipArchiveWriter {
+
+    private static final Set<String> COMPRESSED_TYPES = Set.of(
+            "image/jpeg", "image/png", "image/gif", "image/webp", "image/avif", "image/heic",
+            "audio/mpeg", "audio/aac", "audio/ogg", "audio/opus", "audio/flac", "audio/mp4", "audio/webm",
+            "application/zip", "application/gzip", "application/x-gzip", "application/x-bzip2",
+            "application/x-xz", "application/zstd", "application/x-7z-compressed", "application/vnd.rar",
+            "application/x-rar-compressed", "application/java-archive", "application/epub+zip");
+
+    private static final List<String> COMPRESSED_TYPE_PREFIXES = List.of(
+            "video/",
+            "application/vnd.openxmlformats-officedocument.",
+            "application/vnd.oasis.opendocument.");
+
+    private final ObjectStoreClient objectStoreClient;
+    private final StorageProperties storageProperties;
+
+    /**
+     * @param files the files in archive order; entries get their file names, made unique
+     * @return the number of written entries
+     */
+    public int write(Stream<File> files, OutputStream out) throws IOException {
+        int prefetch = Math.max(0, storageProperties.getDownload().getArchivePrefetch());
+        Iterator<File> remaining = files.iterator();
+        Deque<PendingEntry> window = new ArrayDeque<>();
+        EntryNames entryNames = new EntryNames();
+        int written = 0;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            try {
+                ZipOutputStream zip = new ZipOutputStream(out);
+                while (true) {
+                    while (window.size() <= prefetch && remaining.hasNext()) {
+                        File file = remaining.next();
+                        window.add(new PendingEntry(file, CompletableFuture.supplyAsync(
+                                () -> objectStoreClient.download(file.getObjectStoreKey()), executor)));
+                    }
+                    PendingEntry next = window.poll();
+                    if (next == null) {
+                        break;
+                    }
+
+                    try (InputStream content = await(next)) {
+                        ZipEntry entry = new ZipEntry(entryNames.next(next.file()));
+                        if (next.file().getUploadTs() != null) {
+                            entry.setTime(next.file().getUploadTs().toEpochMilli());
+                        }
+                        zip.setLevel(isCompressed(next.file().getContentType())
+                                ? Deflater.NO_COMPRESSION
+                                : Deflater.DEFAULT_COMPRESSION);
+                        zip.putNextEntry(entry);
+                        content.transferTo(zip);
+                        zip.closeEntry();
+                    }
+                    written++;
+                }
+                zip.finish();
+            } finally {
+                // objects opened ahead of a failure are closed whenever they arrive
+                window.forEach(pending -> pending.content().whenComplete((content, error) -> closeQuietly(content)));
+            }
+        }
+
+        log.info("Streamed archive of {} files", written);
+        return written;
+    }
+
+    static boolean isCompressed(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int parameters = contentType.indexOf(';');
+        String mediaType = (parameters >= 0 ? contentType.substring(0, parameters) : contentType)
+                .trim()
+                .toLowerCase(Locale.ROOT);
+        return COMPRESSED_TYPES.contains(mediaType)
+                || COMPRESSED_TYPE_PREFIXES.stream().anyMatch(mediaType::startsWith);
+    }
+
+    private static InputStream await(PendingEntry pending) throws IOException {
+        try {
+            return pending.content().join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IOException("Failed to open object of file " + pending.file().getId(), cause);
+        }
+    }
+
+    private static void closeQuietly(InputStream content) {
+        if (content == null) {
+            return;
+        }
+        try {
+            content.close();
+        } catch (IOException e) {
+            log.debug("Failed to close prefetched object stream", e);
+        }
+    }
+
+    private record PendingEntry(File file, CompletableFuture<InputStream> content) {
+    }
+
+    /**
+     * Entry names without path separators, so that nothing is extracted outside the target
+     * directory, and unique, since several files of a tag may share a name
+     */
+    static final class EntryNames {
+
+        private final Set<String> used = new HashSet<>();
+        private final Map<String, Integer> nextCopy = new HashMap<>();
+
+        String next(File file) {
+            String name = file.getFileName() != null && !file.getFileName().isBlank()
+                    ? file.getFileName().replace('/', '_').replace('\\', '_')
+                    : "file-" + file.getId();
+            if (name.equals(".") || name.equals("..")) {
+                name = "file-" + file.getId();
+            }
+
+            // names are compared ignoring case, as most file systems the archive is extracted on do
+            String key = name.toLowerCase(Locale.ROOT);
+            int copy = nextCopy.getOrDefault(key, 0);
+            String candidate = copy == 0 ? name : withCopyNumber(name, copy);
+            while (!used.add(candidate.toLowerCase(Locale.ROOT))) {
+                copy++;
+                candidate = withCopyNumber(name, copy);
+            }
+            nextCopy.put(key, copy + 1);
+            return candidate;
+        }
+
+        private static String withCopyNumber(String name, int copy) {
+            int dot = name.lastIndexOf('.');
+            return dot > 0
+                    ? name.substring(0, dot) + " (" + copy + ")" + name.substring(dot)
+                    : name + " (" + copy + ")";
+        }
+    }
+}
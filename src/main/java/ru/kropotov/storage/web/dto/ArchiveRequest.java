@@ -0,0 +1,20 @@
+package ru.kropotov.storage.web.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotBlank;
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "Files to archive: either IDs of own or public files, or a tag of own files")
+public class ArchiveRequest {
+
+    private List<@NotBlank(message = "File ID must not be blank") String> ids;
+
+    private String tag;
+}
@@ -0,0 +1,16 @@
+package ru.kropotov.storage.web.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import ru.kropotov.storage.facade.BatchUploadItem;
+
+@Schema(description = "Result of one file of a batch upload")
+public record BatchUploadItemDto(
+        @Schema(description = "Position of the file in the meta array")
+        int index,
+        String fileName,
+        BatchUploadItem.Outcome outcome,
+        @Schema(description = "The stored or matching file, absent if the file failed")
+        FileDto file,
+        @Schema(description = "Why the file failed")
+        String error) {
+}
@@ -0,0 +1,20 @@
+package ru.kropotov.storage.web.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotBlank;
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "Files to delete: either IDs or a tag")
+public class BulkDeleteRequest {
+
+    private List<@NotBlank(message = "File ID must not be blank") String> ids;
+
+    private String tag;
+}
@@ -0,0 +1,12 @@
+package ru.kropotov.storage.web.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+@Schema(description = "Page of a cursor-paginated listing")
+public record CursorPage<T>(
+        List<T> content,
+        @Schema(description = "Cursor of the next page, absent on the last page")
+        String nextCursor) {
+}
@@ -0,0 +1,28 @@
+package ru.kropotov.storage.web.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.*;
+import ru.kropotov.storage.domain.model.DeleteJobState;
+
+import java.time.Instant;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class DeleteJobDto {
+    private String id;
+    private DeleteJobState state;
+    private Integer requested;
+    private String tag;
+    private long matched;
+    private long deleted;
+    private long failed;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSSX", timezone = "UTC")
+    private Instant createdTs;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSSX", timezone = "UTC")
+    private Instant updatedTs;
+}
@@ -1,8 +1,10 @@
 package ru.kropotov.storage.web.dto;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import lombok.*;
 import ru.kropotov.storage.domain.model.Visibility;
+import ru.kropotov.storage.web.fields.FileFields;
 
 import java.time.Instant;
 import java.util.List;
@@ -12,6 +14,7 @@ import java.util.List;
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
+@JsonFilter(FileFields.FILTER)
 public class FileDto {
     private String id;
     private String fileName;
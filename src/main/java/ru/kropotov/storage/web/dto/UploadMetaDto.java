@@ -1,6 +1,8 @@
 package ru.kropotov.storage.web.dto;
 
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.PositiveOrZero;
 import jakarta.validation.constraints.Size;
 import lombok.*;
 import ru.kropotov.storage.domain.model.Visibility;
@@ -15,6 +17,8 @@ import java.util.List;
 @NoArgsConstructor
 public class UploadMetaDto {
 
+    public static final String SHA256_PATTERN = "^[0-9a-fA-F]{64}$";
+
     @Size(max = 255, message = "File name must not exceed 255 characters")
     private String fileName;
     
@@ -24,4 +28,21 @@ public class UploadMetaDto {
     @ValidTags
     private List<String> tags;
 
-}
\ No newline at end of file
+    /**
+     * Declared content size for the streaming upload endpoint; without it the content is sent as a multipart upload
+     */
+    @PositiveOrZero(message = "Size must not be negative")
+    private Long sizeBytes;
+
+    /**
+     * Declared SHA-256 of the content; if the owner already has a file with this content, it is returned
+     * instead of storing the upload again. A declared hash that does not match the content fails the upload
+     */
+    @Pattern(regexp = SHA256_PATTERN, message = "SHA-256 must be 64 hexadecimal characters")
+    private String sha256;
+
+    public UploadMetaDto(String fileName, Visibility visibility, List<String> tags) {
+        this(fileName, visibility, tags, null, null);
+    }
+
+}
@@ -0,0 +1,16 @@
+package ru.kropotov.storage.web.dto.request;
+
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Schema;
+import org.springframework.web.multipart.MultipartFile;
+import ru.kropotov.storage.web.dto.UploadMetaDto;
+
+import java.util.List;
+
+@Schema(name = "BatchUploadRequest")
+public class BatchUploadRequest {
+    @ArraySchema(schema = @Schema(implementation = UploadMetaDto.class))
+    public List<UploadMetaDto> meta;
+    @ArraySchema(schema = @Schema(type = "string", format = "binary"))
+    public List<MultipartFile> file;
+}
@@ -0,0 +1,65 @@
+package ru.kropotov.storage.web.fields;
+
+import ru.kropotov.storage.web.dto.FileDto;
+
+import java.util.*;
+
+/**
+ * Sparse fieldsets of {@link FileDto}: the {@code fields} request parameter names the DTO
+ * properties to return, and the {@code File} properties they are mapped from are the only ones
+ * read from Mongo.
+ */
+public final class FileFields {
+
+    public static final String PARAM = "fields";
+    public static final String FILTER = "fileFields";
+
+    private static final Map<String, List<String>> SOURCES = Map.of(
+            "id", List.of(),
+            "fileName", List.of("fileName"),
+            "sizeBytes", List.of("sizeBytes"),
+            "contentType", List.of("contentType"),
+            "visibility", List.of("visibility"),
+            "tags", List.of("tags"),
+            "uploadTs", List.of("uploadTs"),
+            "downloadUrl", List.of("downloadSecret"));
+
+    private FileFields() {
+    }
+
+    /**
+     * @return the selected DTO properties in request order, or an empty set if all are requested
+     * @throws IllegalArgumentException on an unknown property
+     */
+    public static Set<String> parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return Set.of();
+        }
+
+        Set<String> selected = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!SOURCES.containsKey(name)) {
+                throw new IllegalArgumentException("Invalid field: " + name);
+            }
+            selected.add(name);
+        }
+        return Collections.unmodifiableSet(selected);
+    }
+
+    /**
+     * @return the document properties needed to map the selected DTO properties, or an empty set for all
+     */
+    public static Set<String> documentFields(Set<String> selected) {
+        Set<String> documentFields = new HashSet<>();
+        selected.forEach(field -> documentFields.addAll(SOURCES.get(field)));
+        if (documentFields.isEmpty() && !selected.isEmpty()) {
+            // only the id was requested; projecting on _id alone still skips the rest of the document
+            documentFields.add("id");
+        }
+        return Set.copyOf(documentFields);
+    }
+}
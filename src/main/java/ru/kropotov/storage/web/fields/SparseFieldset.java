@@ -0,0 +1,13 @@
+package ru.kropotov.storage.web.fields;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks a handler whose {@link ru.kropotov.storage.web.dto.FileDto} response honours the
+ * {@value FileFields#PARAM} request parameter
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SparseFieldset {
+}
@@ -2,7 +2,9 @@ package ru.kropotov.storage.web.mapper;
 
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
+import ru.kropotov.storage.domain.model.DeleteJob;
 import ru.kropotov.storage.domain.model.File;
+import ru.kropotov.storage.web.dto.DeleteJobDto;
 import ru.kropotov.storage.web.dto.FileDto;
 
 @Mapper
@@ -10,4 +12,6 @@ public interface FileMapper {
     
     @Mapping(target = "downloadUrl", expression = "java(\"/d/\" + file.getId() + \"/\" + file.getDownloadSecret())")
     FileDto toDto(File file);
+
+    DeleteJobDto toDto(DeleteJob job);
 }
\ No newline at end of file
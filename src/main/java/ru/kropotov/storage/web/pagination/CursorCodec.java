@@ -0,0 +1,125 @@
+package ru.kropotov.storage.web.pagination;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import ru.kropotov.storage.service.KeysetPosition;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Encodes keyset positions as opaque, URL-safe cursors. The cursor carries the sort it was
+ * created for, along with the type of the sort key, so that it seeks with the same BSON type.
+ * <p>
+ * Cursors are not signed, so a decoded cursor is only trusted as far as it could have been
+ * encoded here: a sortable field, a key of that field's type and an ObjectId. Anything else would
+ * let a caller seek on hidden fields, such as download secrets, and learn them by comparison.
+ */
+@Component
+@RequiredArgsConstructor
+public class CursorCodec {
+
+    private static final String STRING = "s";
+    private static final String LONG = "l";
+    private static final String INSTANT = "t";
+    private static final String NULL = "n";
+    private static final String EMPTY_ARRAY = "e";
+
+    /**
+     * Sortable fields and the kinds of sort key each can have
+     */
+    private static final Map<String, Set<String>> SORT_KEY_KINDS = Map.of(
+            "fileName", Set.of(STRING, NULL),
+            "uploadTs", Set.of(INSTANT, NULL),
+            "contentType", Set.of(STRING, NULL),
+            "sizeBytes", Set.of(LONG, NULL),
+            "tags", Set.of(STRING, NULL, EMPTY_ARRAY));
+
+    private final ObjectMapper objectMapper;
+
+    public String encode(KeysetPosition position) {
+        ObjectNode node = objectMapper.createObjectNode()
+                .put("s", position.sortField())
+                .put("d", position.direction().name())
+                .put("i", position.id());
+
+        Object value = position.value();
+        if (value == null) {
+            node.put("k", NULL);
+        } else if (value == KeysetPosition.EMPTY_ARRAY) {
+            node.put("k", EMPTY_ARRAY);
+        } else if (value instanceof String string) {
+            node.put("k", STRING).put("v", string);
+        } else if (value instanceof Long number) {
+            node.put("k", LONG).put("v", number);
+        } else if (value instanceof Instant instant) {
+            node.put("k", INSTANT).put("v", instant.toEpochMilli());
+        } else {
+            throw new IllegalStateException("Unsupported sort key type: " + value.getClass());
+        }
+
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(node));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode cursor", e);
+        }
+    }
+
+    /**
+     * @return the decoded position, or {@code null} for a blank cursor, which denotes the first page
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public KeysetPosition decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+
+        try {
+            JsonNode node = objectMapper.readTree(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+            String sortField = node.path("s").textValue();
+            String id = node.path("i").textValue();
+            String kind = node.path("k").asText();
+            if (sortField == null || !SORT_KEY_KINDS.getOrDefault(sortField, Set.of()).contains(kind)
+                    || id == null || !ObjectId.isValid(id)) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+
+            JsonNode value = node.path("v");
+            Object sortKey = switch (kind) {
+                case NULL -> null;
+                case EMPTY_ARRAY -> KeysetPosition.EMPTY_ARRAY;
+                case STRING -> requireText(value);
+                case LONG -> requireLong(value);
+                case INSTANT -> Instant.ofEpochMilli(requireLong(value));
+                default -> throw new IllegalArgumentException("Invalid cursor");
+            };
+            return new KeysetPosition(sortField, Sort.Direction.valueOf(node.path("d").asText()), sortKey, id);
+
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    private static String requireText(JsonNode value) {
+        if (!value.isTextual()) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return value.textValue();
+    }
+
+    private static long requireLong(JsonNode value) {
+        if (!value.isIntegralNumber() || !value.canConvertToLong()) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return value.longValue();
+    }
+}
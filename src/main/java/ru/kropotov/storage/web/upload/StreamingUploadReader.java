@@ -0,0 +1,174 @@
+package ru.kropotov.storage.web.upload;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.fileupload2.core.DiskFileItem;
+import org.apache.commons.fileupload2.core.DiskFileItemFactory;
+import org.apache.commons.fileupload2.core.FileItemInput;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
+import org.apache.commons.fileupload2.jakarta.servlet6.JakartaServletFileUpload;
+import org.springframework.stereotype.Component;
+import ru.kropotov.storage.facade.FileFacade;
+import ru.kropotov.storage.web.dto.UploadMetaDto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parses a {@code multipart/form-data} upload on the fly, straight from the request body.
+ * The {@code meta} part has to come first: it is read and validated before the {@code file}
+ * part is handed over as a live stream, so no byte of the payload touches the disk or the heap.
+ * A batch upload works the same way, with a {@code meta} array followed by one {@code file} part per entry.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StreamingUploadReader {
+
+    public static final String META_PART = "meta";
+    public static final String FILE_PART = "file";
+
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    public <T> T read(HttpServletRequest request, FilePartHandler<T> handler) throws IOException {
+        if (!JakartaServletFileUpload.isMultipartContent(request)) {
+            throw new IllegalArgumentException("Request is not multipart/form-data");
+        }
+
+        JakartaServletFileUpload<DiskFileItem, DiskFileItemFactory> upload = new JakartaServletFileUpload<>();
+        FileItemInputIterator parts = upload.getItemIterator(request);
+
+        UploadMetaDto meta = null;
+        while (parts.hasNext()) {
+            FileItemInput part = parts.next();
+
+            if (META_PART.equals(part.getFieldName())) {
+                meta = readMeta(part);
+            } else if (FILE_PART.equals(part.getFieldName())) {
+                if (meta == null) {
+                    throw new IllegalArgumentException("Part '" + META_PART + "' must precede part '" + FILE_PART + "'");
+                }
+                try (InputStream content = part.getInputStream()) {
+                    return handler.handle(meta, part.getName(), part.getContentType(), content);
+                }
+            } else {
+                log.debug("Skipping unexpected multipart part: {}", part.getFieldName());
+            }
+        }
+
+        throw new IllegalArgumentException("Required part '" + FILE_PART + "' is not present");
+    }
+
+    /**
+     * Reads a batch upload: a {@code meta} part with a JSON array of entries, followed by
+     * the {@code file} parts in the order of the entries
+     */
+    public <T> T readBatch(HttpServletRequest request, BatchHandler<T> handler) throws IOException {
+        if (!JakartaServletFileUpload.isMultipartContent(request)) {
+            throw new IllegalArgumentException("Request is not multipart/form-data");
+        }
+
+        JakartaServletFileUpload<DiskFileItem, DiskFileItemFactory> upload = new JakartaServletFileUpload<>();
+        FileItemInputIterator parts = upload.getItemIterator(request);
+
+        List<UploadMetaDto> metas = null;
+        while (metas == null && parts.hasNext()) {
+            FileItemInput part = parts.next();
+            if (META_PART.equals(part.getFieldName())) {
+                metas = readMetas(part);
+            } else if (FILE_PART.equals(part.getFieldName())) {
+                throw new IllegalArgumentException("Part '" + META_PART + "' must precede part '" + FILE_PART + "'");
+            } else {
+                log.debug("Skipping unexpected multipart part: {}", part.getFieldName());
+            }
+        }
+        if (metas == null) {
+            throw new IllegalArgumentException("Required part '" + META_PART + "' is not present");
+        }
+
+        return handler.handle(metas, consumer -> {
+            while (parts.hasNext()) {
+                FileItemInput part = parts.next();
+                if (!FILE_PART.equals(part.getFieldName())) {
+                    log.debug("Skipping unexpected multipart part: {}", part.getFieldName());
+                    continue;
+                }
+                try (InputStream content = part.getInputStream()) {
+                    consumer.accept(part.getContentType(), content);
+                }
+            }
+        });
+    }
+
+    private List<UploadMetaDto> readMetas(FileItemInput part) throws IOException {
+        List<UploadMetaDto> metas;
+        try (InputStream in = part.getInputStream()) {
+            metas = objectMapper.readValue(in, new TypeReference<List<UploadMetaDto>>() {
+            });
+        } catch (com.fasterxml.jackson.core.JacksonException e) {
+            throw new IllegalArgumentException("Invalid '" + META_PART + "' part: " + e.getOriginalMessage());
+        }
+
+        if (metas == null || metas.isEmpty() || metas.contains(null)) {
+            throw new IllegalArgumentException("Part '" + META_PART + "' must be an array of file entries");
+        }
+
+        Set<ConstraintViolation<UploadMetaDto>> violations = new HashSet<>();
+        metas.forEach(meta -> violations.addAll(validator.validate(meta)));
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
+        }
+        return metas;
+    }
+
+    private UploadMetaDto readMeta(FileItemInput part) throws IOException {
+        UploadMetaDto meta;
+        try (InputStream in = part.getInputStream()) {
+            meta = objectMapper.readValue(in, UploadMetaDto.class);
+        } catch (com.fasterxml.jackson.core.JacksonException e) {
+            throw new IllegalArgumentException("Invalid '" + META_PART + "' part: " + e.getOriginalMessage());
+        }
+
+        if (meta == null) {
+            throw new IllegalArgumentException("Part '" + META_PART + "' is empty");
+        }
+
+        Set<ConstraintViolation<UploadMetaDto>> violations = validator.validate(meta);
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
+        }
+        return meta;
+    }
+
+    @FunctionalInterface
+    public interface FilePartHandler<T> {
+
+        /**
+         * @param meta validated upload metadata
+         * @param originalFileName file name sent with the part, may be {@code null}
+         * @param contentType content type of the part, may be {@code null}
+         * @param content live part stream; it must be consumed before returning
+         */
+        T handle(UploadMetaDto meta, String originalFileName, String contentType, InputStream content) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface BatchHandler<T> {
+
+        /**
+         * @param metas validated entries, one per file
+         * @param fileParts the file parts that follow, readable once
+         */
+        T handle(List<UploadMetaDto> metas, FileFacade.PartSource fileParts) throws IOException;
+    }
+}
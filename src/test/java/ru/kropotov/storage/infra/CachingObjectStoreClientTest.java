@@ -0,0 +1,214 @@
+package ru.kropotov.storage.infra;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import ru.kropotov.storage.config.properties.StorageProperties;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CachingObjectStoreClientTest {
+
+    private static final String KEY = "file-1";
+    private static final String CONTENT = "hello, cached world";
+
+    @TempDir
+    Path directory;
+
+    private ObjectStoreClient delegate;
+    private StorageProperties.DiskCache settings;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(ObjectStoreClient.class);
+        settings = new StorageProperties.DiskCache();
+        settings.setDirectory(directory);
+        when(delegate.download(KEY)).thenAnswer(invocation -> stream(CONTENT));
+        when(delegate.download(eq(KEY), anyLong(), anyLong())).thenAnswer(invocation -> stream("llo"));
+    }
+
+    @Test
+    void testDownload_SecondReadIsServedFromDisk() throws IOException {
+        CachingObjectStoreClient client = newClient();
+
+        assertEquals(CONTENT, read(client.download(KEY)));
+        assertEquals(CONTENT, read(client.download(KEY)));
+        assertEquals("llo", read(client.download(KEY, 2, 3)));
+
+        verify(delegate, times(1)).download(KEY);
+        verify(delegate, never()).download(eq(KEY), anyLong(), anyLong());
+    }
+
+    @Test
+    void testDownload_AbortedReadIsNotCached() throws IOException {
+        CachingObjectStoreClient client = newClient();
+
+        try (InputStream content = client.download(KEY)) {
+            content.readNBytes(3);
+        }
+        read(client.download(KEY));
+
+        verify(delegate, times(2)).download(KEY);
+    }
+
+    @Test
+    void testDownload_ContentKeyWithOtherContentIsNotCached() throws IOException {
+        String key = "cas/ab/" + "0".repeat(64);
+        when(delegate.download(key)).thenAnswer(invocation -> stream(CONTENT));
+        CachingObjectStoreClient client = newClient();
+
+        read(client.download(key));
+        read(client.download(key));
+
+        verify(delegate, times(2)).download(key);
+    }
+
+    @Test
+    void testDownload_ContentKeyIsCached() throws Exception {
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest(CONTENT.getBytes(StandardCharsets.UTF_8)));
+        String key = "cas/" + sha256.substring(0, 2) + "/" + sha256;
+        when(delegate.download(key)).thenAnswer(invocation -> stream(CONTENT));
+        CachingObjectStoreClient client = newClient();
+
+        read(client.download(key));
+        assertEquals(CONTENT, read(client.download(key)));
+
+        verify(delegate, times(1)).download(key);
+    }
+
+    @Test
+    void testLocalFile_OnlyForCachedObjects() throws IOException {
+        CachingObjectStoreClient client = newClient();
+        assertTrue(client.localFile(KEY).isEmpty());
+
+        read(client.download(KEY));
+
+        Path file = client.localFile(KEY).orElseThrow();
+        assertEquals(CONTENT, Files.readString(file));
+    }
+
+    @Test
+    void testLocalFile_CorruptEntryIsNotHandedOut() throws IOException {
+        read(newClient().download(KEY));
+        Files.writeString(dataFiles().getFirst(), "x".repeat(CONTENT.length()));
+
+        assertTrue(newClient().localFile(KEY).isEmpty());
+    }
+
+    @Test
+    void testRestart_EntriesAreRestoredFromDisk() throws IOException {
+        read(newClient().download(KEY));
+
+        CachingObjectStoreClient restarted = newClient();
+        assertEquals(CONTENT, read(restarted.download(KEY)));
+        assertEquals("llo", read(restarted.download(KEY, 2, 3)));
+
+        verify(delegate, times(1)).download(KEY);
+    }
+
+    @Test
+    void testRestart_CorruptEntryIsDropped() throws IOException {
+        read(newClient().download(KEY));
+        Path data = dataFiles().getFirst();
+        Files.writeString(data, "x".repeat(CONTENT.length()));
+
+        CachingObjectStoreClient restarted = newClient();
+        assertEquals("llo", read(restarted.download(KEY, 2, 3)));
+        verify(delegate, times(1)).download(KEY, 2, 3);
+
+        assertEquals(CONTENT, read(restarted.download(KEY)));
+        verify(delegate, times(2)).download(KEY);
+    }
+
+    @Test
+    void testRestart_IncompleteFilesAreRemoved() throws IOException {
+        read(newClient().download(KEY));
+        Path data = dataFiles().getFirst();
+        Files.delete(data.resolveSibling(data.getFileName() + ".meta"));
+        Files.writeString(data.resolveSibling(data.getFileName() + "1234.tmp"), "partial");
+
+        newClient();
+
+        assertTrue(dataFiles().isEmpty());
+        try (Stream<Path> files = Files.walk(directory)) {
+            assertTrue(files.noneMatch(file -> file.toString().endsWith(".tmp")));
+        }
+    }
+
+    @Test
+    void testRestart_ForeignFilesAreKept() throws IOException {
+        Path topLevel = Files.writeString(directory.resolve("notes.txt"), "not ours");
+        Files.createDirectories(directory.resolve("ab"));
+        Path inShard = Files.writeString(directory.resolve("ab").resolve("readme"), "not ours");
+        Path misplaced = Files.writeString(directory.resolve("ab").resolve("cd" + "0".repeat(62)), "not ours");
+
+        newClient();
+
+        assertTrue(Files.exists(topLevel));
+        assertTrue(Files.exists(inShard));
+        assertTrue(Files.exists(misplaced));
+    }
+
+    @Test
+    void testDelete_DropsEntry() throws IOException {
+        CachingObjectStoreClient client = newClient();
+        read(client.download(KEY));
+
+        client.delete(KEY);
+        read(client.download(KEY));
+
+        verify(delegate).delete(KEY);
+        verify(delegate, times(2)).download(KEY);
+    }
+
+    @Test
+    void testDownload_LargeObjectIsNotCached() throws IOException {
+        settings.setMaxEntrySize(DataSize.ofBytes(4));
+        CachingObjectStoreClient client = newClient();
+
+        assertEquals(CONTENT, read(client.download(KEY)));
+        read(client.download(KEY));
+
+        verify(delegate, times(2)).download(KEY);
+        assertTrue(dataFiles().isEmpty());
+    }
+
+    private CachingObjectStoreClient newClient() {
+        return new CachingObjectStoreClient(delegate, settings, new SimpleMeterRegistry());
+    }
+
+    private List<Path> dataFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> !file.getFileName().toString().contains("."))
+                    .toList();
+        }
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(InputStream content) throws IOException {
+        try (content) {
+            return new String(content.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package ru.kropotov.storage.infra;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.kropotov.storage.config.properties.StorageProperties;
+import ru.kropotov.storage.infra.dto.ObjectListing;
+import ru.kropotov.storage.infra.dto.UploadResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilesystemObjectStoreClientTest {
+
+    @TempDir
+    Path root;
+
+    private FilesystemObjectStoreClient client;
+
+    @BeforeEach
+    void setUp() {
+        StorageProperties.Filesystem settings = new StorageProperties.Filesystem();
+        settings.setRoot(root);
+        client = new FilesystemObjectStoreClient(settings);
+        client.init();
+    }
+
+    @Test
+    void testUpload_ContentIsHashedAndReadable() throws IOException {
+        UploadResult result = client.upload(stream("hello"), 5, "text/plain");
+
+        assertEquals("2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824", result.sha256());
+        assertEquals("hello", read(client.download(result.key())));
+        assertTempDirectoryEmpty();
+    }
+
+    @Test
+    void testUploadWithKey_OverwritesAtomically() throws IOException {
+        client.uploadWithKey(stream("first"), 5, "text/plain", "file-1");
+        try (InputStream opened = client.download("file-1")) {
+            client.uploadWithKey(stream("second"), 6, "text/plain", "file-1");
+
+            assertEquals("first", new String(opened.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals("second", read(client.download("file-1")));
+    }
+
+    @Test
+    void testUploadWithKey_SizeMismatchLeavesNothing() throws IOException {
+        assertThrows(RuntimeException.class,
+                () -> client.uploadWithKey(stream("short"), 10, "text/plain", "file-1"));
+
+        assertTrue(client.localFile("file-1").isEmpty());
+        assertTempDirectoryEmpty();
+    }
+
+    @Test
+    void testDownload_Range() throws IOException {
+        client.uploadWithKey(stream("0123456789"), 10, "text/plain", "file-1");
+
+        assertEquals("345", read(client.download("file-1", 3, 3)));
+        assertEquals("9", read(client.download("file-1", 9, 1)));
+        assertThrows(RuntimeException.class, () -> client.download("file-1", 8, 5));
+    }
+
+    @Test
+    void testDownload_RangeAcrossManyReads() throws IOException {
+        byte[] content = new byte[300_000];
+        new Random(7).nextBytes(content);
+        client.uploadWithKey(new ByteArrayInputStream(content), content.length, "application/octet-stream", "file-1");
+
+        try (InputStream range = client.download("file-1", 1000, 250_000)) {
+            assertEquals(100, range.skip(100));
+            assertArrayEquals(Arrays.copyOfRange(content, 1100, 251_000), range.readAllBytes());
+            assertEquals(-1, range.read());
+        }
+    }
+
+    @Test
+    void testDownload_RangeKeepsContentItWasOpenedWith() throws IOException {
+        client.uploadWithKey(stream("0123456789"), 10, "text/plain", "file-1");
+        try (InputStream range = client.download("file-1", 2, 5)) {
+            client.uploadWithKey(stream("abcdefghij"), 10, "text/plain", "file-1");
+
+            assertEquals("23456", new String(range.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testDownload_MissingObject() {
+        assertThrows(RuntimeException.class, () -> client.download("file-missing"));
+    }
+
+    @Test
+    void testCopy() throws IOException {
+        client.uploadWithKey(stream("content"), 7, "text/plain", "file-1");
+
+        client.copy("file-1", "cas/ab/abcdef", 7);
+
+        assertEquals("content", read(client.download("cas/ab/abcdef")));
+        assertEquals("content", read(client.download("file-1")));
+    }
+
+    @Test
+    void testDeleteAll_MissingKeysAreNotFailures() {
+        client.uploadWithKey(stream("a"), 1, "text/plain", "file-1");
+        client.uploadWithKey(stream("b"), 1, "text/plain", "file-2");
+
+        Set<String> failed = client.deleteAll(List.of("file-1", "file-2", "file-3"));
+
+        assertTrue(failed.isEmpty());
+        assertTrue(client.localFile("file-1").isEmpty());
+        assertTrue(client.localFile("file-2").isEmpty());
+    }
+
+    @Test
+    void testList_KeyOrderAcrossShards() {
+        List<String> keys = List.of("a", "cas/00/aa", "cas/ff/bb", "file-0abc", "file-0abd", "file-f", "object-1", "z");
+        for (String key : keys.reversed()) {
+            client.uploadWithKey(stream(key), key.length(), "text/plain", key);
+        }
+
+        List<String> listed = new ArrayList<>();
+        String startAfter = null;
+        ObjectListing page;
+        do {
+            page = client.list(startAfter, 3);
+            page.objects().forEach(object -> listed.add(object.key()));
+            startAfter = listed.getLast();
+        } while (page.truncated());
+
+        assertEquals(keys, listed);
+        assertEquals(List.of("file-f", "object-1", "z"), client.list("file-0abd", 10).objects().stream()
+                .map(ObjectListing.StoredObject::key)
+                .toList());
+    }
+
+    @Test
+    void testList_SizesAndEmptyStore() {
+        assertTrue(client.list(null, 10).objects().isEmpty());
+
+        client.uploadWithKey(stream("hello"), 5, "text/plain", "file-1");
+
+        ObjectListing.StoredObject object = client.list(null, 10).objects().getFirst();
+        assertEquals("file-1", object.key());
+        assertEquals(5, object.sizeBytes());
+        assertNotNull(object.lastModified());
+    }
+
+    @Test
+    void testKey_TooLongIsRejected() {
+        String key = "k".repeat(FilesystemObjectStoreClient.MAX_KEY_BYTES + 1);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> client.uploadWithKey(stream("x"), 1, "text/plain", key));
+    }
+
+    private void assertTempDirectoryEmpty() throws IOException {
+        try (Stream<Path> files = Files.list(root.resolve("tmp"))) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(InputStream content) throws IOException {
+        try (content) {
+            return new String(content.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package ru.kropotov.storage.infra;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class MinioAsyncObjectReaderTest {
+
+    private S3AsyncClient s3AsyncClient;
+    private MinioAsyncObjectReader reader;
+
+    @BeforeEach
+    void setUp() {
+        s3AsyncClient = mock(S3AsyncClient.class);
+        when(s3AsyncClient.getObject(any(GetObjectRequest.class), any(AsyncResponseTransformer.class)))
+                .thenReturn(new CompletableFuture<>());
+        reader = new MinioAsyncObjectReader(s3AsyncClient);
+    }
+
+    @Test
+    void testRead_WholeObject() {
+        reader.read("file-1", 0, -1);
+
+        GetObjectRequest request = sentRequest();
+        assertEquals("file-1", request.key());
+        assertNull(request.range());
+    }
+
+    @Test
+    void testRead_Range() {
+        reader.read("file-1", 10, 5);
+
+        assertEquals("bytes=10-14", sentRequest().range());
+    }
+
+    @Test
+    void testRead_FromOffsetToEnd() {
+        reader.read("file-1", 10, -1);
+
+        assertEquals("bytes=10-", sentRequest().range());
+    }
+
+    private GetObjectRequest sentRequest() {
+        ArgumentCaptor<GetObjectRequest> request = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(s3AsyncClient).getObject(request.capture(), any(AsyncResponseTransformer.class));
+        return request.getValue();
+    }
+}
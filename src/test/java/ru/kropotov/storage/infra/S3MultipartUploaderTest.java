@@ -0,0 +1,142 @@
+package ru.kropotov.storage.infra;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.kropotov.storage.config.properties.StorageProperties;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class S3MultipartUploaderTest {
+
+    private static final long MB = 1024L * 1024;
+
+    private S3Client s3Client;
+    private ExecutorService partExecutor;
+    private S3MultipartUploader uploader;
+
+    @BeforeEach
+    void setUp() {
+        s3Client = mock(S3Client.class);
+        StorageProperties properties = new StorageProperties();
+        partExecutor = Executors.newCachedThreadPool();
+        uploader = new S3MultipartUploader(s3Client, properties, partExecutor);
+
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenReturn(UploadPartResponse.builder().eTag("etag").build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        partExecutor.shutdown();
+    }
+
+    @Test
+    void testInitialPartSize_KnownSizeFitsIntoPartLimit() {
+        assertEquals(8 * MB, uploader.initialPartSize(-1));
+        assertEquals(8 * MB, uploader.initialPartSize(100 * MB));
+
+        long hugeSize = 200_000 * MB;
+        long partSize = uploader.initialPartSize(hugeSize);
+        assertTrue(partSize * S3MultipartUploader.MAX_PARTS >= hugeSize);
+    }
+
+    @Test
+    void testNextPartSize_GrowsOnlyForUnknownLength() {
+        long partSize = 8 * MB;
+        int stepBoundary = S3MultipartUploader.PARTS_PER_SIZE_STEP + 1;
+
+        assertEquals(partSize, uploader.nextPartSize(partSize, 2, -1));
+        assertEquals(2 * partSize, uploader.nextPartSize(partSize, stepBoundary, -1));
+        assertEquals(partSize, uploader.nextPartSize(partSize, stepBoundary, 1000 * MB));
+        assertEquals(256 * MB, uploader.nextPartSize(256 * MB, stepBoundary, -1));
+    }
+
+    @Test
+    void testUpload_SmallUnknownLengthStream_UsesSinglePut() {
+        uploader.upload("bucket", "key", "text/plain", new ByteArrayInputStream(new byte[1024]), -1);
+
+        verify(s3Client).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        verify(s3Client, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+    }
+
+    @Test
+    void testUpload_LargeUnknownLengthStream_SendsAllParts() {
+        byte[] content = new byte[(int) (20 * MB)];
+
+        uploader.upload("bucket", "key", "application/octet-stream", new ByteArrayInputStream(content), -1);
+
+        verify(s3Client, times(3)).uploadPart(any(UploadPartRequest.class), any(RequestBody.class));
+        verify(s3Client).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    void testUpload_PartKeepsFailing_AbortsUpload() {
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenThrow(S3Exception.builder().message("boom").build());
+        byte[] content = new byte[(int) (16 * MB)];
+
+        assertThrows(RuntimeException.class, () ->
+                uploader.upload("bucket", "key", "application/octet-stream", new ByteArrayInputStream(content), -1));
+
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    void testUpload_StreamLongerThanDeclaredSize_FailsWithoutReadingTheRest() {
+        ByteArrayInputStream content = new ByteArrayInputStream(new byte[(int) (40 * MB)]);
+
+        assertThrows(RuntimeException.class, () ->
+                uploader.upload("bucket", "key", "application/octet-stream", content, 16 * MB));
+
+        assertTrue(content.available() >= 24 * MB - 1);
+        verify(s3Client, times(2)).uploadPart(any(UploadPartRequest.class), any(RequestBody.class));
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    void testUpload_DeclaredSizeOverPartLimit_IsRejectedBeforeReading() {
+        ByteArrayInputStream content = new ByteArrayInputStream(new byte[1024]);
+        long tooLarge = 256 * MB * S3MultipartUploader.MAX_PARTS + 1;
+
+        assertThrows(IllegalArgumentException.class, () ->
+                uploader.upload("bucket", "key", "application/octet-stream", content, tooLarge));
+
+        assertEquals(1024, content.available());
+        verifyNoInteractions(s3Client);
+    }
+
+    @Test
+    void testUpload_RejectedPart_ReleasesBudget() {
+        StorageProperties properties = new StorageProperties();
+        properties.getMultipart().setMaxInFlight(DataSize.ofMegabytes(8));
+        ExecutorService stoppedExecutor = Executors.newSingleThreadExecutor();
+        stoppedExecutor.shutdown();
+        S3MultipartUploader smallUploader = new S3MultipartUploader(s3Client, properties, stoppedExecutor);
+        byte[] content = new byte[(int) (16 * MB)];
+
+        assertThrows(RuntimeException.class, () -> smallUploader.upload("bucket", "key", "application/octet-stream",
+                new ByteArrayInputStream(content), -1));
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+
+        // a leaked charge would leave no budget for the next upload
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> smallUploader.upload("bucket", "small", "text/plain",
+                new ByteArrayInputStream(new byte[1024]), -1));
+        verify(s3Client).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+}
@@ -0,0 +1,88 @@
+package ru.kropotov.storage.infra.index;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Disabled
+@ActiveProfiles("test")
+@Testcontainers
+class IndexMigratorIntegTest {
+
+    @Container
+    static MongoDBContainer mongoContainer = new MongoDBContainer("mongo:7.0")
+            .withExposedPorts(27017);
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongoContainer::getReplicaSetUrl);
+    }
+
+    @Autowired
+    private IndexMigrator indexMigrator;
+
+    @Autowired
+    private IndexStatsEndpoint indexStatsEndpoint;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Test
+    void testMigrate_BuildsEveryDeclaredIndexOnce() {
+        indexMigrator.migrate();
+        assertEquals(0, indexMigrator.migrate());
+
+        IndexStatsEndpoint.IndexReport report = indexStatsEndpoint.report();
+        assertEquals(report.latestVersion(), report.appliedVersion());
+        report.collections().forEach(collection -> {
+            assertTrue(collection.missing().isEmpty(), collection.collection() + " misses " + collection.missing());
+            assertTrue(collection.undeclared().isEmpty(), collection.collection() + " has " + collection.undeclared());
+        });
+    }
+
+    @Test
+    void testStartup_UniqueIndexesAreBuiltBeforeTraffic() {
+        assertTrue(indexMigrator.currentVersion() >= IndexMigrations.lastConstraintVersion());
+
+        List<String> indexNames = mongoTemplate.indexOps("files").getIndexInfo().stream()
+                .map(IndexInfo::getName)
+                .toList();
+        assertTrue(indexNames.containsAll(List.of("owner_name", "ux_owner_sha_ready")), indexNames.toString());
+    }
+
+    @Test
+    void testLastConstraintVersion_IsTheLastMigrationWithAUniqueIndex() {
+        assertEquals(1, IndexMigrations.lastConstraintVersion());
+        assertTrue(IndexMigrations.ALL.get(0).addsConstraints());
+        assertFalse(IndexMigrations.ALL.get(1).addsConstraints());
+    }
+
+    @Test
+    void testListingSortedByName_DoesNotSortInMemory() {
+        indexMigrator.migrate();
+
+        Document plan = mongoTemplate.getCollection("files")
+                .find(new Document("ownerId", "user123").append("state", "READY").append("tags", "java"))
+                .sort(new Document("fileName", -1).append("_id", -1))
+                .explain();
+
+        String winningPlan = plan.get("queryPlanner", Document.class).get("winningPlan", Document.class).toJson();
+        assertTrue(winningPlan.contains("owner_state_tags_fileName_id"), winningPlan);
+        assertFalse(winningPlan.contains("\"SORT\""), winningPlan);
+    }
+}
@@ -0,0 +1,79 @@
+package ru.kropotov.storage.jobs;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.kropotov.storage.config.properties.StorageProperties;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JanitorPacerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private JanitorPacer pacer;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        StorageProperties properties = new StorageProperties();
+        properties.getJanitor().setMinRate(100);
+        properties.getJanitor().setMaxRate(400);
+        properties.getJanitor().setLatencyTarget(Duration.ofMillis(200));
+        pacer = new JanitorPacer(properties, meterRegistry);
+    }
+
+    @Test
+    void testOnBatch_HealthyForeground_IncreasesAdditivelyUpToMax() {
+        pacer.onBatch(1000, 0);
+        assertEquals(200, pacer.rate());
+
+        pacer.onBatch(1000, 0);
+        pacer.onBatch(1000, 0);
+        pacer.onBatch(1000, 0);
+        assertEquals(400, pacer.rate());
+    }
+
+    @Test
+    void testOnBatch_ObjectStoreErrors_HalvesRate() {
+        pacer.onBatch(1000, 0);
+        pacer.onBatch(1000, 0);
+        assertEquals(300, pacer.rate());
+
+        pacer.onBatch(1000, 100);
+        assertEquals(150, pacer.rate());
+
+        pacer.onBatch(1000, 100);
+        assertEquals(100, pacer.rate(), "never drops below the minimum rate");
+    }
+
+    @Test
+    void testOnBatch_SlowForegroundRequests_HalvesRate() {
+        pacer.onBatch(1000, 0);
+        pacer.onBatch(1000, 0);
+
+        Timer requests = meterRegistry.timer("http.server.requests", "uri", "/api/files");
+        requests.record(Duration.ofMillis(500));
+        requests.record(Duration.ofMillis(300));
+        pacer.onBatch(1000, 0);
+        assertEquals(150, pacer.rate());
+
+        // only requests completed since the previous batch count
+        requests.record(Duration.ofMillis(10));
+        pacer.onBatch(1000, 0);
+        assertEquals(250, pacer.rate());
+    }
+
+    @Test
+    void testPace_SpreadsBatchesOverTheRate() throws Exception {
+        long started = System.nanoTime();
+        pacer.pace(10);
+        pacer.pace(10);
+        pacer.pace(10);
+
+        // 30 files at 100 files/s: the third batch starts 200 ms after the first
+        assertTrue(System.nanoTime() - started >= Duration.ofMillis(190).toNanos());
+    }
+}
@@ -0,0 +1,143 @@
+package ru.kropotov.storage.jobs;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.kropotov.storage.domain.model.Blob;
+import ru.kropotov.storage.domain.model.BlobState;
+import ru.kropotov.storage.domain.model.File;
+import ru.kropotov.storage.domain.model.FileState;
+import ru.kropotov.storage.infra.ObjectStoreClient;
+import ru.kropotov.storage.infra.dto.ObjectListing;
+import ru.kropotov.storage.infra.dto.ObjectListing.StoredObject;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(properties = {
+        "storage.reconciliation.enabled=true",
+        "storage.reconciliation.partitions=1",
+        "storage.reconciliation.pollInterval=1h"
+})
+@Disabled
+@ActiveProfiles("test")
+@Testcontainers
+class OrphanReconciliationJobIntegTest {
+
+    private static final String SHA = "ab" + "0".repeat(62);
+    private static final Instant OLD = Instant.now().minus(7, ChronoUnit.DAYS);
+    private static final String ORPHAN = "file-10000000-0000-4000-8000-000000000000-1";
+    private static final String REFERENCED = "file-1f000000-0000-4000-8000-000000000000-2";
+    private static final String RECENT = "file-20000000-0000-4000-8000-000000000000-3";
+    private static final String SECOND_ORPHAN = "file-30000000-0000-4000-8000-000000000000-4";
+    private static final ObjectListing EMPTY = new ObjectListing(List.of(), false);
+
+    @Container
+    static MongoDBContainer mongoContainer = new MongoDBContainer("mongo:7.0")
+            .withExposedPorts(27017);
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongoContainer::getReplicaSetUrl);
+    }
+
+    @MockitoBean
+    private ObjectStoreClient objectStoreClient;
+
+    @Autowired
+    private OrphanReconciliationJob reconciliationJob;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection(File.class);
+        mongoTemplate.dropCollection(Blob.class);
+        mongoTemplate.dropCollection(OrphanReconciliationJob.LEASES_COLLECTION);
+        when(objectStoreClient.deleteAll(anyCollection())).thenReturn(Set.of());
+        when(objectStoreClient.list(anyString(), anyInt())).thenReturn(EMPTY);
+    }
+
+    @Test
+    void testReconcile_DeletesOnlyUnreferencedObjectsPastGracePeriod() {
+        mongoTemplate.insert(File.builder().objectStoreKey(REFERENCED).state(FileState.READY).build());
+        mongoTemplate.insert(Blob.builder().id(SHA).objectStoreKey("cas/ab/" + SHA)
+                .refCount(1).state(BlobState.READY).updatedTs(Instant.now()).build());
+
+        when(objectStoreClient.list(eq("cas/"), anyInt())).thenReturn(new ObjectListing(List.of(
+                new StoredObject("cas/ab/" + SHA, OLD, 10),
+                new StoredObject("cas/cd/cd" + "0".repeat(62), OLD, 10)
+        ), false));
+        when(objectStoreClient.list(eq("file-"), anyInt())).thenReturn(new ObjectListing(List.of(
+                new StoredObject(ORPHAN, OLD, 10),
+                new StoredObject(REFERENCED, OLD, 10),
+                new StoredObject(RECENT, Instant.now(), 10)
+        ), false));
+
+        reconciliationJob.reconcile();
+
+        verify(objectStoreClient).deleteAll(argThat((Collection<String> keys) -> keys.size() == 2
+                && keys.containsAll(List.of("cas/cd/cd" + "0".repeat(62), ORPHAN))));
+    }
+
+    @Test
+    void testReconcile_ForeignObjectsAreKept() {
+        when(objectStoreClient.list(eq("cas/"), anyInt())).thenReturn(new ObjectListing(List.of(
+                new StoredObject("cas/ab/backup.tar", OLD, 10),
+                new StoredObject("cas/ab/cd" + "0".repeat(62), OLD, 10),
+                new StoredObject("cas0-report", OLD, 10)
+        ), false));
+        when(objectStoreClient.list(eq("file-"), anyInt())).thenReturn(new ObjectListing(List.of(
+                new StoredObject("file-export.csv", OLD, 10),
+                new StoredObject(ORPHAN + "/thumbnail", OLD, 10),
+                new StoredObject("files/of-another-app", OLD, 10)
+        ), false));
+
+        reconciliationJob.reconcile();
+
+        verify(objectStoreClient, never()).list(isNull(), anyInt());
+        verify(objectStoreClient, never()).deleteAll(anyCollection());
+    }
+
+    @Test
+    void testReconcile_CompletedPartitionIsNotScannedAgainBeforeInterval() {
+        reconciliationJob.reconcile();
+        reconciliationJob.reconcile();
+
+        verify(objectStoreClient, times(1)).list(eq("cas/"), anyInt());
+        verify(objectStoreClient, times(1)).list(eq("file-"), anyInt());
+        verify(objectStoreClient, never()).deleteAll(anyCollection());
+    }
+
+    @Test
+    void testReconcile_ContinuesAfterLastListedKey() {
+        when(objectStoreClient.list(eq("file-"), anyInt())).thenReturn(new ObjectListing(List.of(
+                new StoredObject(ORPHAN, OLD, 10)), true));
+        when(objectStoreClient.list(eq(ORPHAN), anyInt())).thenReturn(new ObjectListing(List.of(
+                new StoredObject(SECOND_ORPHAN, OLD, 10)), false));
+
+        reconciliationJob.reconcile();
+
+        verify(objectStoreClient).list(eq(ORPHAN), anyInt());
+        verify(objectStoreClient).deleteAll(Set.of(SECOND_ORPHAN));
+        assertTrue(mongoTemplate.collectionExists(OrphanReconciliationJob.LEASES_COLLECTION));
+    }
+}
@@ -0,0 +1,102 @@
+package ru.kropotov.storage.jobs;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Disabled
+@ActiveProfiles("test")
+@Testcontainers
+class PartitionLeasesIntegTest {
+
+    private static final String COLLECTION = "test_leases";
+    private static final int PARTITIONS = 16;
+
+    @Container
+    static MongoDBContainer mongoContainer = new MongoDBContainer("mongo:7.0")
+            .withExposedPorts(27017);
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongoContainer::getReplicaSetUrl);
+    }
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private PartitionLeases firstNode;
+    private PartitionLeases secondNode;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection(COLLECTION);
+        firstNode = new PartitionLeases(mongoTemplate, COLLECTION, PARTITIONS, Duration.ofMinutes(5));
+        secondNode = new PartitionLeases(mongoTemplate, COLLECTION, PARTITIONS, Duration.ofMinutes(5));
+    }
+
+    @Test
+    void testClaimDue_NodesGetDisjointPartitions() {
+        List<Integer> first = firstNode.claimDue(PARTITIONS / 2);
+        List<Integer> second = secondNode.claimDue(PARTITIONS);
+
+        assertEquals(PARTITIONS / 2, first.size());
+        assertEquals(PARTITIONS - first.size(), second.size());
+        Set<Integer> all = new HashSet<>(first);
+        all.addAll(second);
+        assertEquals(PARTITIONS, all.size());
+    }
+
+    @Test
+    void testRelease_PartitionIsNotDueUntilNextRun() {
+        int partition = firstNode.claimDue(1).get(0);
+        firstNode.release(partition, Instant.now().plusSeconds(3600), true);
+
+        assertFalse(secondNode.claimDue(PARTITIONS).contains(partition));
+    }
+
+    @Test
+    void testUnfinishedPass_ResumesFromCheckpoint() {
+        int partition = firstNode.claimDue(1).get(0);
+        assertTrue(firstNode.renew(partition, "file-0abc"));
+        firstNode.release(partition, Instant.now(), false);
+
+        assertTrue(secondNode.claimDue(PARTITIONS).contains(partition));
+        assertEquals("file-0abc", secondNode.checkpoint(partition));
+
+        secondNode.release(partition, Instant.now(), true);
+        assertTrue(firstNode.claimDue(PARTITIONS).contains(partition));
+        assertNull(firstNode.checkpoint(partition));
+    }
+
+    @Test
+    void testExpiredLease_IsHandedOverToAnotherNode() {
+        int partition = firstNode.claimDue(1).get(0);
+        mongoTemplate.updateFirst(new Query(Criteria.where("id").is(partition)),
+                new Update().set("expiresTs", Instant.now().minusSeconds(1)), COLLECTION);
+
+        assertTrue(secondNode.claimDue(PARTITIONS).contains(partition));
+        assertFalse(firstNode.renew(partition, "file-1"));
+        assertTrue(secondNode.renew(partition, null));
+    }
+}
@@ -0,0 +1,172 @@
+package ru.kropotov.storage.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.kropotov.storage.domain.model.Blob;
+import ru.kropotov.storage.domain.model.BlobState;
+import ru.kropotov.storage.infra.ObjectStoreClient;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Интеграционный тест для BlobService
+ */
+@SpringBootTest
+@Disabled
+@ActiveProfiles("test")
+@Testcontainers
+class BlobServiceIntegTest {
+
+    private static final String SHA = "ab" + "0".repeat(62);
+
+    @Container
+    static MongoDBContainer mongoContainer = new MongoDBContainer("mongo:7.0")
+            .withExposedPorts(27017);
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongoContainer::getReplicaSetUrl);
+    }
+
+    @MockitoBean
+    private ObjectStoreClient objectStoreClient;
+
+    @Autowired
+    private BlobService blobService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection(Blob.class);
+    }
+
+    @Test
+    void testAcquire_NewContent_CopiesOnce() {
+        String key = blobService.acquire(SHA, "file-1", 100);
+
+        assertEquals("cas/ab/" + SHA, key);
+        verify(objectStoreClient).copy("file-1", key, 100);
+
+        Blob blob = mongoTemplate.findById(SHA, Blob.class);
+        assertNotNull(blob);
+        assertEquals(BlobState.READY, blob.getState());
+        assertEquals(1, blob.getRefCount());
+    }
+
+    @Test
+    void testAcquire_ExistingContent_AddsReferenceWithoutCopy() {
+        String first = blobService.acquire(SHA, "file-1", 100);
+        String second = blobService.acquire(SHA, "file-2", 100);
+
+        assertEquals(first, second);
+        verify(objectStoreClient, times(1)).copy(anyString(), anyString(), anyLong());
+        assertEquals(2, mongoTemplate.findById(SHA, Blob.class).getRefCount());
+    }
+
+    @Test
+    void testAcquire_BlobBeingDeleted_FallsBackToOwnKey() {
+        mongoTemplate.insert(Blob.builder()
+                .id(SHA)
+                .objectStoreKey(BlobService.contentKey(SHA))
+                .state(BlobState.DELETING)
+                .updatedTs(Instant.now())
+                .build());
+
+        assertNull(blobService.acquire(SHA, "file-1", 100));
+        verify(objectStoreClient, never()).copy(anyString(), anyString(), anyLong());
+    }
+
+    @Test
+    void testRelease_LastReference_DeletesObject() {
+        String key = blobService.acquire(SHA, "file-1", 100);
+        blobService.acquire(SHA, "file-2", 100);
+
+        blobService.release(key);
+        verify(objectStoreClient, never()).delete(key);
+
+        blobService.release(key);
+        verify(objectStoreClient).delete(key);
+        assertNull(mongoTemplate.findById(SHA, Blob.class));
+    }
+
+    @Test
+    void testRelease_PlainKey_DeletesObject() {
+        blobService.release("file-1");
+
+        verify(objectStoreClient).delete("file-1");
+    }
+
+    @Test
+    void testReleaseAll_DeletesPlainKeysInBulkAndReportsFailures() {
+        String key = blobService.acquire(SHA, "file-1", 100);
+        blobService.acquire(SHA, "file-2", 100);
+        when(objectStoreClient.deleteAll(List.of("file-3", "file-4"))).thenReturn(Set.of("file-4"));
+
+        Map<String, String> keysByFileId = new LinkedHashMap<>();
+        keysByFileId.put("id-3", "file-3");
+        keysByFileId.put("id-1", key);
+        keysByFileId.put("id-4", "file-4");
+
+        Set<String> failed = blobService.releaseAll(keysByFileId);
+
+        assertEquals(Set.of("id-4"), failed);
+        verify(objectStoreClient, never()).delete(anyString());
+        assertEquals(1, mongoTemplate.findById(SHA, Blob.class).getRefCount());
+    }
+
+    @Test
+    void testReleaseAll_SharedKeyFailureIsReportedForOneFile() {
+        String key = blobService.acquire(SHA, "file-1", 100);
+        blobService.acquire(SHA, "file-2", 100);
+        doThrow(new RuntimeException("Object store is down")).when(objectStoreClient).delete(key);
+
+        Map<String, String> keysByFileId = new LinkedHashMap<>();
+        keysByFileId.put("id-1", key);
+        keysByFileId.put("id-2", key);
+
+        Set<String> failed = blobService.releaseAll(keysByFileId);
+
+        // the first release only dropped a reference, the second one failed to delete the blob
+        assertEquals(Set.of("id-2"), failed);
+        verify(objectStoreClient, times(1)).delete(key);
+        Blob blob = mongoTemplate.findById(SHA, Blob.class);
+        assertNotNull(blob);
+        assertEquals(0, blob.getRefCount());
+        assertEquals(BlobState.DELETING, blob.getState());
+    }
+
+    @Test
+    void testCleanupStale_RemovesAbandonedClaims() {
+        mongoTemplate.insert(Blob.builder()
+                .id(SHA)
+                .objectStoreKey(BlobService.contentKey(SHA))
+                .refCount(1)
+                .state(BlobState.PENDING)
+                .updatedTs(Instant.now().minusSeconds(3600))
+                .build());
+
+        assertEquals(1, blobService.cleanupStale(Instant.now()));
+        verify(objectStoreClient).delete(BlobService.contentKey(SHA));
+        assertNull(mongoTemplate.findById(SHA, Blob.class));
+    }
+}
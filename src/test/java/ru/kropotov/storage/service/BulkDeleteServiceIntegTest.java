@@ -0,0 +1,159 @@
+package ru.kropotov.storage.service;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.kropotov.storage.domain.model.DeleteJob;
+import ru.kropotov.storage.domain.model.DeleteJobState;
+import ru.kropotov.storage.domain.model.File;
+import ru.kropotov.storage.domain.model.FileState;
+import ru.kropotov.storage.domain.model.Visibility;
+import ru.kropotov.storage.infra.ObjectStoreClient;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+/**
+ * Интеграционный тест для BulkDeleteService: сбой задания и возобновление после гибели узла
+ */
+@SpringBootTest
+@Disabled
+@ActiveProfiles("test")
+@Testcontainers
+class BulkDeleteServiceIntegTest {
+
+    private static final String OWNER = "user1";
+
+    @Container
+    static MongoDBContainer mongoContainer = new MongoDBContainer("mongo:7.0")
+            .withExposedPorts(27017);
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongoContainer::getReplicaSetUrl);
+    }
+
+    @MockitoBean
+    private ObjectStoreClient objectStoreClient;
+
+    @MockitoBean
+    private BlobService blobService;
+
+    @Autowired
+    private BulkDeleteService bulkDeleteService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection(File.class);
+        mongoTemplate.dropCollection(DeleteJob.class);
+    }
+
+    @Test
+    void testFailedJob_ReturnsUnprocessedFilesToReady() throws InterruptedException {
+        File first = insertFile("first.txt", FileState.READY, null);
+        File second = insertFile("second.txt", FileState.READY, null);
+        when(blobService.releaseAll(anyMap())).thenThrow(new RuntimeException("Object store is down"));
+
+        DeleteJob job = bulkDeleteService.start(OWNER, List.of(first.getId(), second.getId()), null);
+        DeleteJob finished = awaitFinished(job.getId());
+
+        assertEquals(DeleteJobState.FAILED, finished.getState());
+        assertEquals(0, finished.getDeleted());
+        assertEquals(2, finished.getFailed());
+        assertNull(finished.getLeaseOwner());
+        for (File file : mongoTemplate.findAll(File.class)) {
+            assertEquals(FileState.READY, file.getState());
+            assertNull(file.getDeleteJobId());
+        }
+    }
+
+    @Test
+    void testJobWithExpiredLease_IsResumed() throws InterruptedException {
+        DeleteJob job = insertJob(Instant.now().minus(Duration.ofMinutes(1)));
+        insertFile("first.txt", FileState.DELETING, job.getId());
+        insertFile("second.txt", FileState.DELETING, job.getId());
+        when(blobService.releaseAll(anyMap())).thenReturn(Set.of());
+
+        bulkDeleteService.resumeStale();
+        DeleteJob finished = awaitFinished(job.getId());
+
+        assertEquals(DeleteJobState.COMPLETED, finished.getState());
+        assertEquals(2, finished.getDeleted());
+        assertEquals(0, mongoTemplate.count(new Query(), File.class));
+    }
+
+    @Test
+    void testJobWithLiveLease_IsNotResumed() {
+        DeleteJob job = insertJob(Instant.now().plus(Duration.ofMinutes(5)));
+        insertFile("first.txt", FileState.DELETING, job.getId());
+
+        bulkDeleteService.resumeStale();
+
+        DeleteJob stored = mongoTemplate.findById(job.getId(), DeleteJob.class);
+        assertNotNull(stored);
+        assertEquals(DeleteJobState.RUNNING, stored.getState());
+        assertEquals("dead-node", stored.getLeaseOwner());
+        verify(blobService, never()).releaseAll(anyMap());
+    }
+
+    private DeleteJob insertJob(Instant leaseExpiresTs) {
+        return mongoTemplate.insert(DeleteJob.builder()
+                .id(new ObjectId().toHexString())
+                .ownerId(OWNER)
+                .state(DeleteJobState.RUNNING)
+                .matched(2)
+                .createdTs(Instant.now())
+                .updatedTs(Instant.now())
+                .leaseOwner("dead-node")
+                .leaseExpiresTs(leaseExpiresTs)
+                .build());
+    }
+
+    private File insertFile(String fileName, FileState state, String deleteJobId) {
+        String id = new ObjectId().toHexString();
+        return mongoTemplate.insert(File.builder()
+                .id(id)
+                .ownerId(OWNER)
+                .fileName(fileName)
+                .sha256(id)
+                .visibility(Visibility.PRIVATE)
+                .tags(List.of())
+                .uploadTs(Instant.now())
+                .objectStoreKey("file-" + id)
+                .state(state)
+                .deleteJobId(deleteJobId)
+                .build());
+    }
+
+    private DeleteJob awaitFinished(String jobId) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            DeleteJob job = mongoTemplate.findById(jobId, DeleteJob.class);
+            if (job != null && job.getState() != DeleteJobState.RUNNING) {
+                return job;
+            }
+            Thread.sleep(100);
+        }
+        return fail("Delete job did not finish: " + jobId);
+    }
+}
@@ -161,4 +161,45 @@ class FileSecurityTest {
         assertThrows(FileNotFoundException.class,
                 () -> fileService.getFileForDownload("nonexistent", "any-secret"));
     }
+
+    @Test
+    void testGetDownloadDescriptor_RenameAndDelete_Invalidated() {
+        FileMeta fileMeta = FileMeta.builder()
+                .ownerId("user123")
+                .fileName("cached.txt")
+                .contentType("text/plain")
+                .visibility(PRIVATE)
+                .build();
+
+        File file = fileService.reserveId(fileMeta);
+        fileService.finaliseUpload(file.getId(), "hash123", 1024L);
+
+        assertEquals("cached.txt",
+                fileService.getDownloadDescriptor(file.getId(), file.getDownloadSecret()).fileName());
+
+        fileService.renameFile(file.getId(), "user123", "renamed.txt");
+        assertEquals("renamed.txt",
+                fileService.getDownloadDescriptor(file.getId(), file.getDownloadSecret()).fileName());
+
+        fileService.markForDeletion(file.getId(), "user123");
+        assertThrows(FileNotFoundException.class,
+                () -> fileService.getDownloadDescriptor(file.getId(), file.getDownloadSecret()));
+    }
+
+    @Test
+    void testGetDownloadDescriptor_InvalidSecret_AccessDenied() {
+        FileMeta fileMeta = FileMeta.builder()
+                .ownerId("user123")
+                .fileName("cached-secure.txt")
+                .contentType("text/plain")
+                .visibility(PRIVATE)
+                .build();
+
+        File file = fileService.reserveId(fileMeta);
+        fileService.finaliseUpload(file.getId(), "hash123", 1024L);
+        fileService.getDownloadDescriptor(file.getId(), file.getDownloadSecret());
+
+        assertThrows(AccessDeniedException.class,
+                () -> fileService.getDownloadDescriptor(file.getId(), "wrong-secret"));
+    }
 }
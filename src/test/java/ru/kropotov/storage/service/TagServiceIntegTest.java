@@ -0,0 +1,79 @@
+package ru.kropotov.storage.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.kropotov.storage.domain.model.Tag;
+import ru.kropotov.storage.domain.repository.TagRepository;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Интеграционный тест для TagService
+ */
+@SpringBootTest
+@Disabled
+@ActiveProfiles("test")
+@Testcontainers
+class TagServiceIntegTest {
+
+    @Container
+    static MongoDBContainer mongoContainer = new MongoDBContainer("mongo:7.0")
+            .withExposedPorts(27017);
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongoContainer::getReplicaSetUrl);
+    }
+
+    @Autowired
+    private TagService tagService;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @BeforeEach
+    void setUp() {
+        tagRepository.deleteAll();
+    }
+
+    @Test
+    void testEnsureExists_CreatesOnlyNewTags() {
+        tagService.ensureExists(List.of("java", "spring"));
+        tagService.ensureExists(List.of("java", "mongo", "mongo"));
+
+        assertEquals(3, tagRepository.count());
+        assertTrue(tagService.tagExists("Mongo"));
+    }
+
+    @Test
+    void testGetVocabulary_VersionChangesWithContent() {
+        tagService.ensureExists(List.of("java"));
+        String version = tagService.getVocabulary().version();
+
+        tagService.ensureExists(List.of("java"));
+        assertEquals(version, tagService.getVocabulary().version());
+
+        tagService.ensureExists(List.of("kotlin"));
+        assertNotEquals(version, tagService.getVocabulary().version());
+    }
+
+    @Test
+    void testTagExists_TagCreatedElsewhere_FoundInMongo() {
+        tagService.getVocabulary();
+        tagRepository.save(new Tag("external"));
+
+        assertTrue(tagService.tagExists("external"));
+        assertFalse(tagService.tagExists("missing"));
+    }
+}
@@ -27,6 +27,7 @@ import ru.kropotov.storage.web.dto.UploadMetaDto;
 import java.util.List;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.head;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @SpringBootTest
@@ -202,4 +203,120 @@ class DownloadControllerIntegTest {
                 .andExpect(status().isOk())
                 .andExpect(content().string(content));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testDownloadRange_Returns206WithContentRange() throws Exception {
+        String fileName = "range-file.txt";
+        String content = "0123456789abcdefghij";
+
+        MockMultipartFile file = new MockMultipartFile("file", fileName, "text/plain", content.getBytes());
+        UploadMetaDto meta = new UploadMetaDto(fileName, Visibility.PUBLIC, List.of("range"));
+
+        File uploadedFile = fileFacade.upload("user123", file, meta);
+
+        mockMvc.perform(get("/d/{fileId}/{secret}", uploadedFile.getId(), uploadedFile.getDownloadSecret())
+                        .header("Range", "bytes=10-14"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Accept-Ranges", "bytes"))
+                .andExpect(header().string("Content-Range", "bytes 10-14/" + content.length()))
+                .andExpect(header().string("Content-Length", "5"))
+                .andExpect(content().string("abcde"));
+    }
+
+    @Test
+    void testDownloadUnsatisfiableRange_Returns416() throws Exception {
+        String fileName = "short-file.txt";
+        String content = "short";
+
+        MockMultipartFile file = new MockMultipartFile("file", fileName, "text/plain", content.getBytes());
+        UploadMetaDto meta = new UploadMetaDto(fileName, Visibility.PUBLIC, List.of("range"));
+
+        File uploadedFile = fileFacade.upload("user123", file, meta);
+
+        mockMvc.perform(get("/d/{fileId}/{secret}", uploadedFile.getId(), uploadedFile.getDownloadSecret())
+                        .header("Range", "bytes=100-200"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string("Content-Range", "bytes */" + content.length()));
+    }
+
+    @Test
+    void testDownload_SendsStrongEtagAndImmutableCacheHeaders() throws Exception {
+        File uploadedFile = upload("etag-file.txt", "etag content", Visibility.PUBLIC);
+
+        mockMvc.perform(get("/d/{fileId}/{secret}", uploadedFile.getId(), uploadedFile.getDownloadSecret()))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + uploadedFile.getSha256() + "\""))
+                .andExpect(header().string("Cache-Control", "public, max-age=31536000, immutable"));
+    }
+
+    @Test
+    void testDownloadPrivateFile_IsNotStoredBySharedCaches() throws Exception {
+        File uploadedFile = upload("private-cache.txt", "private content", Visibility.PRIVATE);
+
+        mockMvc.perform(get("/d/{fileId}/{secret}", uploadedFile.getId(), uploadedFile.getDownloadSecret()))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "private, max-age=31536000, immutable"));
+    }
+
+    @Test
+    void testDownloadWithMatchingIfNoneMatch_Returns304WithoutBody() throws Exception {
+        File uploadedFile = upload("revalidate.txt", "revalidated content", Visibility.PUBLIC);
+
+        mockMvc.perform(get("/d/{fileId}/{secret}", uploadedFile.getId(), uploadedFile.getDownloadSecret())
+                        .header("If-None-Match", "\"other\", W/\"" + uploadedFile.getSha256() + "\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"" + uploadedFile.getSha256() + "\""))
+                .andExpect(content().string(""));
+
+        mockMvc.perform(get("/d/{fileId}/{secret}", uploadedFile.getId(), uploadedFile.getDownloadSecret())
+                        .header("If-None-Match", "\"other\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void testDownloadWithIfModifiedSince_Returns304WhenUnchanged() throws Exception {
+        File uploadedFile = upload("since.txt", "unchanged content", Visibility.PUBLIC);
+
+        String lastModified = mockMvc.perform(get("/d/{fileId}/{secret}",
+                        uploadedFile.getId(), uploadedFile.getDownloadSecret()))
+                .andReturn().getResponse().getHeader("Last-Modified");
+
+        mockMvc.perform(get("/d/{fileId}/{secret}", uploadedFile.getId(), uploadedFile.getDownloadSecret())
+                        .header("If-Modified-Since", lastModified))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void testHead_ReturnsHeadersWithoutBody() throws Exception {
+        String content = "head content";
+        File uploadedFile = upload("head.txt", content, Visibility.PUBLIC);
+
+        mockMvc.perform(head("/d/{fileId}/{secret}", uploadedFile.getId(), uploadedFile.getDownloadSecret()))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Length", String.valueOf(content.length())))
+                .andExpect(header().string("ETag", "\"" + uploadedFile.getSha256() + "\""))
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void testDownloadRangeWithMatchingIfRangeEtag_Returns206() throws Exception {
+        File uploadedFile = upload("resume.txt", "0123456789", Visibility.PUBLIC);
+
+        mockMvc.perform(get("/d/{fileId}/{secret}", uploadedFile.getId(), uploadedFile.getDownloadSecret())
+                        .header("Range", "bytes=5-")
+                        .header("If-Range", "\"" + uploadedFile.getSha256() + "\""))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().string("56789"));
+
+        mockMvc.perform(get("/d/{fileId}/{secret}", uploadedFile.getId(), uploadedFile.getDownloadSecret())
+                        .header("Range", "bytes=5-")
+                        .header("If-Range", "\"stale\""))
+                .andExpect(status().isOk())
+                .andExpect(content().string("0123456789"));
+    }
+
+    private File upload(String fileName, String content, Visibility visibility) {
+        MockMultipartFile file = new MockMultipartFile("file", fileName, "text/plain", content.getBytes());
+        return fileFacade.upload("user123", file, new UploadMetaDto(fileName, visibility, List.of()));
+    }
+}
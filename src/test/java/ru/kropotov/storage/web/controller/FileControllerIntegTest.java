@@ -1,5 +1,6 @@
 package ru.kropotov.storage.web.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
@@ -30,8 +31,14 @@ import ru.kropotov.storage.security.UserIdPrincipal;
 import ru.kropotov.storage.web.dto.RenameRequest;
 import ru.kropotov.storage.web.dto.UploadMetaDto;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.authentication;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
@@ -195,6 +202,111 @@ class FileControllerIntegTest {
                 .andExpect(jsonPath("$.content[0].fileName").value(fileName));
     }
 
+    @Test
+    void testListUserFilesByCursor_WalksAllPages() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            String fileName = "cursor-" + i + ".txt";
+            fileFacade.upload("user123",
+                    new MockMultipartFile("file", fileName, "text/plain", ("content" + i).getBytes()),
+                    new UploadMetaDto(fileName, Visibility.PRIVATE, List.of()));
+        }
+
+        String cursor = "";
+        List<String> fileNames = new ArrayList<>();
+        do {
+            String body = mockMvc.perform(get("/api/files")
+                            .with(getUser("user123"))
+                            .param("cursor", cursor)
+                            .param("size", "2")
+                            .param("sort", "fileName,asc"))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+
+            JsonNode page = objectMapper.readTree(body);
+            page.path("content").forEach(file -> fileNames.add(file.path("fileName").asText()));
+            cursor = page.path("nextCursor").isTextual() ? page.path("nextCursor").asText() : null;
+        } while (cursor != null);
+
+        assertEquals(List.of("cursor-0.txt", "cursor-1.txt", "cursor-2.txt", "cursor-3.txt", "cursor-4.txt"),
+                fileNames);
+    }
+
+    @Test
+    void testListFilesByCursorWithConflictingSort_Returns400() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            String fileName = "conflict-" + i + ".txt";
+            fileFacade.upload("user123",
+                    new MockMultipartFile("file", fileName, "text/plain", ("content" + i).getBytes()),
+                    new UploadMetaDto(fileName, Visibility.PUBLIC, List.of()));
+        }
+
+        String body = mockMvc.perform(get("/api/files/public")
+                        .param("cursor", "")
+                        .param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(1))
+                .andReturn().getResponse().getContentAsString();
+        String cursor = objectMapper.readTree(body).path("nextCursor").asText();
+
+        mockMvc.perform(get("/api/files/public")
+                        .param("cursor", cursor)
+                        .param("sort", "fileName,asc"))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(get("/api/files/public")
+                        .param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testListPublicFilesByForgedCursor_Returns400() throws Exception {
+        fileFacade.upload("user123",
+                new MockMultipartFile("file", "forged.txt", "text/plain", "content".getBytes()),
+                new UploadMetaDto("forged.txt", Visibility.PUBLIC, List.of()));
+
+        String onSecret = "{\"s\":\"downloadSecret\",\"d\":\"ASC\",\"i\":\"000000000000000000000000\",\"k\":\"s\",\"v\":\"m\"}";
+        mockMvc.perform(get("/api/files/public")
+                        .param("cursor", cursor(onSecret)))
+                .andExpect(status().isBadRequest());
+
+        String wrongType = "{\"s\":\"sizeBytes\",\"d\":\"ASC\",\"i\":\"000000000000000000000000\",\"k\":\"s\",\"v\":\"m\"}";
+        mockMvc.perform(get("/api/files/public")
+                        .param("cursor", cursor(wrongType)))
+                .andExpect(status().isBadRequest());
+
+        String badId = "{\"s\":\"fileName\",\"d\":\"ASC\",\"i\":{\"$gt\":\"\"},\"k\":\"s\",\"v\":\"m\"}";
+        mockMvc.perform(get("/api/files/public")
+                        .param("cursor", cursor(badId)))
+                .andExpect(status().isBadRequest());
+    }
+
+    private static String cursor(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testListUserFilesWithFields_ReturnsOnlyRequestedFields() throws Exception {
+        String fileName = "sparse.txt";
+        MockMultipartFile file = new MockMultipartFile("file", fileName, "text/plain", "content".getBytes());
+        fileFacade.upload("user123", file, new UploadMetaDto(fileName, Visibility.PRIVATE, List.of("mobile")));
+
+        mockMvc.perform(get("/api/files")
+                        .with(getUser("user123"))
+                        .param("fields", "id,fileName,sizeBytes"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].id").isNotEmpty())
+                .andExpect(jsonPath("$.content[0].fileName").value(fileName))
+                .andExpect(jsonPath("$.content[0].sizeBytes").value(7))
+                .andExpect(jsonPath("$.content[0].tags").doesNotExist())
+                .andExpect(jsonPath("$.content[0].downloadUrl").doesNotExist())
+                .andExpect(jsonPath("$.totalElements").value(1));
+
+        mockMvc.perform(get("/api/files")
+                        .with(getUser("user123"))
+                        .param("fields", "id,downloadSecret"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void testListPublicFilesWithTagFilter_Returns200() throws Exception {
         MockMultipartFile file1 = new MockMultipartFile("file", "java-file.txt", "text/plain", "content1".getBytes());
@@ -229,6 +341,78 @@ class FileControllerIntegTest {
                 .andExpect(status().isNoContent());
     }
 
+    @Test
+    void testBulkDeleteByTag_DeletesOnlyOwnReadyFiles() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            String fileName = "bulk-" + i + ".txt";
+            fileFacade.upload("user123",
+                    new MockMultipartFile("file", fileName, "text/plain", ("content" + i).getBytes()),
+                    new UploadMetaDto(fileName, Visibility.PRIVATE, List.of("cleanup")));
+        }
+        File kept = fileFacade.upload("user123",
+                new MockMultipartFile("file", "kept.txt", "text/plain", "kept".getBytes()),
+                new UploadMetaDto("kept.txt", Visibility.PRIVATE, List.of("keep")));
+        File foreign = fileFacade.upload("user456",
+                new MockMultipartFile("file", "foreign.txt", "text/plain", "foreign".getBytes()),
+                new UploadMetaDto("foreign.txt", Visibility.PRIVATE, List.of("cleanup")));
+
+        String location = mockMvc.perform(post("/api/files/bulk-delete")
+                        .with(getUser("user123"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"tag\":\"cleanup\"}"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.matched").value(3))
+                .andReturn().getResponse().getHeader("Location");
+
+        awaitDeleteJob(location, "user123");
+
+        mockMvc.perform(get(location).with(getUser("user123")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state").value("COMPLETED"))
+                .andExpect(jsonPath("$.deleted").value(3))
+                .andExpect(jsonPath("$.failed").value(0));
+
+        assertEquals(2, fileRepository.count());
+        assertEquals(true, fileRepository.existsById(kept.getId()));
+        assertEquals(true, fileRepository.existsById(foreign.getId()));
+    }
+
+    @Test
+    void testBulkDeleteByIds_SkipsForeignFiles() throws Exception {
+        File own = fileFacade.upload("user123",
+                new MockMultipartFile("file", "own.txt", "text/plain", "own".getBytes()),
+                new UploadMetaDto("own.txt", Visibility.PRIVATE, List.of()));
+        File foreign = fileFacade.upload("user456",
+                new MockMultipartFile("file", "foreign.txt", "text/plain", "foreign".getBytes()),
+                new UploadMetaDto("foreign.txt", Visibility.PUBLIC, List.of()));
+
+        String location = mockMvc.perform(post("/api/files/bulk-delete")
+                        .with(getUser("user123"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"ids\":[\"" + own.getId() + "\",\"" + foreign.getId() + "\"]}"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.requested").value(2))
+                .andExpect(jsonPath("$.matched").value(1))
+                .andReturn().getResponse().getHeader("Location");
+
+        awaitDeleteJob(location, "user123");
+
+        assertEquals(false, fileRepository.existsById(own.getId()));
+        assertEquals(true, fileRepository.existsById(foreign.getId()));
+
+        mockMvc.perform(get(location).with(getUser("user456")))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testBulkDeleteWithIdsAndTag_Returns400() throws Exception {
+        mockMvc.perform(post("/api/files/bulk-delete")
+                        .with(getUser("user123"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"ids\":[\"abc\"],\"tag\":\"cleanup\"}"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void testDeleteForeignFile_Returns403() throws Exception {
         String fileName = "protected.txt";
@@ -275,6 +459,204 @@ class FileControllerIntegTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    void testStreamingUpload_Returns201() throws Exception {
+        String content = "streamed content";
+        String metaJson = "{\"fileName\":\"streamed.txt\",\"visibility\":\"PUBLIC\"," +
+                "\"tags\":[\"stream\"],\"sizeBytes\":" + content.length() + "}";
+
+        mockMvc.perform(post("/api/files/stream")
+                        .with(getUser("user123"))
+                        .contentType("multipart/form-data; boundary=" + BOUNDARY)
+                        .content(multipartBody(metaJson, "streamed.txt", content)))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.fileName").value("streamed.txt"))
+                .andExpect(jsonPath("$.sizeBytes").value(content.length()));
+    }
+
+    @Test
+    void testStreamingUploadWithWrongDeclaredSize_Returns400() throws Exception {
+        String metaJson = "{\"fileName\":\"short.txt\",\"visibility\":\"PUBLIC\",\"sizeBytes\":1000}";
+
+        mockMvc.perform(post("/api/files/stream")
+                        .with(getUser("user123"))
+                        .contentType("multipart/form-data; boundary=" + BOUNDARY)
+                        .content(multipartBody(metaJson, "short.txt", "too short")))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testStreamingUploadWithFileBeforeMeta_Returns400() throws Exception {
+        String body = "--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"file\"; filename=\"early.txt\"\r\n" +
+                "Content-Type: text/plain\r\n\r\n" +
+                "content\r\n" +
+                "--" + BOUNDARY + "--\r\n";
+
+        mockMvc.perform(post("/api/files/stream")
+                        .with(getUser("user123"))
+                        .contentType("multipart/form-data; boundary=" + BOUNDARY)
+                        .content(body))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testStreamingUploadWithKnownSha256Header_Returns200WithoutBody() throws Exception {
+        String content = "dedup content";
+        String sha256 = sha256Hex(content);
+        String metaJson = "{\"fileName\":\"first.txt\",\"visibility\":\"PRIVATE\"}";
+
+        String firstId = objectMapper.readTree(mockMvc.perform(post("/api/files/stream")
+                        .with(getUser("user123"))
+                        .contentType("multipart/form-data; boundary=" + BOUNDARY)
+                        .content(multipartBody(metaJson, "first.txt", content)))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString()).get("id").asText();
+
+        mockMvc.perform(post("/api/files/stream")
+                        .with(getUser("user123"))
+                        .header(FileController.CONTENT_SHA256_HEADER, sha256)
+                        .header(FileController.CONTENT_LENGTH_HEADER, content.length())
+                        .contentType("multipart/form-data; boundary=" + BOUNDARY))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(firstId));
+    }
+
+    @Test
+    void testStreamingUploadWithWrongDeclaredSha256_Returns400() throws Exception {
+        String metaJson = "{\"fileName\":\"liar.txt\",\"visibility\":\"PRIVATE\",\"sha256\":\""
+                + sha256Hex("something else") + "\"}";
+
+        mockMvc.perform(post("/api/files/stream")
+                        .with(getUser("user123"))
+                        .contentType("multipart/form-data; boundary=" + BOUNDARY)
+                        .content(multipartBody(metaJson, "liar.txt", "actual content")))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testBatchUpload_CreatesEveryFile() throws Exception {
+        String metasJson = "[{\"fileName\":\"a.txt\",\"visibility\":\"PRIVATE\",\"tags\":[\"batch\"]}," +
+                "{\"fileName\":\"b.txt\",\"visibility\":\"PUBLIC\"}," +
+                "{\"fileName\":\"c.txt\",\"visibility\":\"PRIVATE\",\"sizeBytes\":9}]";
+
+        mockMvc.perform(post("/api/files/batch")
+                        .with(getUser("user123"))
+                        .contentType("multipart/form-data; boundary=" + BOUNDARY)
+                        .content(batchBody(metasJson, "content a", "content b", "content c")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].outcome").value("CREATED"))
+                .andExpect(jsonPath("$[0].file.tags[0]").value("batch"))
+                .andExpect(jsonPath("$[1].outcome").value("CREATED"))
+                .andExpect(jsonPath("$[2].outcome").value("CREATED"))
+                .andExpect(jsonPath("$[2].file.sizeBytes").value(9));
+
+        assertEquals(3, fileRepository.count());
+    }
+
+    @Test
+    void testBatchUpload_FailsOnlyConflictingFiles() throws Exception {
+        String metasJson = "[{\"fileName\":\"same.txt\",\"visibility\":\"PRIVATE\"}," +
+                "{\"fileName\":\"same.txt\",\"visibility\":\"PRIVATE\"}," +
+                "{\"fileName\":\"copy.txt\",\"visibility\":\"PRIVATE\"}," +
+                "{\"visibility\":\"PRIVATE\"}]";
+
+        mockMvc.perform(post("/api/files/batch")
+                        .with(getUser("user123"))
+                        .contentType("multipart/form-data; boundary=" + BOUNDARY)
+                        .content(batchBody(metasJson, "original", "other", "original", "unnamed")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].outcome").value("CREATED"))
+                .andExpect(jsonPath("$[1].outcome").value("FAILED"))
+                .andExpect(jsonPath("$[2].outcome").value("FAILED"))
+                .andExpect(jsonPath("$[3].outcome").value("FAILED"));
+    }
+
+    @Test
+    void testBatchUpload_FailsFileNotMatchingDeclaredSize() throws Exception {
+        String metasJson = "[{\"fileName\":\"short.txt\",\"visibility\":\"PRIVATE\",\"sizeBytes\":100}," +
+                "{\"fileName\":\"exact.txt\",\"visibility\":\"PRIVATE\",\"sizeBytes\":5}]";
+
+        mockMvc.perform(post("/api/files/batch")
+                        .with(getUser("user123"))
+                        .contentType("multipart/form-data; boundary=" + BOUNDARY)
+                        .content(batchBody(metasJson, "liar", "exact")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].outcome").value("FAILED"))
+                .andExpect(jsonPath("$[1].outcome").value("CREATED"))
+                .andExpect(jsonPath("$[1].file.sizeBytes").value(5));
+    }
+
+    @Test
+    void testBatchUploadWithKnownSha256_ReturnsExistingFile() throws Exception {
+        String content = "known content";
+        String firstId = objectMapper.readTree(mockMvc.perform(post("/api/files/stream")
+                        .with(getUser("user123"))
+                        .contentType("multipart/form-data; boundary=" + BOUNDARY)
+                        .content(multipartBody("{\"fileName\":\"known.txt\",\"visibility\":\"PRIVATE\"}",
+                                "known.txt", content)))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString()).get("id").asText();
+
+        String metasJson = "[{\"fileName\":\"again.txt\",\"visibility\":\"PRIVATE\",\"sha256\":\""
+                + sha256Hex(content) + "\"},{\"fileName\":\"new.txt\",\"visibility\":\"PRIVATE\"}]";
+
+        mockMvc.perform(post("/api/files/batch")
+                        .with(getUser("user123"))
+                        .contentType("multipart/form-data; boundary=" + BOUNDARY)
+                        .content(batchBody(metasJson, content, "new content")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].outcome").value("EXISTING"))
+                .andExpect(jsonPath("$[0].file.id").value(firstId))
+                .andExpect(jsonPath("$[1].outcome").value("CREATED"));
+    }
+
+    private static String sha256Hex(String content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static final String BOUNDARY = "streaming-test-boundary";
+
+    private String multipartBody(String metaJson, String fileName, String content) {
+        return "--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"meta\"\r\n" +
+                "Content-Type: application/json\r\n\r\n" +
+                metaJson + "\r\n" +
+                "--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"file\"; filename=\"" + fileName + "\"\r\n" +
+                "Content-Type: text/plain\r\n\r\n" +
+                content + "\r\n" +
+                "--" + BOUNDARY + "--\r\n";
+    }
+
+    private String batchBody(String metasJson, String... contents) {
+        StringBuilder body = new StringBuilder("--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"meta\"\r\n" +
+                "Content-Type: application/json\r\n\r\n" +
+                metasJson + "\r\n");
+        for (int i = 0; i < contents.length; i++) {
+            body.append("--").append(BOUNDARY).append("\r\n")
+                    .append("Content-Disposition: form-data; name=\"file\"; filename=\"part").append(i).append("\"\r\n")
+                    .append("Content-Type: text/plain\r\n\r\n")
+                    .append(contents[i]).append("\r\n");
+        }
+        return body.append("--").append(BOUNDARY).append("--\r\n").toString();
+    }
+
+    private void awaitDeleteJob(String location, String userId) throws Exception {
+        for (int attempt = 0; attempt < 50; attempt++) {
+            String state = objectMapper.readTree(mockMvc.perform(get(location).with(getUser(userId)))
+                    .andReturn().getResponse().getContentAsString()).get("state").asText();
+            if (!"RUNNING".equals(state)) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError("Delete job did not finish: " + location);
+    }
+
     private RequestPostProcessor getUser(String userId) {
         return authentication(
                 new UsernamePasswordAuthenticationToken(
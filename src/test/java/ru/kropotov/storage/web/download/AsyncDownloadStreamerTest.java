@@ -0,0 +1,244 @@
+package ru.kropotov.storage.web.download;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import ru.kropotov.storage.config.properties.StorageProperties;
+import ru.kropotov.storage.infra.MinioAsyncObjectReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AsyncDownloadStreamerTest {
+
+    private static final String KEY = "file-1";
+
+    private MinioAsyncObjectReader objectReader;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private AsyncContext asyncContext;
+    private FakeOutputStream out;
+    private FakePublisher publisher;
+    private AsyncDownloadStreamer streamer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        objectReader = mock(MinioAsyncObjectReader.class);
+        request = mock(HttpServletRequest.class);
+        response = mock(HttpServletResponse.class);
+        asyncContext = mock(AsyncContext.class);
+        out = new FakeOutputStream();
+        publisher = new FakePublisher();
+
+        when(request.startAsync(request, response)).thenReturn(asyncContext);
+        when(response.getOutputStream()).thenReturn(out);
+        streamer = new AsyncDownloadStreamer(objectReader, new StorageProperties());
+    }
+
+    @Test
+    void testStream_RequestsOneBufferAtATime() throws IOException {
+        stream(CompletableFuture.completedFuture(publisher));
+        assertEquals(1, publisher.requested);
+
+        publisher.emit("hello, ");
+        assertEquals(2, publisher.requested);
+        publisher.emit("world");
+        publisher.complete();
+
+        assertEquals("hello, world", out.written());
+        verify(asyncContext).complete();
+    }
+
+    @Test
+    void testStream_SlowClientPausesUpstream() throws IOException {
+        stream(CompletableFuture.completedFuture(publisher));
+        out.ready = false;
+
+        publisher.emit("first");
+        assertEquals("", out.written());
+        assertEquals(1, publisher.requested);
+
+        out.ready = true;
+        out.listener.onWritePossible();
+        assertEquals("first", out.written());
+        assertEquals(2, publisher.requested);
+
+        out.ready = false;
+        publisher.complete();
+        verify(asyncContext, never()).complete();
+
+        out.ready = true;
+        out.listener.onWritePossible();
+        verify(asyncContext).complete();
+    }
+
+    @Test
+    void testStream_ClientDisconnectCancelsUpstream() throws IOException {
+        stream(CompletableFuture.completedFuture(publisher));
+        publisher.emit("partial");
+
+        asyncListener().onError(new AsyncEvent(asyncContext, new IOException("Broken pipe")));
+
+        assertTrue(publisher.cancelled);
+        verify(asyncContext).complete();
+        int requested = publisher.requested;
+        out.listener.onWritePossible();
+        assertEquals(requested, publisher.requested);
+    }
+
+    @Test
+    void testStream_CompletedRequestCancelsUpstream() throws IOException {
+        stream(CompletableFuture.completedFuture(publisher));
+
+        asyncListener().onComplete(new AsyncEvent(asyncContext));
+
+        assertTrue(publisher.cancelled);
+    }
+
+    @Test
+    void testStream_UpstreamErrorBeforeFirstByteReturns500() throws IOException {
+        stream(CompletableFuture.completedFuture(publisher));
+
+        publisher.subscriber.onError(new IOException("Connection reset"));
+
+        verify(response).reset();
+        verify(response).setStatus(500);
+        verify(asyncContext).complete();
+    }
+
+    @Test
+    void testStream_UpstreamErrorAfterFirstByteEndsResponse() throws IOException {
+        stream(CompletableFuture.completedFuture(publisher));
+        publisher.emit("partial");
+        when(response.isCommitted()).thenReturn(true);
+
+        publisher.subscriber.onError(new IOException("Connection reset"));
+
+        verify(response, never()).reset();
+        verify(asyncContext).complete();
+        assertEquals("partial", out.written());
+    }
+
+    @Test
+    void testStream_FailedReadReturns500() throws IOException {
+        stream(CompletableFuture.failedFuture(new IOException("No such key")));
+
+        verify(response).setStatus(500);
+        verify(asyncContext).complete();
+    }
+
+    @Test
+    void testStream_LateSubscriptionAfterFailureIsCancelled() throws IOException {
+        CompletableFuture<FakePublisher> read = new CompletableFuture<>();
+        stream(read);
+
+        asyncListener().onTimeout(new AsyncEvent(asyncContext));
+        read.complete(publisher);
+
+        assertTrue(publisher.cancelled);
+        assertEquals(0, publisher.requested);
+    }
+
+    @Test
+    void testStream_PassesRange() throws IOException {
+        stream(new CompletableFuture<FakePublisher>(), 100, 50);
+
+        verify(objectReader).read(KEY, 100, 50);
+    }
+
+    private void stream(CompletableFuture<FakePublisher> read) throws IOException {
+        stream(read, 0, -1);
+    }
+
+    private void stream(CompletableFuture<FakePublisher> read, long offset, long length) throws IOException {
+        doReturn(read).when(objectReader).read(KEY, offset, length);
+        streamer.stream(request, response, KEY, offset, length);
+    }
+
+    private AsyncListener asyncListener() {
+        ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+        verify(asyncContext).addListener(listener.capture());
+        return listener.getValue();
+    }
+
+    /**
+     * Publisher driven by the test: counts demand and emits only when told to
+     */
+    private static final class FakePublisher implements Publisher<ByteBuffer> {
+
+        private Subscriber<? super ByteBuffer> subscriber;
+        private int requested;
+        private boolean cancelled;
+
+        @Override
+        public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                    requested += (int) n;
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+
+        void emit(String content) {
+            subscriber.onNext(ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        void complete() {
+            subscriber.onComplete();
+        }
+    }
+
+    private static final class FakeOutputStream extends ServletOutputStream {
+
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        private boolean ready = true;
+        private WriteListener listener;
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void write(int b) {
+            content.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            content.write(bytes, offset, length);
+        }
+
+        String written() {
+            return content.toString(StandardCharsets.UTF_8);
+        }
+    }
+}
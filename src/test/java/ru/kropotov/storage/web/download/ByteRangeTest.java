@@ -0,0 +1,57 @@
+package ru.kropotov.storage.web.download;
+
+import org.junit.jupiter.api.Test;
+import ru.kropotov.storage.expection.RangeNotSatisfiableException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ByteRangeTest {
+
+    @Test
+    void testParse_NoHeaderOrOtherUnit_ServesFullContent() {
+        assertTrue(ByteRange.parse(null, 100).isEmpty());
+        assertTrue(ByteRange.parse("items=0-5", 100).isEmpty());
+    }
+
+    @Test
+    void testParse_MalformedHeader_IsIgnored() {
+        assertTrue(ByteRange.parse("bytes=abc", 100).isEmpty());
+        assertTrue(ByteRange.parse("bytes=10-5", 100).isEmpty());
+        assertTrue(ByteRange.parse("bytes=5", 100).isEmpty());
+    }
+
+    @Test
+    void testParse_SingleRanges() {
+        assertEquals(List.of(new ByteRange(0, 9)), ByteRange.parse("bytes=0-9", 100));
+        assertEquals(List.of(new ByteRange(90, 99)), ByteRange.parse("bytes=90-", 100));
+        assertEquals(List.of(new ByteRange(80, 99)), ByteRange.parse("bytes=-20", 100));
+        assertEquals(List.of(new ByteRange(0, 99)), ByteRange.parse("bytes=-500", 100));
+        assertEquals(List.of(new ByteRange(50, 99)), ByteRange.parse("bytes=50-1000", 100));
+    }
+
+    @Test
+    void testParse_MultipleRanges_AreSortedAndCoalesced() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=50-59, 0-9, 5-19, 20-24", 100);
+
+        assertEquals(List.of(new ByteRange(0, 24), new ByteRange(50, 59)), ranges);
+    }
+
+    @Test
+    void testParse_UnsatisfiableRanges_Throw() {
+        RangeNotSatisfiableException e = assertThrows(RangeNotSatisfiableException.class,
+                () -> ByteRange.parse("bytes=100-200", 100));
+        assertEquals(100, e.getResourceLength());
+
+        assertThrows(RangeNotSatisfiableException.class, () -> ByteRange.parse("bytes=-0", 100));
+    }
+
+    @Test
+    void testContentRange() {
+        ByteRange range = new ByteRange(10, 19);
+
+        assertEquals(10, range.length());
+        assertEquals("bytes 10-19/100", range.contentRange(100));
+    }
+}
@@ -0,0 +1,68 @@
+package ru.kropotov.storage.web.download;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.mock.web.MockHttpServletRequest;
+import ru.kropotov.storage.config.properties.StorageProperties;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SendfileWriterTest {
+
+    private StorageProperties storageProperties;
+    private ServerProperties serverProperties;
+    private SendfileWriter writer;
+    private MockHttpServletRequest request;
+
+    @BeforeEach
+    void setUp() {
+        storageProperties = new StorageProperties();
+        serverProperties = new ServerProperties();
+        writer = new SendfileWriter(storageProperties, serverProperties);
+        request = new MockHttpServletRequest();
+        request.setAttribute(SendfileWriter.SUPPORTED, Boolean.TRUE);
+    }
+
+    @Test
+    void testCanSend_PlainConnection() {
+        assertTrue(writer.canSend(request));
+    }
+
+    @Test
+    void testCanSend_NotWithoutConnectorSupport() {
+        request.removeAttribute(SendfileWriter.SUPPORTED);
+        assertFalse(writer.canSend(request));
+    }
+
+    @Test
+    void testCanSend_NotOverTls() {
+        request.setSecure(true);
+        assertFalse(writer.canSend(request));
+    }
+
+    @Test
+    void testCanSend_NotWithCompression() {
+        serverProperties.getCompression().setEnabled(true);
+        assertFalse(writer.canSend(request));
+    }
+
+    @Test
+    void testCanSend_NotWhenDisabled() {
+        storageProperties.getDownload().setSendfile(false);
+        assertFalse(writer.canSend(request));
+    }
+
+    @Test
+    void testSend_SetsFileAndRange() {
+        Path file = Path.of("/var/cache/storage/ab/abcdef");
+
+        writer.send(request, file, 100, 50);
+
+        assertEquals(file.toAbsolutePath().toString(), request.getAttribute(SendfileWriter.FILENAME));
+        assertEquals(100L, request.getAttribute(SendfileWriter.START));
+        assertEquals(150L, request.getAttribute(SendfileWriter.END));
+    }
+}
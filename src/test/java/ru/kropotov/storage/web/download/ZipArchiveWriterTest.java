@@ -0,0 +1,110 @@
+package ru.kropotov.storage.web.download;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.kropotov.storage.config.properties.StorageProperties;
+import ru.kropotov.storage.domain.model.File;
+import ru.kropotov.storage.infra.ObjectStoreClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ZipArchiveWriterTest {
+
+    private ObjectStoreClient objectStoreClient;
+    private ZipArchiveWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        objectStoreClient = mock(ObjectStoreClient.class);
+        StorageProperties properties = new StorageProperties();
+        properties.getDownload().setArchivePrefetch(2);
+        writer = new ZipArchiveWriter(objectStoreClient, properties);
+    }
+
+    @Test
+    void testWrite_EntriesHaveContentAndUniqueSafeNames() throws IOException {
+        stubObject("k1", "first");
+        stubObject("k2", "second");
+        stubObject("k3", "third");
+        stubObject("k4", "fourth");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int written = writer.write(Stream.of(
+                file("1", "report.txt", "text/plain", "k1"),
+                file("2", "Report.txt", "text/plain", "k2"),
+                file("3", "../photo.jpg", "image/jpeg", "k3"),
+                file("4", null, null, "k4")), out);
+
+        Map<String, String> entries = readEntries(out.toByteArray());
+        assertEquals(4, written);
+        assertEquals(Map.of(
+                "report.txt", "first",
+                "Report (1).txt", "second",
+                ".._photo.jpg", "third",
+                "file-4", "fourth"), entries);
+    }
+
+    @Test
+    void testWrite_FailedObject_ClosesPrefetchedStreams() throws IOException {
+        InputStream prefetched = spy(new ByteArrayInputStream(new byte[0]));
+        when(objectStoreClient.download("k1")).thenThrow(new IllegalStateException("gone"));
+        when(objectStoreClient.download("k2")).thenReturn(prefetched);
+
+        assertThrows(IOException.class, () -> writer.write(Stream.of(
+                file("1", "a.txt", "text/plain", "k1"),
+                file("2", "b.txt", "text/plain", "k2")), new ByteArrayOutputStream()));
+
+        verify(prefetched, timeout(1000)).close();
+    }
+
+    @Test
+    void testIsCompressed() {
+        assertTrue(ZipArchiveWriter.isCompressed("image/jpeg"));
+        assertTrue(ZipArchiveWriter.isCompressed("Video/MP4"));
+        assertTrue(ZipArchiveWriter.isCompressed("application/zip; charset=binary"));
+        assertTrue(ZipArchiveWriter.isCompressed(
+                "application/vnd.openxmlformats-officedocument.wordprocessingml.document"));
+        assertFalse(ZipArchiveWriter.isCompressed("text/plain"));
+        assertFalse(ZipArchiveWriter.isCompressed("image/svg+xml"));
+        assertFalse(ZipArchiveWriter.isCompressed(null));
+    }
+
+    private void stubObject(String key, String content) {
+        when(objectStoreClient.download(key))
+                .thenReturn(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static File file(String id, String fileName, String contentType, String key) {
+        return File.builder()
+                .id(id)
+                .fileName(fileName)
+                .contentType(contentType)
+                .objectStoreKey(key)
+                .uploadTs(Instant.parse("2024-01-01T00:00:00Z"))
+                .build();
+    }
+
+    private static Map<String, String> readEntries(byte[] archive) throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+}